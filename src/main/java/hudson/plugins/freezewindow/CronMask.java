@@ -0,0 +1,627 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A cron expression compiled into primitive bit masks, one bit per allowed value.
+ *
+ * It understands the subset of the quartz syntax produced by {@link FreezeWindowMonitor#normalize(String)}
+ * that is needed for freeze windows: values, names, ranges, wrapping ranges, steps and lists.
+ * Expressions using anything else (L, W, #, C, year lists...) are not compiled and are left to quartz.
+ *
+ * Matching a time is a handful of bit tests on the fields packed by {@link #fields(long, TimeZone)}
+ * and allocates nothing.
+ */
+final class CronMask {
+
+    /**
+     * returned by the field parser when the field is outside of the supported syntax
+     */
+    private static final long UNSUPPORTED = -1L;
+
+    /**
+     * the minute mask of an expression that matches every minute
+     */
+    private static final long ALL_MINUTES = (1L << 60) - 1;
+
+    private static final int ALL_MONTHS = 0x1ffe;
+
+    private static final int ALL_DAYS_OF_MONTH = 0xfffffffe;
+
+    private static final int ALL_DAYS_OF_WEEK = 0xfe;
+
+    static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * MILLIS_PER_MINUTE;
+
+    private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+
+    /**
+     * the number of days before each month (1-12) in a year that is not a leap year
+     */
+    private static final int[] DAYS_BEFORE_MONTH = {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    /**
+     * bits 0-59
+     */
+    private final long minutes;
+
+    /**
+     * bits 0-23
+     */
+    private final int hours;
+
+    /**
+     * bits 1-31, only used if {@link #useDayOfWeek} is false
+     */
+    private final int daysOfMonth;
+
+    /**
+     * bits 1-12
+     */
+    private final int months;
+
+    /**
+     * bits 1-7 in quartz numbering (1 is Sunday), only used if {@link #useDayOfWeek} is true
+     */
+    private final int daysOfWeek;
+
+    /**
+     * true if the day of month is '?' and the day of week decides
+     */
+    private final boolean useDayOfWeek;
+
+    private final int minYear;
+
+    private final int maxYear;
+
+    private CronMask(long minutes, int hours, int daysOfMonth, int months, int daysOfWeek,
+                     boolean useDayOfWeek, int minYear, int maxYear) {
+        this.minutes = minutes;
+        this.hours = hours;
+        this.daysOfMonth = daysOfMonth;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+        this.useDayOfWeek = useDayOfWeek;
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+    }
+
+    /**
+     * Compiles a quartz cron expression as returned by {@link FreezeWindowMonitor#normalize(String)}.
+     * @param normalized the normalized cron expression
+     * @return the compiled masks, or null if the expression uses syntax that only quartz supports
+     * or is invalid
+     */
+    static CronMask compile(String normalized) {
+        try {
+            return parse(normalized);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a quartz cron expression as returned by {@link FreezeWindowMonitor#normalize(String)}
+     * in a single pass over its characters, following the semantics of quartz
+     * (a range whose end is lower than its start wraps around).
+     * @param normalized the normalized cron expression
+     * @return the compiled masks, or null if the expression uses syntax that only quartz supports
+     * @throws ParseException if the expression is invalid, with the offset of the error in the expression
+     */
+    static CronMask parse(String normalized) throws ParseException {
+        String expression = normalized.toUpperCase(Locale.US);
+        int[] starts = new int[FIELDS.length + 1];
+        int[] ends = new int[FIELDS.length + 1];
+        int count = 0;
+        int i = 0;
+        while (count < starts.length) {
+            while (i < expression.length() && Character.isWhitespace(expression.charAt(i))) {
+                i++;
+            }
+            if (i == expression.length()) {
+                break;
+            }
+            starts[count] = i;
+            while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))) {
+                i++;
+            }
+            ends[count++] = i;
+        }
+        if (count < FIELDS.length - 1) {
+            throw new ParseException("Too few fields", expression.length());
+        }
+        if (count > FIELDS.length) {
+            throw new ParseException("Too many fields", starts[FIELDS.length]);
+        }
+        if (ends[0] - starts[0] != 1 || expression.charAt(starts[0]) != '*') {
+            // the seconds are always '*' after normalization
+            return null;
+        }
+
+        // exactly one of day of month and day of week must be '?'
+        boolean useDayOfWeek = isQuestionMark(expression, starts[3], ends[3]);
+        if (useDayOfWeek == isQuestionMark(expression, starts[5], ends[5])) {
+            throw new ParseException("Exactly one of day of month and day of week must be '?'", starts[3]);
+        }
+
+        long[] masks = new long[FIELDS.length];
+        boolean supported = true;
+        for (int field = 1; field < count; field++) {
+            if (field != (useDayOfWeek ? 3 : 5)) {
+                masks[field] = FIELDS[field].parse(expression, starts[field], ends[field]);
+                supported &= masks[field] != UNSUPPORTED;
+            }
+        }
+        if (!supported) {
+            return null;
+        }
+
+        int minYear = 1970;
+        int maxYear = Integer.MAX_VALUE;
+        if (count == FIELDS.length && masks[6] != 0) {
+            minYear = (int) (masks[6] >>> 32);
+            maxYear = (int) masks[6];
+        }
+        return new CronMask(masks[1], (int) masks[2], (int) masks[3], (int) masks[4], (int) masks[5],
+                useDayOfWeek, minYear, maxYear);
+    }
+
+    private static boolean isQuestionMark(String expression, int start, int end) {
+        return end - start == 1 && expression.charAt(start) == '?';
+    }
+
+    /**
+     * The grammar of a field: a comma separated list of '*', values or ranges, each optionally followed by a step.
+     */
+    private static class Field {
+
+        private final String name;
+
+        private final int min;
+
+        private final int max;
+
+        /**
+         * the lowest value as written in the freeze windows, before {@link FreezeWindowMonitor#normalize(String)}
+         */
+        private final int first;
+
+        /**
+         * the names of the values, or null if the field only has numbers
+         */
+        private final String[] names;
+
+        /**
+         * the characters of the syntax that only quartz supports in this field (L, W, #, C)
+         */
+        private final String quartzOnly;
+
+        Field(String name, int min, int max, int first, String[] names, String quartzOnly) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.first = first;
+            this.names = names;
+            this.quartzOnly = quartzOnly;
+        }
+
+        /**
+         * Parses the field between the given offsets into a bit mask.
+         * @return the bit mask or {@link #UNSUPPORTED}
+         * @throws ParseException if the field is invalid
+         */
+        long parse(String expression, int start, int end) throws ParseException {
+            long mask = 0;
+            boolean supported = true;
+            int i = start;
+            while (true) {
+                int elementEnd = i;
+                boolean special = false;
+                while (elementEnd < end && expression.charAt(elementEnd) != ',') {
+                    special |= quartzOnly.indexOf(expression.charAt(elementEnd)) >= 0;
+                    elementEnd++;
+                }
+                if (elementEnd == i) {
+                    throw error("Empty list element", i);
+                }
+                if (special) {
+                    // checked by quartz
+                    supported = false;
+                } else {
+                    long element = parseElement(expression, i, elementEnd);
+                    supported &= element != UNSUPPORTED;
+                    mask |= element;
+                }
+                if (elementEnd == end) {
+                    return supported ? mask : UNSUPPORTED;
+                }
+                i = elementEnd + 1;
+            }
+        }
+
+        /**
+         * Parses '*', a value or a range, optionally followed by a step.
+         */
+        private long parseElement(String expression, int start, int end) throws ParseException {
+            int i = start;
+            int from;
+            int to;
+            boolean named = false;
+            char c = expression.charAt(i);
+            if (c == '*') {
+                from = min;
+                to = max;
+                i++;
+            } else {
+                named = isLetter(c);
+                from = parseValue(expression, i, end);
+                i += named ? 3 : digits(expression, i, end);
+                to = from;
+                if (i < end && expression.charAt(i) == '-') {
+                    i++;
+                    if (i == end || isLetter(expression.charAt(i)) != named) {
+                        throw error("A range must be two numbers or two names", i);
+                    }
+                    to = parseValue(expression, i, end);
+                    i += named ? 3 : digits(expression, i, end);
+                } else if (i < end && expression.charAt(i) == '/') {
+                    to = max;
+                }
+            }
+
+            int increment = 1;
+            if (i < end && expression.charAt(i) == '/') {
+                i++;
+                int length = digits(expression, i, end);
+                if (length == 0) {
+                    throw error("'/' must be followed by a number", i);
+                }
+                increment = parseNumber(expression, i, i + length);
+                if (increment < 1 || increment > max) {
+                    throw error("The step must be between 1 and " + max, i);
+                }
+                if (named) {
+                    // quartz silently ignores steps after names
+                    return UNSUPPORTED;
+                }
+                i += length;
+            }
+            if (i < end) {
+                throw error("Unexpected character '" + expression.charAt(i) + "'", i);
+            }
+
+            long mask = 0;
+            int modulus = max - min + 1;
+            int stop = to < from ? to + modulus : to;
+            for (int value = from; value <= stop; value += increment) {
+                mask |= 1L << ((value - min) % modulus + min);
+            }
+            return mask;
+        }
+
+        /**
+         * @return the value of the number or name at the given offset
+         */
+        int parseValue(String expression, int i, int end) throws ParseException {
+            char c = expression.charAt(i);
+            if (isLetter(c)) {
+                if (names != null) {
+                    for (int n = 0; n < names.length; n++) {
+                        if (expression.regionMatches(i, names[n], 0, 3) && i + 3 <= end) {
+                            return n + min;
+                        }
+                    }
+                }
+                throw error(names == null ? "Names are not allowed" : "Unknown name", i);
+            }
+            int length = digits(expression, i, end);
+            if (length == 0) {
+                throw error(c == '?' ? "'?' can only be used alone in the day of month or the day of week"
+                        : "Unexpected character '" + c + "'", i);
+            }
+            int value = parseNumber(expression, i, i + length);
+            if (value < min || value > max) {
+                throw error("The value must be between " + first + " and " + (first + max - min), i);
+            }
+            return value;
+        }
+
+        ParseException error(String message, int offset) {
+            return new ParseException(name + ": " + message, offset);
+        }
+    }
+
+    /**
+     * The year is either '*', a year or a range of years. Year lists and steps are left to quartz.
+     * The mask holds the first year in the upper and the last year in the lower 32 bits, it is 0 for '*'.
+     */
+    private static final class YearField extends Field {
+
+        YearField() {
+            super("year", 1970, 2099, 1970, null, "");
+        }
+
+        @Override
+        long parse(String expression, int start, int end) throws ParseException {
+            if (end - start == 1 && expression.charAt(start) == '*') {
+                return 0;
+            }
+            for (int i = start; i < end; i++) {
+                char c = expression.charAt(i);
+                if (c == ',' || c == '/') {
+                    // checked by quartz
+                    return UNSUPPORTED;
+                }
+            }
+            int first = parseValue(expression, start, end);
+            int i = start + digits(expression, start, end);
+            int last = first;
+            if (i < end && expression.charAt(i) == '-') {
+                i++;
+                if (i == end) {
+                    throw error("A range must be two numbers", i);
+                }
+                last = parseValue(expression, i, end);
+                i += digits(expression, i, end);
+            }
+            if (i < end) {
+                throw error("Unexpected character '" + expression.charAt(i) + "'", i);
+            }
+            if (last < first) {
+                // quartz accepts the range and never matches
+                return UNSUPPORTED;
+            }
+            return ((long) first << 32) | last;
+        }
+    }
+
+    /**
+     * the fields of a normalized expression, the seconds are not parsed
+     */
+    private static final Field[] FIELDS = {
+        null,
+        new Field("minute", 0, 59, 0, null, ""),
+        new Field("hour", 0, 23, 0, null, ""),
+        new Field("day of month", 1, 31, 1, null, "LWC"),
+        new Field("month", 1, 12, 1, MONTH_NAMES, ""),
+        new Field("day of week", 1, 7, 0, DAY_NAMES, "L#C"),
+        new YearField()
+    };
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * @return the number of decimal digits at the given offset
+     */
+    private static int digits(String expression, int i, int end) {
+        int start = i;
+        while (i < end && expression.charAt(i) >= '0' && expression.charAt(i) <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+
+    /**
+     * @return the value of the unsigned decimal number between the given offsets, saturated at 100000
+     */
+    private static int parseNumber(String expression, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            number = Math.min(number * 10 + (expression.charAt(i) - '0'), 100000);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the number of minutes that can be skipped from the start of the minute of the given fields
+     * without missing a change of {@link #matches(long)}. The minutes are only skipped up to the next hour,
+     * so that changes of the time zone offset never hide a matching minute.
+     * @param fields the calendar fields of the start of a minute
+     * @param active the current result of {@link #matches(long)} for the fields
+     * @return the number of minutes to skip, at least 1
+     */
+    int minutesToSkip(long fields, boolean active) {
+        int minute = minute(fields);
+        long candidates;
+        if (active) {
+            candidates = ~minutes & ALL_MINUTES;
+        } else if (year(fields) > maxYear) {
+            return Integer.MAX_VALUE;
+        } else if (!matchesHour(fields)) {
+            return 60 - minute;
+        } else {
+            candidates = minutes;
+        }
+        long later = candidates >>> (minute + 1);
+        return later == 0 ? 60 - minute : Long.numberOfTrailingZeros(later) + 1;
+    }
+
+    /**
+     * Returns the minutes of the hour of the given fields that match this expression.
+     * @param fields calendar fields as returned by {@link #fields(long, TimeZone)}, the minute is ignored
+     * @return bits 0-59 of the matching minutes, 0 if the hour does not match
+     */
+    long minutesOfHour(long fields) {
+        return matchesHour(fields) ? minutes : 0;
+    }
+
+    /**
+     * Returns true if this expression repeats every week, that is if it does not depend
+     * on the month, the year or (unless it matches every day of the month) the day of month.
+     * @return true if this expression repeats every week
+     */
+    boolean isWeekly() {
+        return months == ALL_MONTHS && minYear <= 1970 && maxYear == Integer.MAX_VALUE
+                && (useDayOfWeek || daysOfMonth == ALL_DAYS_OF_MONTH);
+    }
+
+    /**
+     * Returns true if every minute matched by the other expression is matched by this expression.
+     * The check compares the fields one by one, so it may miss some expressions that are covered
+     * only by the combination of their fields, but it never reports a minute that is not covered.
+     * @param other the other expression
+     * @return true if this expression covers the other one
+     */
+    boolean covers(CronMask other) {
+        boolean days;
+        if (useDayOfWeek) {
+            days = other.useDayOfWeek ? isSubset(other.daysOfWeek, daysOfWeek) : daysOfWeek == ALL_DAYS_OF_WEEK;
+        } else {
+            days = !other.useDayOfWeek ? isSubset(other.daysOfMonth, daysOfMonth) : daysOfMonth == ALL_DAYS_OF_MONTH;
+        }
+        return days
+                && (other.minutes & ~minutes) == 0
+                && isSubset(other.hours, hours)
+                && isSubset(other.months, months)
+                && other.minYear >= minYear && other.maxYear <= maxYear;
+    }
+
+    private static boolean isSubset(int subset, int set) {
+        return (subset & ~set) == 0;
+    }
+
+    /**
+     * Estimates the share of all minutes matched by this expression, assuming the fields are independent.
+     * @return a number between 0 and 1
+     */
+    double getDensity() {
+        double days = useDayOfWeek ? Integer.bitCount(daysOfWeek) / 7.0 : Integer.bitCount(daysOfMonth) / 31.0;
+        return Long.bitCount(minutes) / 60.0 * Integer.bitCount(hours) / 24.0
+                * Integer.bitCount(months) / 12.0 * days;
+    }
+
+    /**
+     * Check if the packed calendar fields match this expression.
+     * @param fields calendar fields as returned by {@link #fields(long, TimeZone)}
+     * @return true if the fields match
+     */
+    boolean matches(long fields) {
+        return (minutes & (1L << minute(fields))) != 0 && matchesHour(fields);
+    }
+
+    /**
+     * @return true if the year, month, day and hour of the fields match, regardless of the minute
+     */
+    private boolean matchesHour(long fields) {
+        int year = year(fields);
+        return (hours & (1 << hour(fields))) != 0
+                && (months & (1 << month(fields))) != 0
+                && (useDayOfWeek ? (daysOfWeek & (1 << dayOfWeek(fields))) != 0
+                                 : (daysOfMonth & (1 << dayOfMonth(fields))) != 0)
+                && year >= minYear && year <= maxYear;
+    }
+
+    /**
+     * Splits a time into the calendar fields of the given time zone, packed into a single long
+     * so that the calendar arithmetic is done once per time and without allocation.
+     * @param time milliseconds since the epoch
+     * @param timeZone the time zone the freeze windows are defined in
+     * @return the packed calendar fields
+     */
+    static long fields(long time, TimeZone timeZone) {
+        long local = time + timeZone.getOffset(time);
+        long days = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        int minuteOfDay = (int) ((local - days * MILLIS_PER_DAY) / MILLIS_PER_MINUTE);
+        // 1970-01-01 was a Thursday, quartz numbers the days of week from Sunday = 1
+        int dayOfWeek = (int) (((days + 4) % 7 + 7) % 7) + 1;
+
+        // civil date from days since the epoch in the proleptic gregorian calendar
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        return pack((int) year, month, dayOfMonth, dayOfWeek, minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * Packs calendar fields the way {@link #fields(long, TimeZone)} does.
+     */
+    static long pack(int year, int month, int dayOfMonth, int dayOfWeek, int hour, int minute) {
+        return ((long) year << 32) | ((long) month << 24) | ((long) dayOfMonth << 16)
+                | ((long) dayOfWeek << 11) | ((long) hour << 6) | minute;
+    }
+
+    /**
+     * @return the day of the year of the fields, starting with 1
+     */
+    static int dayOfYear(long fields) {
+        int month = month(fields);
+        int dayOfYear = DAYS_BEFORE_MONTH[month] + dayOfMonth(fields);
+        if (month > 2 && isLeapYear(year(fields))) {
+            dayOfYear++;
+        }
+        return dayOfYear;
+    }
+
+    static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    static int minute(long fields) {
+        return (int) (fields & 0x3f);
+    }
+
+    static int hour(long fields) {
+        return (int) ((fields >>> 6) & 0x1f);
+    }
+
+    static int dayOfWeek(long fields) {
+        return (int) ((fields >>> 11) & 0x7);
+    }
+
+    static int dayOfMonth(long fields) {
+        return (int) ((fields >>> 16) & 0x1f);
+    }
+
+    static int month(long fields) {
+        return (int) ((fields >>> 24) & 0xf);
+    }
+
+    static int year(long fields) {
+        return (int) (fields >>> 32);
+    }
+}
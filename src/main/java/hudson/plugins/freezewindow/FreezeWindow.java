@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * A single freeze window line that has been compiled once.
+ *
+ * Freeze windows are compiled into a {@link CronMask} whenever possible, quartz is the fallback
+ * for the expressions the masks do not support. Expressions the masks reject are invalid,
+ * like in the form validation, even if quartz would accept them.
+ * Lines starting with '@' hold explicit ranges of time instead, see {@link FreezeWindowCalendar}.
+ * Instances are immutable and may be shared between threads.
+ */
+public final class FreezeWindow {
+
+    /**
+     * Set this system property to evaluate all freeze windows with quartz.
+     */
+    static final boolean QUARTZ_ONLY = Boolean.getBoolean(FreezeWindow.class.getName() + ".quartzOnly");
+
+    /**
+     * the number of minutes an active quartz freeze window is followed to find its end
+     */
+    private static final int QUARTZ_ACTIVE_MINUTES = 60;
+
+    /**
+     * the freeze window as entered in the job configuration
+     */
+    private final String text;
+
+    /**
+     * the time zone the freeze window is evaluated in
+     */
+    private final TimeZone timeZone;
+
+    /**
+     * the compiled masks, null if the freeze window is evaluated with quartz
+     */
+    private final CronMask mask;
+
+    /**
+     * the compiled quartz expression of the normalized freeze window, null if {@link #mask} is used
+     */
+    private final CronExpression expression;
+
+    /**
+     * the explicit ranges of a <code>@range</code>, <code>@ics</code> or <code>@except</code> line,
+     * null for cron expressions
+     */
+    private final FreezeWindowCalendar calendar;
+
+    /**
+     * true if the ranges of {@link #calendar} lift the freeze instead of blocking
+     */
+    private final boolean exception;
+
+    /**
+     * the cause of blockage of the last minute this freeze window blocked an item in
+     */
+    private volatile FreezeWindowCauseOfBlockage cause;
+
+    private FreezeWindow(String text, TimeZone timeZone, CronMask mask, CronExpression expression) {
+        this(text, timeZone, mask, expression, null, false);
+    }
+
+    private FreezeWindow(String text, TimeZone timeZone, CronMask mask, CronExpression expression,
+                         FreezeWindowCalendar calendar, boolean exception) {
+        this.text = text;
+        this.timeZone = timeZone;
+        this.mask = mask;
+        this.expression = expression;
+        this.calendar = calendar;
+        this.exception = exception;
+    }
+
+    /**
+     * Compiles a freeze window line in the default time zone.
+     * @param text a freeze window in standard cron format
+     * @return the compiled freeze window
+     * @throws ParseException if the freeze window is not a valid cron expression
+     */
+    public static FreezeWindow compile(String text) throws ParseException {
+        return compile(text, TimeZone.getDefault(), QUARTZ_ONLY);
+    }
+
+    /**
+     * Compiles a freeze window line.
+     * @param text a freeze window in standard cron format
+     * @param timeZone the time zone the freeze window is evaluated in
+     * @param quartzOnly true to skip the masks and always evaluate the freeze window with quartz
+     * @return the compiled freeze window
+     * @throws ParseException if the freeze window is not a valid cron expression
+     */
+    static FreezeWindow compile(String text, TimeZone timeZone, boolean quartzOnly) throws ParseException {
+        if (text.startsWith("@")) {
+            return compileDirective(text, timeZone);
+        }
+        String normalized;
+        try {
+            normalized = FreezeWindowMonitor.normalize(text);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ParseException("Too few fields in freeze window " + text, text.length());
+        }
+        CronMask mask = quartzOnly ? null : CronMask.parse(normalized);
+        return of(text, timeZone, mask, mask == null ? new CronExpression(normalized) : null);
+    }
+
+    /**
+     * Creates a freeze window from a cron expression that has already been parsed.
+     * @param text the freeze window in standard cron format
+     * @param timeZone the time zone the freeze window is evaluated in
+     * @param mask the masks of the expression, null if it needs quartz
+     * @param expression the quartz expression, only used if there are no masks
+     * @return the freeze window
+     */
+    static FreezeWindow of(String text, TimeZone timeZone, CronMask mask, CronExpression expression) {
+        if (mask != null) {
+            return new FreezeWindow(text, timeZone, mask, null);
+        }
+        expression.setTimeZone(timeZone);
+        return new FreezeWindow(text, timeZone, null, expression);
+    }
+
+    /**
+     * Compiles a line with explicit ranges instead of a cron expression:
+     * <code>@range FROM [TO]</code> and <code>@ics FILE</code> block during the ranges,
+     * <code>@except FROM [TO]</code> and <code>@except-ics FILE</code> lift all freezes during the ranges.
+     */
+    private static FreezeWindow compileDirective(String text, TimeZone timeZone) throws ParseException {
+        String[] parts = text.split("\\s+", 2);
+        String arguments = parts.length > 1 ? parts[1].trim() : "";
+        String directive = parts[0];
+        FreezeWindowCalendar calendar;
+        try {
+            if (directive.equals("@range") || directive.equals("@except")) {
+                calendar = FreezeWindowCalendar.parseRange(arguments, timeZone);
+            } else if (directive.equals("@ics") || directive.equals("@except-ics")) {
+                calendar = FreezeWindowCalendar.parseIcs(arguments, timeZone);
+            } else {
+                throw new ParseException("Unknown directive " + directive
+                        + ", expected @range, @ics, @except or @except-ics", 0);
+            }
+        } catch (FreezeWindowCalendar.UnreadableException e) {
+            throw new FreezeWindowCalendar.UnreadableException(e.getMessage(),
+                    e.getErrorOffset() + text.length() - arguments.length());
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorOffset() + text.length() - arguments.length());
+        }
+        return new FreezeWindow(text, timeZone, null, null, calendar, directive.startsWith("@except"));
+    }
+
+    /**
+     * Returns the freeze window as entered in the job configuration.
+     * @return the freeze window text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns true if this freeze window is evaluated with the compiled masks rather than quartz.
+     * @return true if this freeze window is evaluated with the compiled masks
+     */
+    public boolean isNative() {
+        return mask != null;
+    }
+
+    /**
+     * Returns true if this line lifts all freezes during its ranges instead of blocking.
+     * @return true for <code>@except</code> and <code>@except-ics</code> lines
+     */
+    public boolean isException() {
+        return exception;
+    }
+
+    /**
+     * @return the cause of blockage of the last minute this freeze window blocked an item in, may be null
+     */
+    FreezeWindowCauseOfBlockage getCause() {
+        return cause;
+    }
+
+    void setCause(FreezeWindowCauseOfBlockage cause) {
+        this.cause = cause;
+    }
+
+    /**
+     * @return the explicit ranges, null if this freeze window is a cron expression
+     */
+    FreezeWindowCalendar getCalendar() {
+        return calendar;
+    }
+
+    /**
+     * @return the compiled masks, null if this freeze window is evaluated with quartz
+     */
+    CronMask getMask() {
+        return mask;
+    }
+
+    /**
+     * Check if the given time is in this freeze window.
+     * @param time the time to check
+     * @return true if the freeze window contains the given time
+     */
+    public boolean isActive(Date time) {
+        return isActive(time.getTime(), CronMask.fields(time.getTime(), timeZone));
+    }
+
+    /**
+     * Check if the given time is in this freeze window.
+     * @param time milliseconds since the epoch
+     * @param fields the calendar fields of the time, see {@link CronMask#fields(long, TimeZone)}
+     * @return true if the freeze window contains the given time
+     */
+    boolean isActive(long time, long fields) {
+        if (mask != null) {
+            return mask.matches(fields);
+        }
+        if (calendar != null) {
+            return calendar.contains(time);
+        }
+        return expression.isSatisfiedBy(new Date(time));
+    }
+
+    /**
+     * Returns the next time after the given minute at which this freeze window becomes active
+     * (if it is inactive) or inactive (if it is active).
+     * @param time the start of a minute, in milliseconds since the epoch
+     * @param active true if the freeze window is active at the given time
+     * @param limit the latest time to look at
+     * @return the start of the first minute after the given time with a different state,
+     * or a time up to the limit before which the state does not change
+     */
+    long nextTransition(long time, boolean active, long limit) {
+        if (mask != null) {
+            long t = time;
+            long fields = CronMask.fields(t, timeZone);
+            while (true) {
+                t += mask.minutesToSkip(fields, active) * CronMask.MILLIS_PER_MINUTE;
+                if (t >= limit) {
+                    return limit;
+                }
+                fields = CronMask.fields(t, timeZone);
+                if (mask.matches(fields) != active) {
+                    return t;
+                }
+            }
+        }
+        if (calendar != null) {
+            return calendar.nextTransition(time, limit);
+        }
+        if (!active) {
+            Date next = expression.getNextValidTimeAfter(new Date(time));
+            return next == null ? limit : Math.min(next.getTime(), limit);
+        }
+        long t = time;
+        for (int i = 0; i < QUARTZ_ACTIVE_MINUTES; i++) {
+            t += CronMask.MILLIS_PER_MINUTE;
+            if (t >= limit || !expression.isSatisfiedBy(new Date(t))) {
+                return Math.min(t, limit);
+            }
+        }
+        return t;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
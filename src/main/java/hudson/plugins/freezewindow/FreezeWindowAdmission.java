@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps builds from starting when their estimated duration runs into the next freeze.
+ *
+ * The estimate of a job is cached until its next build completes or the job is deleted or renamed,
+ * and the states following the current freeze state are cached with it in the {@link FreezeWindowSet},
+ * so checking an item costs a few lookups rather than a pass over the build history and the freeze windows.
+ */
+final class FreezeWindowAdmission {
+
+    /**
+     * true if builds that would run into a freeze are blocked
+     */
+    private static volatile boolean enabled;
+
+    /**
+     * the configured maximum build duration in milliseconds, used instead of the estimate, or -1
+     */
+    private static volatile long maximumBuildMillis = -1;
+
+    /**
+     * the estimated duration of each job by full name, -1 if the job has no estimate
+     */
+    private static final ConcurrentMap<String, Long> ESTIMATES = new ConcurrentHashMap<String, Long>();
+
+    private FreezeWindowAdmission() {
+    }
+
+    /**
+     * Configures the admission check.
+     * @param enabled true to block builds that would run into a freeze
+     * @param maximumBuildMinutes the maximum build duration used instead of the estimate, 0 to use the estimate
+     */
+    static void configure(boolean enabled, int maximumBuildMinutes) {
+        FreezeWindowAdmission.maximumBuildMillis = maximumBuildMinutes > 0 ? maximumBuildMinutes * 60000L : -1;
+        FreezeWindowAdmission.enabled = enabled;
+    }
+
+    /**
+     * @return true if builds that would run into a freeze are blocked
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the expected duration of a build of the job: the configured maximum,
+     * otherwise the estimate of the job.
+     * @param job the job
+     * @return the duration in milliseconds, -1 if unknown
+     */
+    static long getDuration(Job<?, ?> job) {
+        long maximum = maximumBuildMillis;
+        if (maximum > 0) {
+            return maximum;
+        }
+        String fullName = job.getFullName();
+        Long estimate = ESTIMATES.get(fullName);
+        if (estimate == null) {
+            estimate = job.getEstimatedDuration();
+            ESTIMATES.put(fullName, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * Checks if a build started at the given time runs into a freeze before its expected end.
+     * @param freezeWindowSet the freeze windows of the job
+     * @param now the start of the build
+     * @param duration the duration of the build in milliseconds, negative if unknown
+     * @return the freeze state at the start of the first freeze the build would run into, or null
+     */
+    static FreezeWindowSet.State check(FreezeWindowSet freezeWindowSet, long now, long duration) {
+        if (duration <= 0) {
+            return null;
+        }
+        return freezeWindowSet.getNextFreeze(now, now + duration);
+    }
+
+    /**
+     * Forgets the estimate of a job.
+     * @param fullName the full name of the job
+     */
+    static void forget(String fullName) {
+        ESTIMATES.remove(fullName);
+    }
+
+    /**
+     * Forgets the estimates of an item and, if it is a folder, of the jobs within it.
+     * @param fullName the full name of the item
+     */
+    static void forgetAll(String fullName) {
+        for (String name : ESTIMATES.keySet()) {
+            if (name.equals(fullName) || name.startsWith(fullName + '/')) {
+                ESTIMATES.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Forgets the estimate of a job when one of its builds completes.
+     */
+    @Extension
+    public static class Listener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            forget(run.getParent().getFullName());
+        }
+    }
+
+    /**
+     * Forgets the estimate of a job when it is deleted or renamed.
+     */
+    @Extension
+    public static class JobListener extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            forgetAll(oldFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            forgetAll(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Util;
+import hudson.model.queue.CauseOfBlockage;
+import org.joda.time.DateTime;
+
+/**
+ * Cause of blockage of an item whose estimated duration runs into the next freeze,
+ * see {@link FreezeWindowAdmission}.
+ */
+public class FreezeWindowAdmissionCause extends CauseOfBlockage {
+
+    /**
+     * the freeze window the build would run into
+     */
+    private final FreezeWindow freezeWindow;
+
+    /**
+     * the start of the freeze
+     */
+    private final long freezeStart;
+
+    /**
+     * the expected duration of the build in milliseconds
+     */
+    private final long duration;
+
+    /**
+     * Constructor
+     * @param freezeWindow the freeze window the build would run into
+     * @param freezeStart the start of the freeze
+     * @param duration the expected duration of the build in milliseconds
+     */
+    public FreezeWindowAdmissionCause(FreezeWindow freezeWindow, long freezeStart, long duration) {
+        this.freezeWindow = freezeWindow;
+        this.freezeStart = freezeStart;
+        this.duration = duration;
+    }
+
+    public FreezeWindow getFreezeWindow() {
+        return freezeWindow;
+    }
+
+    public long getFreezeStart() {
+        return freezeStart;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String getShortDescription() {
+        return Messages.WouldRunIntoFreezeWindow(Util.getTimeSpanString(duration), freezeWindow.getText(),
+                new DateTime(freezeStart));
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Validates the freeze windows of many jobs in parallel and reports invalid, redundant
+ * and never firing freeze windows.
+ *
+ * Targets are read from an iterator while the audit runs and results are passed to a
+ * {@link Sink} as soon as they are ready, so only a few targets are held in memory at a time.
+ */
+public final class FreezeWindowAudit {
+
+    /**
+     * how far ahead a freeze window must fire not to be reported as never firing, covers leap days
+     */
+    static final long NEVER_FIRES_HORIZON = (4L * 365L + 2L) * 24L * 60L * CronMask.MILLIS_PER_MINUTE;
+
+    /**
+     * the number of targets queued per thread
+     */
+    private static final int QUEUED_PER_THREAD = 4;
+
+    private static final Comparator<Finding> BY_LINE = new Comparator<Finding>() {
+        public int compare(Finding a, Finding b) {
+            return a.getLine() - b.getLine();
+        }
+    };
+
+    /**
+     * The kind of problem found in a freeze window.
+     */
+    public enum Kind {
+        /** the freeze window is not a valid cron expression and is ignored */
+        INVALID,
+        /** the freeze window duplicates another one of the same job or an inherited one */
+        REDUNDANT,
+        /** the freeze window does not fire in the foreseeable future */
+        NEVER_FIRES
+    }
+
+    private FreezeWindowAudit() {
+    }
+
+    /**
+     * Audits the freeze windows of one target.
+     * @param target the target
+     * @param now the current time
+     * @return the result, with no findings if all freeze windows are fine
+     */
+    public static Result audit(Target target, long now) {
+        List<Finding> findings = new ArrayList<Finding>();
+        Set<String> inherited = new HashSet<String>();
+        for (String line : lines(target.getInheritedFreezeWindows())) {
+            inherited.add(FreezeWindowOptimizer.canonical(line));
+        }
+        Map<String, Integer> seen = new HashMap<String, Integer>();
+        Map<FreezeWindow, Integer> compiled = new LinkedHashMap<FreezeWindow, Integer>();
+        String[] lines = target.getFreezeWindows() == null ? new String[0] : target.getFreezeWindows().split("\n");
+        long minute = FreezeWindowClock.floorToMinute(now);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.length() == 0) {
+                continue;
+            }
+            int lineNumber = i + 1;
+            String error = FreezeWindowValidator.validate(line);
+            if (error != null) {
+                findings.add(new Finding(lineNumber, line, Kind.INVALID, error));
+                continue;
+            }
+            String key = FreezeWindowOptimizer.canonical(line);
+            Integer first = seen.get(key);
+            if (first != null) {
+                findings.add(new Finding(lineNumber, line, Kind.REDUNDANT, "Duplicate of line " + first));
+                continue;
+            }
+            seen.put(key, lineNumber);
+            if (inherited.contains(key)) {
+                findings.add(new Finding(lineNumber, line, Kind.REDUNDANT, "Also inherited from a folder or the global configuration"));
+                continue;
+            }
+            if (FreezeWindowSharedCalendar.isReference(line)) {
+                // the lines of the shared calendar are validated when the calendar file is loaded
+                continue;
+            }
+            try {
+                FreezeWindow window = FreezeWindow.compile(line);
+                compiled.put(window, lineNumber);
+                long limit = minute + NEVER_FIRES_HORIZON;
+                if (!window.isActive(new Date(minute)) && window.nextTransition(minute, false, limit) >= limit) {
+                    findings.add(new Finding(lineNumber, line, Kind.NEVER_FIRES, "Does not fire within the next four years"));
+                }
+            } catch (ParseException e) {
+                findings.add(new Finding(lineNumber, line, Kind.INVALID, e.getMessage()));
+            }
+        }
+        List<FreezeWindow> windows = new ArrayList<FreezeWindow>(compiled.keySet());
+        for (FreezeWindowOptimizer.Removal removal : FreezeWindowOptimizer.optimize(windows).getRemoved()) {
+            findings.add(new Finding(compiled.get(removal.getFreezeWindow()), removal.getFreezeWindow().getText(),
+                    Kind.REDUNDANT, "Covered by line " + compiled.get(removal.getCoveredBy())));
+        }
+        Collections.sort(findings, BY_LINE);
+        return new Result(target.getName(), findings);
+    }
+
+    /**
+     * Audits all targets on a pool with one thread per processor and reports the results
+     * in the order they complete.
+     * @param targets the targets, read on the calling thread
+     * @param now the current time
+     * @param sink receives the results, called on the calling thread
+     * @return the totals of the audit
+     * @throws IOException if the sink fails
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public static Summary run(Iterator<Target> targets, long now, Sink sink) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return run(targets, now, sink, executor, threads * QUEUED_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Audits all targets on the given executor, with at most the given number of targets in flight.
+     */
+    static Summary run(Iterator<Target> targets, final long now, Sink sink, ExecutorService executor, int maxInFlight)
+            throws IOException, InterruptedException {
+        CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+        Summary summary = new Summary();
+        int inFlight = 0;
+        while (true) {
+            while (inFlight < maxInFlight && targets.hasNext()) {
+                final Target target = targets.next();
+                completion.submit(new Callable<Result>() {
+                    public Result call() {
+                        return audit(target, now);
+                    }
+                });
+                inFlight++;
+            }
+            if (inFlight == 0) {
+                return summary;
+            }
+            Result result;
+            try {
+                result = completion.take().get();
+            } catch (ExecutionException e) {
+                throw new IOException("Freeze window audit failed", e.getCause());
+            }
+            inFlight--;
+            summary.add(result);
+            sink.report(result);
+        }
+    }
+
+    private static List<String> lines(String freezeWindows) {
+        if (StringUtils.isBlank(freezeWindows)) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<String>();
+        for (String line : freezeWindows.split("\n")) {
+            if (StringUtils.isNotBlank(line)) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Receives the result of each audited target.
+     */
+    public interface Sink {
+        /**
+         * @param result the result of one target
+         * @throws IOException if the result cannot be written
+         */
+        void report(Result result) throws IOException;
+    }
+
+    /**
+     * The freeze windows of a job, a folder or the global configuration.
+     */
+    public static final class Target {
+
+        private final String name;
+
+        private final String freezeWindows;
+
+        private final String inheritedFreezeWindows;
+
+        /**
+         * Constructor
+         * @param name the name shown in the report
+         * @param freezeWindows the freeze windows to audit
+         * @param inheritedFreezeWindows the freeze windows inherited by the target, may be null
+         */
+        public Target(String name, String freezeWindows, String inheritedFreezeWindows) {
+            this.name = name;
+            this.freezeWindows = freezeWindows;
+            this.inheritedFreezeWindows = inheritedFreezeWindows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFreezeWindows() {
+            return freezeWindows;
+        }
+
+        public String getInheritedFreezeWindows() {
+            return inheritedFreezeWindows;
+        }
+    }
+
+    /**
+     * A problem found in one freeze window.
+     */
+    public static final class Finding {
+
+        private final int line;
+
+        private final String freezeWindow;
+
+        private final Kind kind;
+
+        private final String message;
+
+        Finding(int line, String freezeWindow, Kind kind, String message) {
+            this.line = line;
+            this.freezeWindow = freezeWindow;
+            this.kind = kind;
+            this.message = message;
+        }
+
+        /**
+         * @return the line number of the freeze window, starting with 1
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getFreezeWindow() {
+            return freezeWindow;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * The findings of one target.
+     */
+    public static final class Result {
+
+        private final String name;
+
+        private final List<Finding> findings;
+
+        Result(String name, List<Finding> findings) {
+            this.name = name;
+            this.findings = Collections.unmodifiableList(findings);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        /**
+         * Formats the findings, one line each.
+         * @return the formatted findings, empty if there are none
+         */
+        public String format() {
+            StringBuilder sb = new StringBuilder();
+            for (Finding finding : findings) {
+                sb.append(finding.getKind()).append(' ').append(name).append(" line ").append(finding.getLine())
+                        .append(" \"").append(finding.getFreezeWindow()).append("\": ").append(finding.getMessage())
+                        .append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The totals of an audit.
+     */
+    public static final class Summary {
+
+        private int targets;
+
+        private final int[] counts = new int[Kind.values().length];
+
+        void add(Result result) {
+            targets++;
+            for (Finding finding : result.getFindings()) {
+                counts[finding.getKind().ordinal()]++;
+            }
+        }
+
+        /**
+         * @return the number of audited targets
+         */
+        public int getTargets() {
+            return targets;
+        }
+
+        /**
+         * @param kind the kind of problem
+         * @return the number of freeze windows with that kind of problem
+         */
+        public int getCount(Kind kind) {
+            return counts[kind.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            return "Audited " + targets + " freeze window configurations: " + getCount(Kind.INVALID) + " invalid, "
+                    + getCount(Kind.REDUNDANT) + " redundant, " + getCount(Kind.NEVER_FIRES) + " never firing";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+
+/**
+ * CLI command <code>freeze-window-audit</code> that prints the same report as {@link FreezeWindowAuditLink}.
+ * Exits with 1 if any freeze window is invalid.
+ */
+@Extension
+public class FreezeWindowAuditCommand extends CLICommand {
+
+    @Override
+    public String getShortDescription() {
+        return Messages.FreezeWindowAudit_Description();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        FreezeWindowAudit.Summary summary = FreezeWindowAuditLink.audit(new FreezeWindowAudit.Sink() {
+            public void report(FreezeWindowAudit.Result result) {
+                if (!result.getFindings().isEmpty()) {
+                    stdout.print(result.format());
+                    stdout.flush();
+                }
+            }
+        });
+        stdout.println(summary);
+        return summary.getCount(FreezeWindowAudit.Kind.INVALID) > 0 ? 1 : 0;
+    }
+}
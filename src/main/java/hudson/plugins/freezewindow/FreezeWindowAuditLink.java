@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Admin page that validates the freeze windows of all jobs, see {@link FreezeWindowAudit}.
+ * The report is streamed as plain text at <code>freezeWindowAudit/report</code>.
+ */
+@Extension
+public class FreezeWindowAuditLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.FreezeWindowAudit_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.FreezeWindowAudit_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "freezeWindowAudit";
+    }
+
+    /**
+     * Streams the audit report, one line per finding followed by the totals.
+     * @param req stapler request
+     * @param rsp stapler response
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void doReport(StaplerRequest req, StaplerResponse rsp) throws IOException, InterruptedException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain;charset=UTF-8");
+        final PrintWriter writer = rsp.getWriter();
+        FreezeWindowAudit.Summary summary = audit(new FreezeWindowAudit.Sink() {
+            public void report(FreezeWindowAudit.Result result) {
+                if (!result.getFindings().isEmpty()) {
+                    writer.print(result.format());
+                    writer.flush();
+                }
+            }
+        });
+        writer.println(summary);
+        writer.flush();
+    }
+
+    /**
+     * Audits the global freeze windows and the freeze windows of all jobs with a {@link FreezeWindowProperty}.
+     * @param sink receives the results as they complete
+     * @return the totals
+     * @throws IOException if the sink fails
+     * @throws InterruptedException if the audit is interrupted
+     */
+    static FreezeWindowAudit.Summary audit(FreezeWindowAudit.Sink sink) throws IOException, InterruptedException {
+        return FreezeWindowAudit.run(new Targets(Jenkins.getInstance().getAllItems(Job.class).iterator()),
+                FreezeWindowClock.SYSTEM.currentTimeMillis(), sink);
+    }
+
+    /**
+     * The global freeze windows followed by the jobs with freeze windows, read lazily.
+     */
+    private static final class Targets implements Iterator<FreezeWindowAudit.Target> {
+
+        private final Iterator<Job> jobs;
+
+        private FreezeWindowAudit.Target next = new FreezeWindowAudit.Target("(global)",
+                FreezeWindowInheritance.getGlobalFreezeWindows(), null);
+
+        Targets(Iterator<Job> jobs) {
+            this.jobs = jobs;
+        }
+
+        public boolean hasNext() {
+            while (next == null && jobs.hasNext()) {
+                Job<?, ?> job = jobs.next();
+                FreezeWindowProperty property = job.getProperty(FreezeWindowProperty.class);
+                if (property != null && property.getFreezeWindows() != null) {
+                    next = new FreezeWindowAudit.Target(job.getFullName(), property.getFreezeWindows(),
+                            FreezeWindowInheritance.resolveInherited(job));
+                }
+            }
+            return next != null;
+        }
+
+        public FreezeWindowAudit.Target next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FreezeWindowAudit.Target target = next;
+            next = null;
+            return target;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
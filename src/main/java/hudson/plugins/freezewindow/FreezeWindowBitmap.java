@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.util.List;
+
+/**
+ * The freeze windows of a set expanded into one bit per minute, so that checking
+ * a time is a single index computation and bit test.
+ *
+ * Sets whose windows all repeat every week are expanded over a week (1.3 KB),
+ * the others over a calendar year (66 KB) and are rebuilt when the year rolls over.
+ * Bitmaps are held by their {@link FreezeWindowSet}, which {@link FreezeWindowRegistry} shares
+ * between the jobs with identical freeze windows.
+ */
+final class FreezeWindowBitmap {
+
+    /**
+     * Set this system property to check the freeze windows with bitmaps.
+     */
+    static final boolean ENABLED = Boolean.getBoolean(FreezeWindowBitmap.class.getName() + ".enabled");
+
+    /**
+     * marks a bitmap that is valid in every year
+     */
+    private static final int EVERY_YEAR = -1;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * the year this bitmap covers, or {@link #EVERY_YEAR} for a weekly bitmap
+     */
+    private final int year;
+
+    /**
+     * one bit per minute of the week or of the year
+     */
+    private final long[] bits;
+
+    /**
+     * the number of minutes in the week or in the year
+     */
+    private final int size;
+
+    private FreezeWindowBitmap(int year, long[] bits, int size) {
+        this.year = year;
+        this.bits = bits;
+        this.size = size;
+    }
+
+    /**
+     * Expands the freeze windows over a week if they all repeat weekly, otherwise over the given year.
+     */
+    static FreezeWindowBitmap build(List<CronMask> windows, int year) {
+        boolean weekly = true;
+        for (CronMask window : windows) {
+            weekly &= window.isWeekly();
+        }
+        if (weekly) {
+            long[] bits = new long[(7 * MINUTES_PER_DAY + 63) / 64];
+            for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+                // any date outside of the year and month masks works for weekly windows
+                fillDay(bits, windows, CronMask.pack(2000, 1, 1, dayOfWeek, 0, 0), (dayOfWeek - 1) * MINUTES_PER_DAY);
+            }
+            return new FreezeWindowBitmap(EVERY_YEAR, bits, 7 * MINUTES_PER_DAY);
+        }
+
+        int days = CronMask.isLeapYear(year) ? 366 : 365;
+        long[] bits = new long[(days * MINUTES_PER_DAY + 63) / 64];
+        // the day of week of January 1st, 1970-01-01 was a Thursday and 1 is Sunday
+        int dayOfWeek = (int) ((daysBeforeYear(year) + 4) % 7) + 1;
+        int month = 1;
+        int dayOfMonth = 1;
+        for (int day = 0; day < days; day++) {
+            long date = CronMask.pack(year, month, dayOfMonth, dayOfWeek, 0, 0);
+            fillDay(bits, windows, date, day * MINUTES_PER_DAY);
+            dayOfWeek = dayOfWeek % 7 + 1;
+            if (++dayOfMonth > lengthOfMonth(year, month)) {
+                dayOfMonth = 1;
+                month++;
+            }
+        }
+        return new FreezeWindowBitmap(year, bits, days * MINUTES_PER_DAY);
+    }
+
+    private static void fillDay(long[] bits, List<CronMask> windows, long date, int firstMinute) {
+        for (int hour = 0; hour < 24; hour++) {
+            long minutes = 0;
+            for (CronMask window : windows) {
+                minutes |= window.minutesOfHour(date | ((long) hour << 6));
+            }
+            for (int minute = 0; minute < 60; minute++) {
+                if ((minutes & (1L << minute)) != 0) {
+                    int index = firstMinute + hour * 60 + minute;
+                    bits[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of days from January 1st, 1970 to January 1st of the given year
+     */
+    private static long daysBeforeYear(int year) {
+        long days = 0;
+        for (int y = 1970; y < year; y++) {
+            days += CronMask.isLeapYear(y) ? 366 : 365;
+        }
+        return days;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return CronMask.isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return true if this bitmap can be used for the given fields
+     */
+    boolean covers(long fields) {
+        return year == EVERY_YEAR || year == CronMask.year(fields);
+    }
+
+    /**
+     * Check if the minute of the given fields is in one of the freeze windows.
+     * @param fields calendar fields covered by this bitmap
+     * @return true if the minute is in one of the freeze windows
+     */
+    boolean isSet(long fields) {
+        int index = index(fields);
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Counts the minutes until the first minute that is not in the same state as the minute of the given fields.
+     * Weekly bitmaps wrap around, yearly bitmaps stop at the end of their year.
+     * @param fields calendar fields covered by this bitmap
+     * @param limit the maximum number of minutes to look ahead
+     * @return the number of minutes until the state changes, at most the limit
+     */
+    int minutesUntilChange(long fields, int limit) {
+        int index = index(fields);
+        // compare whole words against the state of the given minute
+        long flip = (bits[index >>> 6] & (1L << index)) != 0 ? -1L : 0L;
+        int scanned = 0;
+        while (scanned < limit) {
+            if (index == size) {
+                if (year != EVERY_YEAR) {
+                    return scanned;
+                }
+                index = 0;
+            }
+            int inWord = Math.min(64 - (index & 63), size - index);
+            long changed = (bits[index >>> 6] ^ flip) >>> index;
+            int offset = Long.numberOfTrailingZeros(changed);
+            if (offset < inWord) {
+                return Math.min(scanned + offset, limit);
+            }
+            scanned += inWord;
+            index += inWord;
+        }
+        return limit;
+    }
+
+    private int index(long fields) {
+        int minuteOfDay = CronMask.hour(fields) * 60 + CronMask.minute(fields);
+        int day = year == EVERY_YEAR ? CronMask.dayOfWeek(fields) : CronMask.dayOfYear(fields);
+        return (day - 1) * MINUTES_PER_DAY + minuteOfDay;
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+/**
+ * Explicit ranges of time, such as holidays or launch days, kept as a sorted array of
+ * disjoint intervals that is searched with a binary search.
+ *
+ * Ranges come from a freeze window line like <code>@range 2015-12-24 2015-12-26</code>
+ * or from the events of an iCalendar file, see {@link FreezeWindow#compile(String)}.
+ * All bounds are rounded to whole minutes, the granularity of the freeze windows.
+ * Instances are immutable and may be shared between threads.
+ *
+ * A compiled set keeps the version of each iCalendar file it read, see {@link #stamp(File)}, and is compiled
+ * again in the background once one of them changes, see {@link FreezeWindowRegistry#recompile()}.
+ */
+final class FreezeWindowCalendar {
+
+    /**
+     * the logger
+     */
+    private static final Logger LOG = Logger.getLogger(FreezeWindowCalendar.class.getName());
+
+    /**
+     * a calendar without any range
+     */
+    static final FreezeWindowCalendar EMPTY = new FreezeWindowCalendar(new long[0], new long[0]);
+
+    /**
+     * the directory iCalendar files are read from, null until Jenkins sets it
+     */
+    private static volatile File directory;
+
+    /**
+     * the start of each range, ascending
+     */
+    private final long[] starts;
+
+    /**
+     * the exclusive end of each range, ranges neither overlap nor touch
+     */
+    private final long[] ends;
+
+    private FreezeWindowCalendar(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Sets the directory iCalendar files are read from.
+     * @param directory the directory
+     */
+    static void setDirectory(File directory) {
+        FreezeWindowCalendar.directory = directory;
+    }
+
+    /**
+     * @return the directory iCalendar files are read from, may be null
+     */
+    static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns true if the line reads an iCalendar file.
+     * @param line the trimmed freeze window line
+     * @return true for <code>@ics</code> and <code>@except-ics</code> lines
+     */
+    static boolean isIcsReference(String line) {
+        String directive = line.split("\\s+", 2)[0];
+        return directive.equals("@ics") || directive.equals("@except-ics");
+    }
+
+    /**
+     * Returns the file an <code>@ics</code> or <code>@except-ics</code> line reads.
+     * @param line the trimmed freeze window line
+     * @return the file, null if the line reads no file or the file is outside of the calendar directory
+     */
+    static File getFile(String line) {
+        File base = directory;
+        String[] parts = line.split("\\s+", 2);
+        if (base == null || parts.length < 2 || !isIcsReference(line)) {
+            return null;
+        }
+        try {
+            File file = new File(base, parts[1].trim()).getCanonicalFile();
+            return file.getPath().startsWith(base.getCanonicalPath() + File.separator) ? file : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the version of a file: its last modification time and length, both 0 if it does not exist.
+     * @param file the file
+     * @return the version of the file
+     */
+    static long[] stamp(File file) {
+        return new long[]{file.lastModified(), file.length()};
+    }
+
+    /**
+     * Builds a calendar from ranges that may overlap and may be in any order.
+     * @param ranges pairs of start and exclusive end in milliseconds since the epoch
+     * @return the calendar
+     */
+    static FreezeWindowCalendar of(List<long[]> ranges) {
+        List<long[]> sorted = new ArrayList<long[]>(ranges.size());
+        for (long[] range : ranges) {
+            long start = FreezeWindowClock.floorToMinute(range[0]);
+            long end = ceilToMinute(range[1]);
+            if (start < end) {
+                sorted.add(new long[]{start, end});
+            }
+        }
+        Collections.sort(sorted, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+            }
+        });
+        long[] starts = new long[sorted.size()];
+        long[] ends = new long[sorted.size()];
+        int count = 0;
+        for (long[] range : sorted) {
+            if (count > 0 && range[0] <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], range[1]);
+            } else {
+                starts[count] = range[0];
+                ends[count++] = range[1];
+            }
+        }
+        return new FreezeWindowCalendar(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+
+    /**
+     * Combines the ranges of several calendars.
+     * @param calendars the calendars
+     * @return a calendar with the ranges of all calendars
+     */
+    static FreezeWindowCalendar union(List<FreezeWindowCalendar> calendars) {
+        if (calendars.isEmpty()) {
+            return EMPTY;
+        }
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (FreezeWindowCalendar calendar : calendars) {
+            for (int i = 0; i < calendar.starts.length; i++) {
+                ranges.add(new long[]{calendar.starts[i], calendar.ends[i]});
+            }
+        }
+        return of(ranges);
+    }
+
+    /**
+     * Returns true if the time is within one of the ranges.
+     * @param time milliseconds since the epoch
+     * @return true if the time is within one of the ranges
+     */
+    boolean contains(long time) {
+        int index = indexOf(time);
+        return index >= 0 && time < ends[index];
+    }
+
+    /**
+     * Returns the next start or end of a range after the given time.
+     * @param time milliseconds since the epoch
+     * @param limit the latest time to look at
+     * @return the next start or end of a range, or the limit if it comes first
+     */
+    long nextTransition(long time, long limit) {
+        int index = indexOf(time);
+        long next;
+        if (index >= 0 && time < ends[index]) {
+            next = ends[index];
+        } else if (index + 1 < starts.length) {
+            next = starts[index + 1];
+        } else {
+            return limit;
+        }
+        return Math.min(next, limit);
+    }
+
+    /**
+     * @return the index of the last range that starts at or before the time, -1 if there is none
+     */
+    private int indexOf(long time) {
+        int index = Arrays.binarySearch(starts, time);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return the number of disjoint ranges
+     */
+    int size() {
+        return starts.length;
+    }
+
+    /**
+     * Parses the arguments of a <code>@range</code> line: a start and an optional end, each either
+     * a date (<code>yyyy-MM-dd</code>) or a date and time (<code>yyyy-MM-ddTHH:mm</code>).
+     * An end date includes the whole day, a single date is one day and a single time one minute.
+     * @param arguments the arguments
+     * @param timeZone the time zone of the dates
+     * @return the calendar with the range
+     * @throws ParseException if the arguments are not one or two dates or the range is empty
+     */
+    static FreezeWindowCalendar parseRange(String arguments, TimeZone timeZone) throws ParseException {
+        String[] parts = arguments.trim().split("\\s+");
+        if (parts.length == 0 || parts[0].length() == 0 || parts.length > 2) {
+            throw new ParseException("Expected a start and an optional end date", 0);
+        }
+        long start = parseDate(parts[0], timeZone, false);
+        long end = parts.length == 1 && parts[0].indexOf('T') >= 0
+                ? start + CronMask.MILLIS_PER_MINUTE : parseDate(parts[parts.length - 1], timeZone, true);
+        if (end <= start) {
+            throw new ParseException("The end must be after the start", arguments.indexOf(parts[parts.length - 1]));
+        }
+        return of(Collections.singletonList(new long[]{start, end}));
+    }
+
+    private static long parseDate(String value, TimeZone timeZone, boolean end) throws ParseException {
+        boolean dateOnly = value.indexOf('T') < 0;
+        SimpleDateFormat format = new SimpleDateFormat(dateOnly ? "yyyy-MM-dd" : "yyyy-MM-dd'T'HH:mm", Locale.US);
+        format.setLenient(false);
+        format.setTimeZone(timeZone);
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(value, position);
+        if (date == null || position.getIndex() != value.length()) {
+            throw new ParseException("Invalid date \"" + value + "\", expected yyyy-MM-dd or yyyy-MM-ddTHH:mm", 0);
+        }
+        if (dateOnly && end) {
+            // the end date is included
+            Calendar calendar = Calendar.getInstance(timeZone, Locale.US);
+            calendar.setTime(date);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            return calendar.getTimeInMillis();
+        }
+        return date.getTime();
+    }
+
+    /**
+     * Reads the events of an iCalendar file in the calendar directory.
+     * @param path the path of the file relative to the calendar directory
+     * @param timeZone the time zone of the dates without a time zone
+     * @return the calendar with the events of the file
+     * @throws ParseException if the file is outside of the calendar directory,
+     * an {@link UnreadableException} if it cannot be read or is invalid
+     */
+    static FreezeWindowCalendar parseIcs(String path, TimeZone timeZone) throws ParseException {
+        File base = directory;
+        if (base == null) {
+            throw new UnreadableException("No calendar directory", 0);
+        }
+        try {
+            File file = new File(base, path).getCanonicalFile();
+            if (!file.getPath().startsWith(base.getCanonicalPath() + File.separator)) {
+                throw new ParseException("The calendar must be in " + base, 0);
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                return parseIcs(reader, timeZone);
+            } catch (ParseException e) {
+                // the file may be fixed, the line itself is valid
+                throw new UnreadableException("Invalid calendar " + path + ": " + e.getMessage(), 0);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new UnreadableException("Cannot read calendar " + path + ": " + e.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Reads the events of an iCalendar stream. Only the start and end of each event are used,
+     * recurring events are ignored.
+     * @param reader the iCalendar data
+     * @param timeZone the time zone of the dates without a time zone
+     * @return the calendar with the events
+     * @throws ParseException if an event has no valid start
+     * @throws IOException if the data cannot be read
+     */
+    static FreezeWindowCalendar parseIcs(Reader reader, TimeZone timeZone) throws ParseException, IOException {
+        List<long[]> ranges = new ArrayList<long[]>();
+        BufferedReader lines = new BufferedReader(reader);
+        List<String> unfolded = new ArrayList<String>();
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            if ((line.startsWith(" ") || line.startsWith("\t")) && !unfolded.isEmpty()) {
+                unfolded.set(unfolded.size() - 1, unfolded.get(unfolded.size() - 1) + line.substring(1));
+            } else {
+                unfolded.add(line);
+            }
+        }
+
+        boolean inEvent = false;
+        boolean recurring = false;
+        long start = 0;
+        long end = 0;
+        boolean startDateOnly = false;
+        int eventLine = 0;
+        int ignored = 0;
+        for (int i = 0; i < unfolded.size(); i++) {
+            String line = unfolded.get(i);
+            String name = propertyName(line);
+            if (line.equals("BEGIN:VEVENT")) {
+                inEvent = true;
+                recurring = false;
+                start = Long.MIN_VALUE;
+                end = Long.MIN_VALUE;
+                eventLine = i + 1;
+            } else if (!inEvent) {
+                continue;
+            } else if (line.equals("END:VEVENT")) {
+                inEvent = false;
+                if (start == Long.MIN_VALUE) {
+                    throw new ParseException("The event at line " + eventLine + " has no start", eventLine);
+                }
+                if (recurring) {
+                    ignored++;
+                    continue;
+                }
+                if (end == Long.MIN_VALUE) {
+                    // an event without an end lasts one day if it starts on a date, otherwise it is a point in time
+                    end = startDateOnly ? start + 24L * 60L * CronMask.MILLIS_PER_MINUTE : start;
+                }
+                ranges.add(new long[]{start, end});
+            } else if (name.equals("DTSTART")) {
+                startDateOnly = line.substring(line.indexOf(':') + 1).trim().length() == 8;
+                start = parseIcsDate(line, timeZone, i + 1);
+            } else if (name.equals("DTEND")) {
+                end = parseIcsDate(line, timeZone, i + 1);
+            } else if (name.equals("RRULE") || name.equals("RDATE")) {
+                recurring = true;
+            }
+        }
+        if (ignored > 0) {
+            LOG.fine("Ignored " + ignored + " recurring events");
+        }
+        return of(ranges);
+    }
+
+    private static String propertyName(String line) {
+        int end = 0;
+        while (end < line.length() && line.charAt(end) != ':' && line.charAt(end) != ';') {
+            end++;
+        }
+        return line.substring(0, end).toUpperCase(Locale.US);
+    }
+
+    /**
+     * Parses a DTSTART or DTEND property: a date, a local date and time, a date and time in UTC
+     * or a date and time with a TZID parameter.
+     */
+    private static long parseIcsDate(String line, TimeZone timeZone, int lineNumber) throws ParseException {
+        int colon = line.indexOf(':');
+        String value = colon < 0 ? "" : line.substring(colon + 1).trim();
+        String parameters = colon < 0 ? "" : line.substring(0, colon).toUpperCase(Locale.US);
+        TimeZone zone = timeZone;
+        int tzid = parameters.indexOf(";TZID=");
+        if (tzid >= 0) {
+            int tzidEnd = parameters.indexOf(';', tzid + 1);
+            zone = TimeZone.getTimeZone(line.substring(tzid + 6, tzidEnd < 0 ? colon : tzidEnd).replace("\"", ""));
+        }
+        String pattern;
+        if (value.length() == 8) {
+            pattern = "yyyyMMdd";
+        } else if (value.length() == 15) {
+            pattern = "yyyyMMdd'T'HHmmss";
+        } else if (value.length() == 16 && value.endsWith("Z")) {
+            pattern = "yyyyMMdd'T'HHmmss'Z'";
+            zone = TimeZone.getTimeZone("UTC");
+        } else {
+            throw new ParseException("Invalid date \"" + value + "\" at line " + lineNumber, lineNumber);
+        }
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setLenient(false);
+        format.setTimeZone(zone);
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            throw new ParseException("Invalid date \"" + value + "\" at line " + lineNumber, lineNumber);
+        }
+    }
+
+    private static long ceilToMinute(long time) {
+        long floor = FreezeWindowClock.floorToMinute(time);
+        return floor == time ? time : floor + CronMask.MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * Thrown when an iCalendar file cannot be read or is invalid. Unlike a syntax error of the line
+     * this goes away once the file is fixed, so the line is not quarantined.
+     */
+    static final class UnreadableException extends ParseException {
+
+        UnreadableException(String message, int errorOffset) {
+            super(message, errorOffset);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.queue.CauseOfBlockage;
+import org.joda.time.DateTime;
+
+/**
+ * Cause of blockage of an item that is blocked by a freeze window.
+ *
+ * All items blocked by the same freeze window within the same minute share one instance, which
+ * the freeze window holds itself, and the message is only localized when it is displayed.
+ */
+public final class FreezeWindowCauseOfBlockage extends CauseOfBlockage {
+
+    private final FreezeWindow freezeWindow;
+
+    /**
+     * the start of the minute the freeze window was checked at
+     */
+    private final long minute;
+
+    private FreezeWindowCauseOfBlockage(FreezeWindow freezeWindow, long minute) {
+        this.freezeWindow = freezeWindow;
+        this.minute = minute;
+    }
+
+    /**
+     * Returns the cause of blockage for the given freeze window and minute.
+     * @param freezeWindow the blocking freeze window
+     * @param minute the start of the minute the freeze window was checked at
+     * @return the shared cause of blockage
+     */
+    public static FreezeWindowCauseOfBlockage of(FreezeWindow freezeWindow, long minute) {
+        FreezeWindowCauseOfBlockage cause = freezeWindow.getCause();
+        if (cause == null || cause.minute != minute) {
+            // racing threads may each create one, any of them is correct
+            cause = new FreezeWindowCauseOfBlockage(freezeWindow, minute);
+            freezeWindow.setCause(cause);
+        }
+        return cause;
+    }
+
+    /**
+     * Returns the blocking freeze window.
+     * @return the blocking freeze window
+     */
+    public FreezeWindow getFreezeWindow() {
+        return freezeWindow;
+    }
+
+    @Override
+    public String getShortDescription() {
+        return Messages.BlockingByFreezeWindow(new DateTime(minute), freezeWindow.getText());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+/**
+ * Source of the current time, replaced by a simulated clock in tests.
+ */
+public abstract class FreezeWindowClock {
+
+    /**
+     * the system clock
+     */
+    public static final FreezeWindowClock SYSTEM = new FreezeWindowClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Returns the current time.
+     * @return milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * Returns the start of the current minute. Freeze windows have a resolution of one minute,
+     * so every check within the same minute sees the same time and gets the same result.
+     * @return milliseconds since the epoch
+     */
+    public long currentMinute() {
+        return floorToMinute(currentTimeMillis());
+    }
+
+    /**
+     * Returns the start of the minute of the given time.
+     * @param time milliseconds since the epoch
+     * @return milliseconds since the epoch
+     */
+    public static long floorToMinute(long time) {
+        long remainder = time % CronMask.MILLIS_PER_MINUTE;
+        return remainder < 0 ? time - remainder - CronMask.MILLIS_PER_MINUTE : time - remainder;
+    }
+}
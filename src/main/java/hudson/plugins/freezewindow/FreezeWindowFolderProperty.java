@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.hudson.plugins.folder.FolderProperty;
+import com.cloudbees.hudson.plugins.folder.FolderPropertyDescriptor;
+import hudson.Extension;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Folder property that stores the line feed separated list of freeze windows
+ * inherited by all jobs in the folder and its subfolders.
+ * Only available if the CloudBees Folders plugin is installed.
+ */
+public class FreezeWindowFolderProperty extends FolderProperty<Folder> {
+
+    /**
+     * the freeze windows that block the builds of the jobs in the folder
+     */
+    private final String freezeWindows;
+
+    /**
+     * Constructor used when the folder config page is saved
+     * @param freezeWindows line feed separated list of freeze windows
+     */
+    @DataBoundConstructor
+    public FreezeWindowFolderProperty(String freezeWindows) {
+        this.freezeWindows = freezeWindows;
+        FreezeWindowInheritance.folderFreezeWindowsChanged(freezeWindows);
+    }
+
+    /**
+     * Returns the text of the freeze windows field.
+     * @return the text of the freeze windows field
+     */
+    public String getFreezeWindows() {
+        return freezeWindows;
+    }
+
+    /**
+     * Invalidates the inherited freeze windows after the property is loaded from the folder config.
+     * @return this property
+     */
+    protected Object readResolve() {
+        FreezeWindowInheritance.folderFreezeWindowsChanged(freezeWindows);
+        return this;
+    }
+
+    /**
+     * Returns the freeze windows of a folder.
+     * @param group an item group
+     * @return the freeze windows of the group or null if it is not a folder or has no freeze windows
+     */
+    static String getFreezeWindows(Object group) {
+        if (!(group instanceof Folder)) {
+            return null;
+        }
+        FreezeWindowFolderProperty property = ((Folder) group).getProperties().get(FreezeWindowFolderProperty.class);
+        return property == null ? null : property.getFreezeWindows();
+    }
+
+    /**
+     * Descriptor
+     */
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends FolderPropertyDescriptor {
+
+        /**
+         * Returns the name to be shown on the website
+         * @return the name to be shown on the website.
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.DisplayName();
+        }
+
+        /**
+         * Validate the freeze windows entered by the user
+         * @param value the freeze windows
+         * @return FormValidation ok or error
+         */
+        public FormValidation doCheckFreezeWindows(@QueryParameter String value) {
+            return FreezeWindowProperty.FreezeWindowDescriptor.checkCron(value);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily computes the upcoming freezes of a set of freeze windows.
+ *
+ * The iterator walks the freeze states of the set from one transition to the next and merges
+ * consecutive blocking states into one interval, so overlapping and adjoining freeze windows
+ * show up as a single freeze. Intervals are clipped to the range of the iterator.
+ */
+public final class FreezeWindowForecast implements Iterator<FreezeWindowForecast.Interval> {
+
+    /**
+     * the longest range that is forecast, about a year
+     */
+    public static final long MAX_RANGE = 366L * 24L * 60L * CronMask.MILLIS_PER_MINUTE;
+
+    private final FreezeWindowSet freezeWindowSet;
+
+    /**
+     * the end of the range
+     */
+    private final long until;
+
+    /**
+     * the time the next interval is looked for from
+     */
+    private long time;
+
+    /**
+     * the next interval, computed by {@link #hasNext()}
+     */
+    private Interval next;
+
+    /**
+     * Constructor
+     * @param freezeWindowSet the freeze windows
+     * @param from the start of the range
+     * @param until the end of the range, at most {@link #MAX_RANGE} after the start
+     */
+    public FreezeWindowForecast(FreezeWindowSet freezeWindowSet, long from, long until) {
+        this.freezeWindowSet = freezeWindowSet;
+        this.time = FreezeWindowClock.floorToMinute(from);
+        this.until = Math.min(until, this.time + MAX_RANGE);
+    }
+
+    public boolean hasNext() {
+        if (next == null && time < until && !freezeWindowSet.isEmpty()) {
+            next = computeNext();
+        }
+        return next != null;
+    }
+
+    public Interval next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Interval interval = next;
+        next = null;
+        return interval;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Interval computeNext() {
+        FreezeWindowSet.State state = freezeWindowSet.evaluate(time);
+        while (state.getBlockingWindow() == null) {
+            if (state.getValidUntil() >= until) {
+                time = until;
+                return null;
+            }
+            time = state.getValidUntil();
+            state = freezeWindowSet.evaluate(time);
+        }
+        long start = time;
+        List<FreezeWindow> windows = new ArrayList<FreezeWindow>(1);
+        while (state.getBlockingWindow() != null) {
+            if (!windows.contains(state.getBlockingWindow())) {
+                windows.add(state.getBlockingWindow());
+            }
+            time = Math.min(state.getValidUntil(), until);
+            if (time >= until) {
+                break;
+            }
+            state = freezeWindowSet.evaluate(time);
+        }
+        return new Interval(start, time, windows);
+    }
+
+    /**
+     * Returns the next freezes from the given time on. The freezes are computed once per freeze state
+     * of the set, further calls return the same intervals until the freeze state changes.
+     * @param freezeWindowSet the freeze windows
+     * @param now the current time
+     * @param count the maximum number of freezes
+     * @return the upcoming freezes, the first one may have started before the given time
+     */
+    public static List<Interval> getUpcoming(FreezeWindowSet freezeWindowSet, long now, int count) {
+        FreezeWindowSet.State state = freezeWindowSet.getState(now);
+        Upcoming upcoming = freezeWindowSet.getUpcoming();
+        if (upcoming == null || upcoming.state != state) {
+            // racing threads may each create one, any of them is correct
+            upcoming = new Upcoming(state, new FreezeWindowForecast(freezeWindowSet,
+                    Math.max(state.getValidFrom(), FreezeWindowClock.floorToMinute(now)), Long.MAX_VALUE));
+            freezeWindowSet.setUpcoming(upcoming);
+        }
+        return upcoming.get(count);
+    }
+
+    /**
+     * Returns when the result of {@link #getUpcoming(FreezeWindowSet, long, int)} changes next.
+     * @param freezeWindowSet the freeze windows
+     * @param now the current time
+     * @return milliseconds since the epoch
+     */
+    public static long getValidUntil(FreezeWindowSet freezeWindowSet, long now) {
+        return freezeWindowSet.getState(now).getValidUntil();
+    }
+
+    /**
+     * The intervals computed so far for one freeze state, extended on demand.
+     * Kept on the {@link FreezeWindowSet} it belongs to, so it goes away with the set.
+     */
+    static final class Upcoming {
+
+        private final FreezeWindowSet.State state;
+
+        private final FreezeWindowForecast forecast;
+
+        private final List<Interval> intervals = new ArrayList<Interval>();
+
+        Upcoming(FreezeWindowSet.State state, FreezeWindowForecast forecast) {
+            this.state = state;
+            this.forecast = forecast;
+        }
+
+        synchronized List<Interval> get(int count) {
+            while (intervals.size() < count && forecast.hasNext()) {
+                intervals.add(forecast.next());
+            }
+            return Collections.unmodifiableList(new ArrayList<Interval>(intervals.subList(0, Math.min(count, intervals.size()))));
+        }
+    }
+
+    /**
+     * A freeze: a contiguous range of time in which at least one freeze window is active.
+     */
+    public static final class Interval {
+
+        private final long start;
+
+        private final long end;
+
+        private final List<FreezeWindow> freezeWindows;
+
+        Interval(long start, long end, List<FreezeWindow> freezeWindows) {
+            this.start = start;
+            this.end = end;
+            this.freezeWindows = Collections.unmodifiableList(freezeWindows);
+        }
+
+        /**
+         * @return the start of the freeze in milliseconds since the epoch
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the end of the freeze in milliseconds since the epoch, exclusive
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the freeze windows that block during the freeze, in the order they start blocking
+         */
+        public List<FreezeWindow> getFreezeWindows() {
+            return freezeWindows;
+        }
+    }
+}
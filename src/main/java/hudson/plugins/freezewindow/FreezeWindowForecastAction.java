@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * JSON forecast of the freezes of a job, at <code>job/NAME/freezeForecast/</code>.
+ *
+ * Without parameters the next <code>count</code> freezes (10 by default) are returned. With
+ * <code>from</code> and/or <code>to</code> in milliseconds since the epoch, all freezes within
+ * that range are returned instead, the range is clamped to at most {@link FreezeWindowForecast#MAX_RANGE}.
+ * The forecast covers the freeze windows of the job together with the freeze windows it inherits.
+ */
+public class FreezeWindowForecastAction implements Action {
+
+    /**
+     * the default number of freezes returned
+     */
+    static final int DEFAULT_COUNT = 10;
+
+    /**
+     * the maximum number of freezes returned
+     */
+    static final int MAX_COUNT = 1000;
+
+    /**
+     * the longest range forecast for all jobs at once, a week
+     */
+    static final long MAX_GLOBAL_RANGE = 7L * 24L * 60L * CronMask.MILLIS_PER_MINUTE;
+
+    private final Job<?, ?> job;
+
+    /**
+     * Constructor
+     * @param job the job
+     */
+    public FreezeWindowForecastAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "freezeForecast";
+    }
+
+    /**
+     * Writes the forecast of the job.
+     * @param req stapler request
+     * @param rsp stapler response
+     * @throws IOException
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        long now = FreezeWindowClock.SYSTEM.currentTimeMillis();
+        FreezeWindowSet freezeWindowSet = FreezeWindowInheritance.getEffectiveSet(job);
+        JSONObject json = toJSON(freezeWindowSet, req, now);
+        json.put("name", job.getFullName());
+        write(json, FreezeWindowForecast.getValidUntil(freezeWindowSet, now), req, rsp, now);
+    }
+
+    /**
+     * Computes the forecast requested by the parameters of the request.
+     * @param freezeWindowSet the freeze windows
+     * @param req stapler request
+     * @param now the current time
+     * @return the forecast
+     */
+    static JSONObject toJSON(FreezeWindowSet freezeWindowSet, StaplerRequest req, long now) {
+        return toJSON(freezeWindowSet, req, now, FreezeWindowForecast.MAX_RANGE);
+    }
+
+    /**
+     * Computes the forecast requested by the parameters of the request.
+     * @param freezeWindowSet the freeze windows
+     * @param req stapler request
+     * @param now the current time
+     * @param maxRange the longest range forecast, the requested range is clamped to it
+     * @return the forecast
+     */
+    static JSONObject toJSON(FreezeWindowSet freezeWindowSet, StaplerRequest req, long now, long maxRange) {
+        Iterator<FreezeWindowForecast.Interval> intervals;
+        int count;
+        long from = 0;
+        long to = 0;
+        if (isRange(req)) {
+            from = parseLong(req.getParameter("from"), now);
+            to = Math.min(parseLong(req.getParameter("to"), from + maxRange), from + maxRange);
+            intervals = new FreezeWindowForecast(freezeWindowSet, from, to);
+            count = MAX_COUNT;
+        } else {
+            count = Math.min(Math.max((int) parseLong(req.getParameter("count"), DEFAULT_COUNT), 0), MAX_COUNT);
+            intervals = FreezeWindowForecast.getUpcoming(freezeWindowSet, now, count).iterator();
+        }
+
+        JSONArray windows = new JSONArray();
+        for (FreezeWindow window : freezeWindowSet.getWindows()) {
+            windows.add(window.getText());
+        }
+        JSONArray freezes = new JSONArray();
+        while (freezes.size() < count && intervals.hasNext()) {
+            FreezeWindowForecast.Interval interval = intervals.next();
+            JSONArray blocking = new JSONArray();
+            for (FreezeWindow window : interval.getFreezeWindows()) {
+                blocking.add(window.getText());
+            }
+            JSONObject freeze = new JSONObject();
+            freeze.put("start", interval.getStart());
+            freeze.put("end", interval.getEnd());
+            freeze.put("active", interval.getStart() <= now && now < interval.getEnd());
+            freeze.put("freezeWindows", blocking);
+            freezes.add(freeze);
+        }
+
+        JSONObject json = new JSONObject();
+        if (isRange(req)) {
+            // the range actually forecast, after clamping
+            json.put("from", from);
+            json.put("to", to);
+        }
+        json.put("freezeWindows", windows);
+        json.put("freezes", freezes);
+        return json;
+    }
+
+    /**
+     * Writes the forecast, the upcoming freezes may be cached by the client until the freeze state changes
+     * and the freezes within a range for a minute.
+     * @param json the forecast
+     * @param validUntil when the freeze state the forecast was computed from changes
+     * @param req stapler request
+     * @param rsp stapler response
+     * @param now the current time
+     * @throws IOException
+     */
+    static void write(JSONObject json, long validUntil, StaplerRequest req, StaplerResponse rsp, long now)
+            throws IOException {
+        // configuration changes are not predictable, so clients revalidate at least every minute
+        long maxAge = isRange(req) ? 60 : Math.min(Math.max(validUntil - now, 0), 60000L) / 1000;
+        rsp.setHeader("Cache-Control", "max-age=" + maxAge);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(json.toString());
+    }
+
+    private static boolean isRange(StaplerRequest req) {
+        return req.getParameter("from") != null || req.getParameter("to") != null;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Adds the forecast to every job.
+     */
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Job target) {
+            return Collections.singletonList(new FreezeWindowForecastAction(target));
+        }
+    }
+}
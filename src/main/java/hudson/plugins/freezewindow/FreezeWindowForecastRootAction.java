@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+
+/**
+ * JSON forecast of the global freezes and of the freezes of every job with freeze windows,
+ * at <code>freezeForecast/</code>. Takes the same parameters as {@link FreezeWindowForecastAction},
+ * but the range is clamped to {@link FreezeWindowForecastAction#MAX_GLOBAL_RANGE} since it is forecast for every job.
+ */
+@Extension
+public class FreezeWindowForecastRootAction implements RootAction {
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "freezeForecast";
+    }
+
+    /**
+     * Writes the forecast of the global freeze windows and of all jobs the user can read.
+     * @param req stapler request
+     * @param rsp stapler response
+     * @throws IOException
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.READ);
+        long now = FreezeWindowClock.SYSTEM.currentTimeMillis();
+
+        FreezeWindowSet global = FreezeWindowRegistry.get(FreezeWindowInheritance.getGlobalFreezeWindows());
+        long maxRange = FreezeWindowForecastAction.MAX_GLOBAL_RANGE;
+        JSONObject json = FreezeWindowForecastAction.toJSON(global, req, now, maxRange);
+        long validUntil = FreezeWindowForecast.getValidUntil(global, now);
+        JSONArray jobs = new JSONArray();
+        for (Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+            FreezeWindowSet freezeWindowSet = FreezeWindowInheritance.getEffectiveSet(job);
+            if (!freezeWindowSet.isEmpty()) {
+                JSONObject forecast = FreezeWindowForecastAction.toJSON(freezeWindowSet, req, now, maxRange);
+                forecast.put("name", job.getFullName());
+                jobs.add(forecast);
+                validUntil = Math.min(validUntil, FreezeWindowForecast.getValidUntil(freezeWindowSet, now));
+            }
+        }
+        json.put("jobs", jobs);
+        FreezeWindowForecastAction.write(json, validUntil, req, rsp, now);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves the freeze windows that apply to a job: its own freeze windows, followed by
+ * the freeze windows of its folders from the innermost to the outermost, followed by the global freeze windows.
+ *
+ * The effective set of each job is cached. A change to the global or folder freeze windows, or the move
+ * of a folder, bumps a generation counter that invalidates all cached sets, while a cached set is only
+ * used as long as the configuration of its job is the one it was resolved from. The dispatcher
+ * thus only walks the item hierarchy of the jobs whose configuration changed.
+ */
+public final class FreezeWindowInheritance {
+
+    /**
+     * the cached effective sets by full name of the job
+     */
+    private static final ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * incremented whenever a cached effective set may have become stale
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * the global freeze windows, inherited by all jobs
+     */
+    private static volatile String globalFreezeWindows;
+
+    /**
+     * true if there are global or folder freeze windows, otherwise jobs only have their own freeze windows
+     */
+    private static volatile boolean inherited;
+
+    private FreezeWindowInheritance() {
+    }
+
+    /**
+     * Returns the freeze windows that apply to a job.
+     * @param job the job
+     * @return the effective freeze windows, never null
+     */
+    public static FreezeWindowSet getEffectiveSet(Job<?, ?> job) {
+        if (!inherited) {
+            FreezeWindowProperty property = FreezeWindowJobIndex.getProperty(job);
+            return property == null ? FreezeWindowSet.EMPTY : property.getFreezeWindowSet();
+        }
+        // read before resolving, so that a change made meanwhile does not match the new entry
+        long generation = GENERATION.get();
+        FreezeWindowProperty property = FreezeWindowJobIndex.getProperty(job);
+        FreezeWindowProperty.Config config = property == null ? null : property.getConfig();
+        String fullName = job.getFullName();
+        Entry entry = CACHE.get(fullName);
+        if (entry == null || entry.generation != generation || entry.job != job || entry.config != config
+                || entry.freezeWindowSet.isStale()) {
+            FreezeWindowMetrics.INHERITANCE_MISSES.increment();
+            String freezeWindows = config == null ? null : config.getFreezeWindows();
+            entry = new Entry(job, generation, config, FreezeWindowRegistry.get(resolve(job, freezeWindows)));
+            CACHE.put(fullName, entry);
+        } else {
+            FreezeWindowMetrics.INHERITANCE_HITS.increment();
+        }
+        return entry.freezeWindowSet;
+    }
+
+    /**
+     * Collects the text of the freeze windows that apply to a job, walking up the item hierarchy.
+     * @param job the job
+     * @return the line feed separated freeze windows
+     */
+    static String resolve(Job<?, ?> job) {
+        FreezeWindowProperty property = job.getProperty(FreezeWindowProperty.class);
+        return resolve(job, property == null ? null : property.getFreezeWindows());
+    }
+
+    private static String resolve(Job<?, ?> job, String freezeWindows) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, freezeWindows);
+        append(sb, resolveInherited(job));
+        return sb.toString();
+    }
+
+    /**
+     * Collects the text of the freeze windows a job inherits from its folders and the global config.
+     * @param job the job
+     * @return the line feed separated freeze windows
+     */
+    static String resolveInherited(Job<?, ?> job) {
+        StringBuilder sb = new StringBuilder();
+        if (isFolderPluginInstalled()) {
+            for (ItemGroup<?> parent = job.getParent(); parent instanceof Item; parent = ((Item) parent).getParent()) {
+                append(sb, FreezeWindowFolderProperty.getFreezeWindows(parent));
+            }
+        }
+        append(sb, globalFreezeWindows);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String freezeWindows) {
+        if (freezeWindows != null && freezeWindows.trim().length() > 0) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(freezeWindows);
+        }
+    }
+
+    private static boolean isFolderPluginInstalled() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null && jenkins.getPlugin("cloudbees-folder") != null;
+    }
+
+    /**
+     * Returns the global freeze windows.
+     * @return line feed separated list of freeze windows, may be null
+     */
+    static String getGlobalFreezeWindows() {
+        return globalFreezeWindows;
+    }
+
+    /**
+     * Sets the global freeze windows.
+     * @param freezeWindows line feed separated list of freeze windows
+     */
+    static void setGlobalFreezeWindows(String freezeWindows) {
+        globalFreezeWindows = freezeWindows;
+        updateInherited();
+    }
+
+    /**
+     * Called when a folder freeze window property is created or loaded. Jobs look for inherited freeze windows
+     * from then on if it has freeze windows.
+     * @param freezeWindows the freeze windows of the folder
+     */
+    static synchronized void folderFreezeWindowsChanged(String freezeWindows) {
+        if (!isBlank(freezeWindows)) {
+            inherited = true;
+        }
+        invalidate();
+    }
+
+    /**
+     * Checks whether there are still global or folder freeze windows, after the global freeze windows changed
+     * or a folder was saved or deleted, and invalidates all cached effective sets.
+     */
+    static synchronized void updateInherited() {
+        // not the compiled set: it is empty while the shared calendars it references are not loaded yet
+        boolean found = !isBlank(globalFreezeWindows);
+        Jenkins jenkins = Jenkins.getInstance();
+        if (!found && inherited && jenkins != null && isFolderPluginInstalled()) {
+            for (Item item : jenkins.getAllItems(Item.class)) {
+                if (!isBlank(FreezeWindowFolderProperty.getFreezeWindows(item))) {
+                    found = true;
+                    break;
+                }
+            }
+        }
+        inherited = found;
+        invalidate();
+    }
+
+    private static boolean isBlank(String freezeWindows) {
+        return freezeWindows == null || freezeWindows.trim().length() == 0;
+    }
+
+    /**
+     * Invalidates all cached effective sets.
+     */
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Drops the cached effective set of a job whose freeze windows changed, or that was renamed or deleted.
+     * @param fullName the full name of the job
+     */
+    static void remove(String fullName) {
+        CACHE.remove(fullName);
+    }
+
+    /**
+     * Drops the cached effective sets of all jobs within a moved or deleted folder.
+     * @param fullName the full name of the folder
+     */
+    static void removeWithin(String fullName) {
+        String prefix = fullName + '/';
+        for (String name : CACHE.keySet()) {
+            if (name.startsWith(prefix)) {
+                CACHE.remove(name);
+            }
+        }
+    }
+
+    /**
+     * The effective set of a job, valid while the generation and the configuration of the job have not changed.
+     */
+    private static final class Entry {
+
+        private final Job<?, ?> job;
+
+        private final long generation;
+
+        /**
+         * the configuration of the job the set was resolved from, null if the job had no freeze window property
+         */
+        private final FreezeWindowProperty.Config config;
+
+        private final FreezeWindowSet freezeWindowSet;
+
+        Entry(Job<?, ?> job, long generation, FreezeWindowProperty.Config config, FreezeWindowSet freezeWindowSet) {
+            this.job = job;
+            this.generation = generation;
+            this.config = config;
+            this.freezeWindowSet = freezeWindowSet;
+        }
+    }
+}
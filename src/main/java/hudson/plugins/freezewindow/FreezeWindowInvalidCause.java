@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.queue.CauseOfBlockage;
+
+/**
+ * Cause of blockage of an item with an invalid freeze window while invalid freeze windows block builds,
+ * see {@link FreezeWindowQuarantine}.
+ */
+public class FreezeWindowInvalidCause extends CauseOfBlockage {
+
+    /**
+     * the invalid freeze window
+     */
+    private final String freezeWindow;
+
+    /**
+     * Constructor
+     * @param freezeWindow the invalid freeze window
+     */
+    public FreezeWindowInvalidCause(String freezeWindow) {
+        this.freezeWindow = freezeWindow;
+    }
+
+    public String getFreezeWindow() {
+        return freezeWindow;
+    }
+
+    @Override
+    public String getShortDescription() {
+        return Messages.InvalidFreezeWindow(freezeWindow);
+    }
+}
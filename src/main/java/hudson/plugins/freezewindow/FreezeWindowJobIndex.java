@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the jobs that have a {@link FreezeWindowProperty}, so that the dispatcher answers
+ * "not frozen" for all other jobs with one hash lookup instead of scanning the job properties.
+ *
+ * Jobs are indexed by full name. The property registers its job when it is attached to it,
+ * which covers loading and reloading the configuration, and {@link Listener} and {@link SaveListener}
+ * follow the jobs when they are saved, renamed or deleted. Until all jobs have been loaded the index
+ * is not ready and {@link #getProperty(Job)} falls back to the job properties.
+ */
+public final class FreezeWindowJobIndex {
+
+    /**
+     * the logger
+     */
+    private static final Logger LOG = Logger.getLogger(FreezeWindowJobIndex.class.getName());
+
+    /**
+     * the freeze window property of each job that has one, by full name of the job
+     */
+    private static final ConcurrentMap<String, FreezeWindowProperty> JOBS =
+            new ConcurrentHashMap<String, FreezeWindowProperty>();
+
+    /**
+     * true once the index holds all jobs
+     */
+    private static volatile boolean ready;
+
+    private FreezeWindowJobIndex() {
+    }
+
+    /**
+     * Returns the freeze window property of a job.
+     * @param job the job
+     * @return the freeze window property or null if the job has none
+     */
+    public static FreezeWindowProperty getProperty(Job<?, ?> job) {
+        if (!ready) {
+            return job.getProperty(FreezeWindowProperty.class);
+        }
+        FreezeWindowProperty property = JOBS.get(job.getFullName());
+        if (property != null && property.getOwner() != job) {
+            // another job of the same name, left over from a reload
+            return job.getProperty(FreezeWindowProperty.class);
+        }
+        return property;
+    }
+
+    /**
+     * Returns the number of jobs that are subject to freezes, that is that have at least one valid freeze window.
+     * @return the number of jobs with freeze windows
+     */
+    public static int countFrozenJobs() {
+        int count = 0;
+        for (FreezeWindowProperty property : JOBS.values()) {
+            if (!property.getFreezeWindowSet().isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true once all jobs have been indexed.
+     * @return true if the index is ready
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indexes all jobs, dropping the jobs of a previous Jenkins instance.
+     */
+    @SuppressWarnings("rawtypes")
+    static void rebuild() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        ready = false;
+        JOBS.clear();
+        for (Job job : jenkins.getAllItems(Job.class)) {
+            update(job);
+        }
+        ready = true;
+        LOG.log(Level.INFO, "{0} jobs are subject to freeze windows", countFrozenJobs());
+    }
+
+    /**
+     * Indexes a job with its freeze window property.
+     * @param job the job
+     * @param property the freeze window property of the job
+     */
+    static void put(Job<?, ?> job, FreezeWindowProperty property) {
+        if (JOBS.put(job.getFullName(), property) != property) {
+            FreezeWindowInheritance.remove(job.getFullName());
+        }
+    }
+
+    /**
+     * Updates the index entry of an item.
+     * @param item the item, ignored unless it is a job
+     */
+    static void update(Object item) {
+        if (!(item instanceof Job)) {
+            return;
+        }
+        Job<?, ?> job = (Job<?, ?>) item;
+        FreezeWindowProperty property = job.getProperty(FreezeWindowProperty.class);
+        if (property == null) {
+            remove(job.getFullName(), job);
+        } else {
+            put(job, property);
+        }
+    }
+
+    /**
+     * Removes the entry of a job, unless it has been replaced by another job of the same name.
+     * @param fullName the full name the job is indexed by
+     * @param job the job
+     */
+    static void remove(String fullName, Job<?, ?> job) {
+        FreezeWindowProperty property = JOBS.get(fullName);
+        if (property != null && property.getOwner() == job && JOBS.remove(fullName, property)) {
+            FreezeWindowInheritance.remove(fullName);
+        }
+    }
+
+    /**
+     * Removes the entries of all jobs within a folder. Jenkins only reports the deletion of the folder,
+     * not of the jobs within it.
+     * @param fullName the full name of the folder
+     */
+    static void removeWithin(String fullName) {
+        String prefix = fullName + '/';
+        for (String name : JOBS.keySet()) {
+            if (name.startsWith(prefix)) {
+                JOBS.remove(name);
+            }
+        }
+        FreezeWindowInheritance.removeWithin(fullName);
+    }
+
+    /**
+     * Keeps the index up to date with the lifecycle of the jobs.
+     */
+    @Extension
+    public static class Listener extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            rebuild();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof ItemGroup) {
+                // the jobs within moved along with the folder and may inherit other freeze windows
+                FreezeWindowInheritance.invalidate();
+            }
+            FreezeWindowInheritance.remove(oldFullName);
+            FreezeWindowInheritance.removeWithin(oldFullName);
+            FreezeWindowInheritance.remove(newFullName);
+            if (item instanceof Job) {
+                remove(oldFullName, (Job<?, ?>) item);
+                update(item);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            FreezeWindowInheritance.remove(item.getFullName());
+            if (item instanceof Job) {
+                remove(item.getFullName(), (Job<?, ?>) item);
+            }
+            removeWithin(item.getFullName());
+            if (item instanceof ItemGroup) {
+                FreezeWindowInheritance.updateInherited();
+            }
+        }
+    }
+
+    /**
+     * Updates the index when a job configuration is saved, which is when its properties change,
+     * and invalidates the inherited freeze windows when a folder configuration is saved.
+     */
+    @Extension
+    public static class SaveListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ItemGroup) {
+                FreezeWindowInheritance.updateInherited();
+            }
+            update(o);
+        }
+    }
+}
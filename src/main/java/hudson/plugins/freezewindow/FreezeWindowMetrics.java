@@ -0,0 +1,366 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the freeze window checks, cheap enough to stay enabled
+ * under full queue load: every recording is a single uncontended atomic add on a stripe
+ * picked by the recording thread, the stripes are only summed when the metrics are read.
+ */
+public final class FreezeWindowMetrics {
+
+    /**
+     * the number of stripes of each counter, a power of two
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * the stripes of a counter are this many longs apart, so that they are on different cache lines
+     */
+    private static final int PADDING = 8;
+
+    /** queue items whose freeze windows were evaluated */
+    public static final Counter EVALUATIONS = new Counter("evaluations_total", "Queue items whose freeze windows were evaluated");
+    /** queue items blocked by an active freeze window */
+    public static final Counter BLOCKS = new Counter("blocks_total", "Queue items blocked by an active freeze window");
+    /** queue items blocked because they would run into a freeze */
+    public static final Counter ADMISSION_BLOCKS = new Counter("admission_blocks_total", "Queue items blocked because their estimated duration runs into a freeze");
+    /** queue items waiting for their release after a freeze */
+    public static final Counter RELEASE_WAITS = new Counter("release_waits_total", "Queue items waiting for their release after a freeze");
+    /** nodes that did not take a build because of a freeze window */
+    public static final Counter NODE_BLOCKS = new Counter("node_blocks_total", "Nodes that did not take a build because of an active freeze window");
+    /** freeze states reused */
+    public static final Counter STATE_HITS = new Counter("state_cache_hits_total", "Freeze window checks answered by the cached freeze state");
+    /** freeze states evaluated */
+    public static final Counter STATE_MISSES = new Counter("state_cache_misses_total", "Freeze window checks that evaluated the freeze windows");
+    /** effective sets of jobs reused */
+    public static final Counter INHERITANCE_HITS = new Counter("inheritance_cache_hits_total", "Effective freeze windows of a job found in the cache");
+    /** effective sets of jobs resolved */
+    public static final Counter INHERITANCE_MISSES = new Counter("inheritance_cache_misses_total", "Effective freeze windows of a job resolved from its folders");
+    /** compiled sets shared through the registry */
+    public static final Counter REGISTRY_HITS = new Counter("registry_hits_total", "Freeze window sets shared through the registry");
+    /** sets compiled by the registry */
+    public static final Counter REGISTRY_MISSES = new Counter("registry_misses_total", "Freeze window sets compiled by the registry");
+    /** freeze window lines that could not be compiled */
+    public static final Counter COMPILE_FAILURES = new Counter("compile_failures_total", "Freeze window lines ignored because they could not be compiled");
+
+    /** the latency of the queue check */
+    public static final Histogram CAN_RUN = new Histogram("can_run_seconds", "Latency of the freeze window check of a queue item");
+
+    private static final Counter[] COUNTERS = {EVALUATIONS, BLOCKS, ADMISSION_BLOCKS, RELEASE_WAITS, NODE_BLOCKS,
+            STATE_HITS, STATE_MISSES, INHERITANCE_HITS, INHERITANCE_MISSES, REGISTRY_HITS, REGISTRY_MISSES, COMPILE_FAILURES};
+
+    /**
+     * the freeze window each currently blocked queue item is blocked by
+     */
+    private static final BlockedItems BLOCKED_ITEMS = new BlockedItems();
+
+    /**
+     * the prefix of all metric names
+     */
+    private static final String PREFIX = "freezewindow_";
+
+    private FreezeWindowMetrics() {
+    }
+
+    /**
+     * Records that a queue item is blocked by a freeze window.
+     * @param id the id of the queue item
+     * @param freezeWindow the blocking freeze window
+     */
+    static void blocked(long id, FreezeWindow freezeWindow) {
+        BLOCKS.increment();
+        BLOCKED_ITEMS.put(id, freezeWindow);
+    }
+
+    /**
+     * Records that a queue item is not blocked by a freeze window, or left the queue.
+     * @param id the id of the queue item
+     */
+    static void unblocked(long id) {
+        BLOCKED_ITEMS.remove(id);
+    }
+
+    /**
+     * Returns the number of queue items currently blocked by each freeze window.
+     * @return the freeze windows mapped to the number of blocked items, sorted by freeze window
+     */
+    public static Map<String, Integer> getBlockedItems() {
+        return BLOCKED_ITEMS.count();
+    }
+
+    /**
+     * @return all counters
+     */
+    public static Counter[] getCounters() {
+        return COUNTERS.clone();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     * @param writer the writer
+     * @throws IOException if the writer fails
+     */
+    public static void writePrometheus(Writer writer) throws IOException {
+        for (Counter counter : COUNTERS) {
+            header(writer, counter.getName(), counter.getHelp(), "counter");
+            writer.write(PREFIX + counter.getName() + " " + counter.sum() + "\n");
+        }
+
+        Histogram histogram = CAN_RUN;
+        header(writer, histogram.getName(), histogram.getHelp(), "histogram");
+        long[] buckets = histogram.getBuckets();
+        // the last bucket also holds all longer durations and is only covered by +Inf
+        int last = buckets.length - 2;
+        while (last > 0 && buckets[last] == 0) {
+            last--;
+        }
+        long cumulative = 0;
+        for (int i = 0; i <= last; i++) {
+            cumulative += buckets[i];
+            writer.write(PREFIX + histogram.getName() + "_bucket{le=\"" + Histogram.getUpperBound(i) / 1e9 + "\"} "
+                    + cumulative + "\n");
+        }
+        writer.write(PREFIX + histogram.getName() + "_bucket{le=\"+Inf\"} " + histogram.getCount() + "\n");
+        writer.write(PREFIX + histogram.getName() + "_sum " + histogram.getSumNanos() / 1e9 + "\n");
+        writer.write(PREFIX + histogram.getName() + "_count " + histogram.getCount() + "\n");
+
+        header(writer, "blocked_items", "Queue items currently blocked by each freeze window", "gauge");
+        for (Map.Entry<String, Integer> entry : getBlockedItems().entrySet()) {
+            writer.write(PREFIX + "blocked_items{window=\"" + escape(entry.getKey()) + "\"} " + entry.getValue() + "\n");
+        }
+    }
+
+    private static void header(Writer writer, String name, String help, String type) throws IOException {
+        writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @return the stripe of the current thread
+     */
+    private static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    /**
+     * A counter split into stripes, so that threads rarely update the same memory.
+     */
+    public static final class Counter {
+
+        private final String name;
+
+        private final String help;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * @return the name of the counter, without the common prefix
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the description of the counter
+         */
+        public String getHelp() {
+            return help;
+        }
+
+        /**
+         * Adds one.
+         */
+        public void increment() {
+            cells.getAndIncrement(stripe() * PADDING);
+        }
+
+        /**
+         * Adds the given amount.
+         * @param amount the amount
+         */
+        public void add(long amount) {
+            cells.getAndAdd(stripe() * PADDING, amount);
+        }
+
+        /**
+         * Sums the stripes. Concurrent updates may or may not be included.
+         * @return the current value
+         */
+        public long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A latency histogram with one bucket per power of two nanoseconds.
+     */
+    public static final class Histogram {
+
+        /**
+         * the number of buckets, bucket i holds the durations below 2^i nanoseconds
+         */
+        static final int BUCKETS = 40;
+
+        private final String name;
+
+        private final String help;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKETS);
+
+        private final Counter sum = new Counter(null, null);
+
+        Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        /**
+         * Records a duration.
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)), BUCKETS - 1);
+            buckets.getAndIncrement(stripe() * BUCKETS + bucket);
+            sum.add(nanos);
+        }
+
+        /**
+         * @return the number of durations in each bucket
+         */
+        public long[] getBuckets() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < buckets.length(); i++) {
+                counts[i % BUCKETS] += buckets.get(i);
+            }
+            return counts;
+        }
+
+        /**
+         * @return the number of recorded durations
+         */
+        public long getCount() {
+            long count = 0;
+            for (long bucket : getBuckets()) {
+                count += bucket;
+            }
+            return count;
+        }
+
+        /**
+         * @return the sum of the recorded durations in nanoseconds
+         */
+        public long getSumNanos() {
+            return sum.sum();
+        }
+
+        /**
+         * @param bucket the index of a bucket
+         * @return the exclusive upper bound of the bucket in nanoseconds
+         */
+        public static long getUpperBound(int bucket) {
+            return 1L << bucket;
+        }
+    }
+
+    /**
+     * The freeze window each blocked queue item is blocked by. The queue checks its blocked items over and over,
+     * but an item only changes its state when it gets blocked, changes its blocking freeze window or is released:
+     * a check of an item that is still blocked by the same freeze window, or still not blocked, only reads the map.
+     */
+    static final class BlockedItems {
+
+        /**
+         * the blocking freeze windows by queue id
+         */
+        private final ConcurrentMap<Long, FreezeWindow> windows = new ConcurrentHashMap<Long, FreezeWindow>();
+
+        /**
+         * Records the freeze window blocking an item, unless it is already recorded.
+         * @param id the queue id
+         * @param freezeWindow the blocking freeze window
+         */
+        void put(long id, FreezeWindow freezeWindow) {
+            if (windows.get(id) != freezeWindow) {
+                windows.put(id, freezeWindow);
+            }
+        }
+
+        /**
+         * Forgets an item.
+         * @param id the queue id
+         */
+        void remove(long id) {
+            if (!windows.isEmpty() && windows.containsKey(id)) {
+                windows.remove(id);
+            }
+        }
+
+        /**
+         * @return the texts of the freeze windows mapped to the number of items they block
+         */
+        Map<String, Integer> count() {
+            Map<String, Integer> counts = new TreeMap<String, Integer>();
+            for (FreezeWindow window : windows.values()) {
+                Integer count = counts.get(window.getText());
+                counts.put(window.getText(), count == null ? 1 : count + 1);
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Publishes the {@link FreezeWindowMetrics} as JSON at <code>freezeWindowMetrics/</code>
+ * and in the Prometheus text format at <code>freezeWindowMetrics/prometheus</code>.
+ */
+@Extension
+public class FreezeWindowMetricsAction implements RootAction {
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "freezeWindowMetrics";
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     * @param req stapler request
+     * @param rsp stapler response
+     * @throws IOException
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        JSONObject json = new JSONObject();
+        for (FreezeWindowMetrics.Counter counter : FreezeWindowMetrics.getCounters()) {
+            json.put(counter.getName(), counter.sum());
+        }
+
+        FreezeWindowMetrics.Histogram histogram = FreezeWindowMetrics.CAN_RUN;
+        JSONObject latency = new JSONObject();
+        latency.put("count", histogram.getCount());
+        latency.put("sumNanos", histogram.getSumNanos());
+        JSONArray buckets = new JSONArray();
+        long[] counts = histogram.getBuckets();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                JSONObject bucket = new JSONObject();
+                bucket.put("belowNanos", FreezeWindowMetrics.Histogram.getUpperBound(i));
+                bucket.put("count", counts[i]);
+                buckets.add(bucket);
+            }
+        }
+        latency.put("buckets", buckets);
+        json.put(histogram.getName(), latency);
+
+        JSONObject blocked = new JSONObject();
+        for (Map.Entry<String, Integer> entry : FreezeWindowMetrics.getBlockedItems().entrySet()) {
+            blocked.put(entry.getKey(), entry.getValue());
+        }
+        json.put("blocked_items", blocked);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(json.toString());
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format.
+     * @param req stapler request
+     * @param rsp stapler response
+     * @throws IOException
+     */
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter writer = rsp.getWriter();
+        FreezeWindowMetrics.writePrometheus(writer);
+        writer.flush();
+    }
+}
@@ -28,18 +28,16 @@
 package hudson.plugins.freezewindow;
 
 import org.apache.commons.lang.StringUtils;
-import org.quartz.CronExpression;
 
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Date;
 
 /**
  * This class represents a monitor that checks all freeze windows if
  * one of the freeze windows contains current time.
  *
- * The first hit returns the freeze window.
+ * The freeze windows that match most often are checked first, and the first hit returns the freeze window.
  */
 public class FreezeWindowMonitor {
 
@@ -48,6 +46,16 @@ public class FreezeWindowMonitor {
      */
     private List<String> freezeWindows;
 
+    /**
+     * the compiled freeze windows
+     */
+    private final FreezeWindowSet freezeWindowSet;
+
+    /**
+     * the clock the current time is read from
+     */
+    private final FreezeWindowClock clock;
+
     public List<String> getFreezeWindows() {
         return freezeWindows;
     }
@@ -57,35 +65,30 @@ public class FreezeWindowMonitor {
      * @param freezeWindows line feed separated list of freeze windows
      */
     public FreezeWindowMonitor(String freezeWindows) {
+        this(freezeWindows, FreezeWindowClock.SYSTEM);
+    }
+
+    /**
+     * Constructor using the job configuration entry for freeze windows and a clock, for instance a simulated one
+     * @param freezeWindows line feed separated list of freeze windows
+     * @param clock the clock the current time is read from
+     */
+    public FreezeWindowMonitor(String freezeWindows, FreezeWindowClock clock) {
         if(StringUtils.isNotBlank(freezeWindows)) {
             this.freezeWindows = Arrays.asList(freezeWindows.split("\n"));
         }
+        this.freezeWindowSet = FreezeWindowRegistry.get(freezeWindows);
+        this.clock = clock;
     }
 
     /**
      * Check if the current time is in one of the freeze windows.
      * @return null if current time is not in any freeze windows.
-     * Otherwise return the first freeze window(as a string) that matches current time
+     * Otherwise return a freeze window(as a string) that matches current time, checking the ones that match most often first
      */
     public String shouldBlock(){
-        try {
-            if (this.freezeWindows == null) {
-                return null;
-            }
-            Date now = new Date();
-            for (String fw : this.freezeWindows) {
-                CronExpression cr = new CronExpression(normalize(fw));
-                if (cr.isSatisfiedBy(now)) {
-                    return fw;
-                }
-            }
-            return null;
-        }
-        catch(Exception e){
-            e.printStackTrace();
-        }
-        System.out.println("Cannot decide if the build should be blocked.");
-        return null;
+        FreezeWindow blocking = freezeWindowSet.shouldBlock(clock.currentTimeMillis());
+        return blocking == null ? null : blocking.getText();
     }
 
     /**
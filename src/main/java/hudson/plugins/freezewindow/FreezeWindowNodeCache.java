@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Saveable;
+import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.ComputerListener;
+import jenkins.model.Jenkins;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the compiled freeze windows of each node: the freeze windows of its {@link FreezeWindowNodeProperty}
+ * followed by those of the {@link FreezeWindowLabelProperty} of its labels.
+ *
+ * The dispatcher checks every pair of node and buildable item, so a lookup is one hash lookup by node name
+ * and a comparison of generations. Any change to the nodes, their labels or the freeze window properties
+ * bumps the generation and the sets are compiled again on their next use.
+ */
+final class FreezeWindowNodeCache {
+
+    /**
+     * the compiled freeze windows by node name
+     */
+    private static final ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * incremented whenever a cached set may have become stale
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private FreezeWindowNodeCache() {
+    }
+
+    /**
+     * Returns the freeze windows that apply to a node.
+     * @param node the node
+     * @return the compiled freeze windows, never null
+     */
+    static FreezeWindowSet get(Node node) {
+        long generation = GENERATION.get();
+        String name = node.getNodeName();
+        Entry entry = CACHE.get(name);
+        if (entry == null || entry.generation != generation || entry.node != node || entry.freezeWindowSet.isStale()) {
+            entry = new Entry(node, generation, FreezeWindowRegistry.get(resolve(node)));
+            CACHE.put(name, entry);
+        }
+        return entry.freezeWindowSet;
+    }
+
+    /**
+     * Collects the text of the freeze windows of a node and its labels.
+     * @param node the node
+     * @return the line feed separated freeze windows
+     */
+    static String resolve(Node node) {
+        StringBuilder sb = new StringBuilder();
+        FreezeWindowNodeProperty property = node.getNodeProperties().get(FreezeWindowNodeProperty.class);
+        if (property != null) {
+            append(sb, property.getFreezeWindows());
+        }
+        for (Label label : node.getAssignedLabels()) {
+            if (label instanceof LabelAtom) {
+                FreezeWindowLabelProperty labelProperty =
+                        ((LabelAtom) label).getProperties().get(FreezeWindowLabelProperty.class);
+                if (labelProperty != null) {
+                    append(sb, labelProperty.getFreezeWindows());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String freezeWindows) {
+        if (freezeWindows != null && freezeWindows.trim().length() > 0) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(freezeWindows);
+        }
+    }
+
+    /**
+     * Invalidates the compiled freeze windows of all nodes.
+     */
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+        CACHE.clear();
+    }
+
+    /**
+     * Invalidates the cache when nodes are added, removed or reconfigured.
+     */
+    @Extension
+    public static class NodeListener extends ComputerListener {
+
+        @Override
+        public void onConfigurationChange() {
+            invalidate();
+        }
+    }
+
+    /**
+     * Invalidates the cache when the node or label configuration is saved.
+     */
+    @Extension
+    public static class SaveListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins || o instanceof Node || o instanceof LabelAtom) {
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * The compiled freeze windows of a node, valid while the generation has not changed.
+     */
+    private static final class Entry {
+
+        private final Node node;
+
+        private final long generation;
+
+        private final FreezeWindowSet freezeWindowSet;
+
+        Entry(Node node, long generation, FreezeWindowSet freezeWindowSet) {
+            this.node = node;
+            this.generation = generation;
+            this.freezeWindowSet = freezeWindowSet;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies a list of compiled freeze windows without changing when it blocks:
+ * removes exact duplicates and freeze windows covered by another one, and orders the
+ * remaining freeze windows so that the ones matching most often are checked first.
+ */
+final class FreezeWindowOptimizer {
+
+    /**
+     * checks freeze windows evaluated with the masks first, densest first, then the ones evaluated with quartz
+     */
+    private static final Comparator<FreezeWindow> CHECK_ORDER = new Comparator<FreezeWindow>() {
+        public int compare(FreezeWindow a, FreezeWindow b) {
+            if (a.getMask() == null || b.getMask() == null) {
+                return (a.getMask() == null ? 1 : 0) - (b.getMask() == null ? 1 : 0);
+            }
+            return Double.compare(b.getMask().getDensity(), a.getMask().getDensity());
+        }
+    };
+
+    private FreezeWindowOptimizer() {
+    }
+
+    /**
+     * Optimizes the freeze windows.
+     * @param windows the freeze windows in configuration order
+     * @return the optimized freeze windows
+     */
+    static Result optimize(List<FreezeWindow> windows) {
+        List<FreezeWindow> kept = new ArrayList<FreezeWindow>(windows.size());
+        List<Removal> removed = new ArrayList<Removal>();
+        Map<String, FreezeWindow> byText = new HashMap<String, FreezeWindow>();
+        for (FreezeWindow window : windows) {
+            String text = canonical(window.getText());
+            FreezeWindow same = byText.get(text);
+            if (same != null) {
+                removed.add(new Removal(window, same, true));
+            } else {
+                byText.put(text, window);
+                kept.add(window);
+            }
+        }
+
+        // a freeze window covered by another one is removed, of two equal ones the later one
+        for (int i = 0; i < kept.size(); i++) {
+            FreezeWindow window = kept.get(i);
+            if (window.getMask() == null) {
+                continue;
+            }
+            for (int j = 0; j < kept.size(); j++) {
+                FreezeWindow other = kept.get(j);
+                if (j != i && other.getMask() != null && other.getMask().covers(window.getMask())
+                        && (j < i || !window.getMask().covers(other.getMask()))) {
+                    removed.add(new Removal(window, other, false));
+                    kept.remove(i--);
+                    break;
+                }
+            }
+        }
+
+        List<FreezeWindow> checkOrder = new ArrayList<FreezeWindow>(kept);
+        Collections.sort(checkOrder, CHECK_ORDER);
+        return new Result(Collections.unmodifiableList(kept), Collections.unmodifiableList(checkOrder),
+                Collections.unmodifiableList(removed));
+    }
+
+    /**
+     * Collapses the whitespace between the fields of a freeze window so that equal freeze windows compare equal.
+     * The argument of a directive such as <code>@ics</code> is only trimmed, a file name may contain spaces.
+     * @param line the freeze window
+     * @return the freeze window with single spaces between its fields, empty for a blank line
+     */
+    static String canonical(String line) {
+        String trimmed = line.trim();
+        if (trimmed.startsWith("@")) {
+            String[] parts = trimmed.split("\\s+", 2);
+            return parts.length > 1 ? parts[0] + ' ' + parts[1] : parts[0];
+        }
+        return StringUtils.join(StringUtils.split(trimmed), ' ');
+    }
+
+    /**
+     * The result of the optimization.
+     */
+    static final class Result {
+
+        private final List<FreezeWindow> windows;
+
+        private final List<FreezeWindow> checkOrder;
+
+        private final List<Removal> removed;
+
+        Result(List<FreezeWindow> windows, List<FreezeWindow> checkOrder, List<Removal> removed) {
+            this.windows = windows;
+            this.checkOrder = checkOrder;
+            this.removed = removed;
+        }
+
+        /**
+         * @return the remaining freeze windows in configuration order
+         */
+        List<FreezeWindow> getWindows() {
+            return windows;
+        }
+
+        /**
+         * @return the remaining freeze windows in the order they are checked
+         */
+        List<FreezeWindow> getCheckOrder() {
+            return checkOrder;
+        }
+
+        /**
+         * @return the removed freeze windows
+         */
+        List<Removal> getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * A freeze window that was removed because another one blocks whenever it does.
+     */
+    static final class Removal {
+
+        private final FreezeWindow freezeWindow;
+
+        private final FreezeWindow coveredBy;
+
+        private final boolean duplicate;
+
+        Removal(FreezeWindow freezeWindow, FreezeWindow coveredBy, boolean duplicate) {
+            this.freezeWindow = freezeWindow;
+            this.coveredBy = coveredBy;
+            this.duplicate = duplicate;
+        }
+
+        /**
+         * @return the removed freeze window
+         */
+        public FreezeWindow getFreezeWindow() {
+            return freezeWindow;
+        }
+
+        /**
+         * @return the freeze window that blocks whenever the removed one does
+         */
+        public FreezeWindow getCoveredBy() {
+            return coveredBy;
+        }
+
+        /**
+         * @return true if the removed freeze window is a duplicate of the other one, false if it is covered by it
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + freezeWindow.getText() + "\" is " + (duplicate ? "a duplicate of" : "covered by")
+                    + " \"" + coveredBy.getText() + "\"";
+        }
+    }
+}
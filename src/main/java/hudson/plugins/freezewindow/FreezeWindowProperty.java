@@ -28,6 +28,8 @@
 package hudson.plugins.freezewindow;
 
 import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.model.Job;
 import hudson.model.JobProperty;
 import hudson.model.JobPropertyDescriptor;
@@ -36,11 +38,16 @@ import net.sf.json.JSONObject;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.QueryParameter;
 import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
 
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
-import java.util.Arrays;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -66,30 +73,75 @@ public class FreezeWindowProperty extends JobProperty<Job<?, ?>> {
     public static final String FREEZE_WINDOW_KEYS = "freezeWindows";
 
     /**
-     * flag if freeze window should be used
+     * release priority form field name
+     */
+    public static final String RELEASE_PRIORITY_KEY = "releasePriority";
+
+    /**
+     * the directory in JENKINS_HOME with the iCalendar files of <code>@ics</code> lines
+     */
+    public static final String CALENDAR_DIRECTORY = "freeze-calendars";
+
+    /**
+     * flag if freeze window should be used, only written together with {@link #config}
      */
     private boolean useFreezeWindow;
 
     /**
-     * the freeze windows that block the build from starting
+     * the freeze windows that block the build from starting, only written together with {@link #config}
      */
     private String freezeWindows;
 
+    /**
+     * the order in which builds are released after a freeze, higher first, only written together with {@link #config}
+     */
+    private int releasePriority;
+
+    /**
+     * the immutable snapshot of the configuration read by the queue, replaced as a whole on every change
+     */
+    private transient volatile Config config = Config.EMPTY;
+
+    /**
+     * Constructor of a property without freeze windows
+     */
+    public FreezeWindowProperty() {
+    }
+
+    /**
+     * Constructor
+     * @param useFreezeWindow the freeze window flag
+     * @param freezeWindows the freeze windows entry
+     */
+    public FreezeWindowProperty(boolean useFreezeWindow, String freezeWindows) {
+        setConfig(useFreezeWindow, freezeWindows, 0);
+    }
+
+    /**
+     * Constructor
+     * @param useFreezeWindow the freeze window flag
+     * @param freezeWindows the freeze windows entry
+     * @param releasePriority the release priority after a freeze
+     */
+    public FreezeWindowProperty(boolean useFreezeWindow, String freezeWindows, int releasePriority) {
+        setConfig(useFreezeWindow, freezeWindows, releasePriority);
+    }
+
     /**
      * Returns true if the freeze window is enabled.
      * @return true if the freeze window is enabled
      */
     @SuppressWarnings("unused")
     public boolean isUseFreezeWindow() {
-        return useFreezeWindow;
+        return config.isUseFreezeWindow();
     }
 
     /**
      * Sets the freeze window flag.
      * @param useFreezeWindow the freeze window flag
      */
-    public void setUseFreezeWindow(boolean useFreezeWindow) {
-        this.useFreezeWindow = useFreezeWindow;
+    public synchronized void setUseFreezeWindow(boolean useFreezeWindow) {
+        setConfig(useFreezeWindow, config.getFreezeWindows(), config.getReleasePriority());
     }
 
     /**
@@ -97,15 +149,172 @@ public class FreezeWindowProperty extends JobProperty<Job<?, ?>> {
      * @return the text of the freeze windows field
      */
     public String getFreezeWindows() {
-        return freezeWindows;
+        return config.getFreezeWindows();
     }
 
     /**
      * Sets the freeze windows field
      * @param freezeWindows the freeze windows entry
      */
-    public void setFreezeWindows(String freezeWindows) {
+    public synchronized void setFreezeWindows(String freezeWindows) {
+        setConfig(config.isUseFreezeWindow(), freezeWindows, config.getReleasePriority());
+    }
+
+    /**
+     * Returns the release priority: when builds are released gradually after a freeze,
+     * builds of jobs with a higher priority are released first.
+     * @return the release priority, 0 by default
+     */
+    public int getReleasePriority() {
+        return config.getReleasePriority();
+    }
+
+    /**
+     * Sets the release priority
+     * @param releasePriority the release priority
+     */
+    public synchronized void setReleasePriority(int releasePriority) {
+        setConfig(config.isUseFreezeWindow(), config.getFreezeWindows(), releasePriority);
+    }
+
+    /**
+     * Returns the compiled freeze windows.
+     * @return the compiled freeze windows, never null
+     */
+    public FreezeWindowSet getFreezeWindowSet() {
+        Config current = config;
+        if (current.getFreezeWindowSet().isStale()) {
+            current = refreshConfig(current);
+        }
+        return current.getFreezeWindowSet();
+    }
+
+    /**
+     * Picks up the freeze windows compiled again in the background after a calendar they reference changed.
+     * @param stale the configuration with the stale freeze windows
+     * @return the current configuration
+     */
+    private synchronized Config refreshConfig(Config stale) {
+        if (config == stale) {
+            config = new Config(stale.isUseFreezeWindow(), stale.getFreezeWindows(), stale.getReleasePriority(),
+                    stale.getFreezeWindowSet().getReplacement());
+        }
+        return config;
+    }
+
+    /**
+     * Returns the current configuration. Its fields are consistent with each other,
+     * unlike consecutive calls to the getters of this property.
+     * @return the configuration snapshot, never null
+     */
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Publishes a new configuration snapshot.
+     * @param useFreezeWindow the freeze window flag
+     * @param freezeWindows the freeze windows entry
+     * @param releasePriority the release priority
+     */
+    synchronized void setConfig(boolean useFreezeWindow, String freezeWindows, int releasePriority) {
+        this.useFreezeWindow = useFreezeWindow;
         this.freezeWindows = freezeWindows;
+        this.releasePriority = releasePriority;
+        this.config = new Config(useFreezeWindow, freezeWindows, releasePriority, FreezeWindowRegistry.get(freezeWindows));
+        if (owner != null) {
+            FreezeWindowInheritance.remove(owner.getFullName());
+        }
+    }
+
+    /**
+     * Compiles the freeze windows after the property is loaded from the job config.
+     * @return this property
+     */
+    protected Object readResolve() {
+        setConfig(useFreezeWindow, freezeWindows, releasePriority);
+        return this;
+    }
+
+    /**
+     * Sets the directory the iCalendar files of <code>@ics</code> lines are read from,
+     * before the jobs and their freeze windows are loaded.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED, before = InitMilestone.JOB_LOADED)
+    public static void initCalendarDirectory() {
+        FreezeWindowCalendar.setDirectory(new File(Jenkins.getInstance().getRootDir(), CALENDAR_DIRECTORY));
+    }
+
+    /**
+     * Registers the job this property is attached to in the {@link FreezeWindowJobIndex},
+     * when the job is loaded or the property is added.
+     * @param owner the job
+     */
+    @Override
+    protected void setOwner(Job<?, ?> owner) {
+        super.setOwner(owner);
+        FreezeWindowJobIndex.put(owner, this);
+    }
+
+    /**
+     * @return the job this property is attached to
+     */
+    Job<?, ?> getOwner() {
+        return owner;
+    }
+
+    /**
+     * An immutable snapshot of the configuration of the property.
+     */
+    public static final class Config {
+
+        /**
+         * the configuration of a new property
+         */
+        static final Config EMPTY = new Config(false, null, 0, FreezeWindowSet.EMPTY);
+
+        private final boolean useFreezeWindow;
+
+        private final String freezeWindows;
+
+        private final int releasePriority;
+
+        private final FreezeWindowSet freezeWindowSet;
+
+        Config(boolean useFreezeWindow, String freezeWindows, int releasePriority, FreezeWindowSet freezeWindowSet) {
+            this.useFreezeWindow = useFreezeWindow;
+            this.freezeWindows = freezeWindows;
+            this.releasePriority = releasePriority;
+            this.freezeWindowSet = freezeWindowSet;
+        }
+
+        /**
+         * @return true if the freeze window is enabled
+         */
+        public boolean isUseFreezeWindow() {
+            return useFreezeWindow;
+        }
+
+        /**
+         * @return the text of the freeze windows field
+         */
+        public String getFreezeWindows() {
+            return freezeWindows;
+        }
+
+        /**
+         * @return the release priority after a freeze
+         */
+        public int getReleasePriority() {
+            return releasePriority;
+        }
+
+        /**
+         * @return the compiled freeze windows of {@link #getFreezeWindows()}, never null
+         */
+        public FreezeWindowSet getFreezeWindowSet() {
+            return freezeWindowSet;
+        }
     }
 
     /**
@@ -115,11 +324,211 @@ public class FreezeWindowProperty extends JobProperty<Job<?, ?>> {
     @Extension
     public static final class FreezeWindowDescriptor extends JobPropertyDescriptor {
 
+        /**
+         * the global freeze windows inherited by all jobs
+         */
+        private String globalFreezeWindows;
+
+        /**
+         * the number of builds released per interval after a freeze, 0 to release all at once
+         */
+        private int releaseBuilds;
+
+        /**
+         * the interval of the gradual release after a freeze
+         */
+        private int releaseIntervalSeconds = 60;
+
+        /**
+         * flag if builds whose estimated duration runs into the next freeze are blocked
+         */
+        private boolean blockOverlappingBuilds;
+
+        /**
+         * the maximum build duration used instead of the estimate of the job, 0 to use the estimate
+         */
+        private int maximumBuildMinutes;
+
+        /**
+         * flag if jobs with an invalid freeze window are blocked instead of ignoring the invalid freeze window
+         */
+        private boolean failClosed;
+
+        /**
+         * the path of the shared calendar file, relative to JENKINS_HOME unless absolute
+         */
+        private String sharedCalendarFile;
+
         /**
          * Constructor loading the data from the config file
          */
         public FreezeWindowDescriptor() {
             load();
+            // the global freeze windows may reference the shared calendars
+            FreezeWindowSharedCalendar.setFile(resolveSharedCalendarFile(sharedCalendarFile));
+            FreezeWindowInheritance.setGlobalFreezeWindows(globalFreezeWindows);
+            FreezeWindowQueueTaskDispatcher.configureRelease(releaseBuilds, releaseIntervalSeconds);
+            FreezeWindowAdmission.configure(blockOverlappingBuilds, maximumBuildMinutes);
+            FreezeWindowQuarantine.setFailClosed(failClosed);
+        }
+
+        /**
+         * Returns the path of the shared calendar file.
+         * @return the path, relative to JENKINS_HOME unless absolute, null if there is none
+         */
+        public String getSharedCalendarFile() {
+            return sharedCalendarFile;
+        }
+
+        /**
+         * Sets the shared calendar file and loads it, the jobs referencing its calendars use the new calendars from then on.
+         * @param sharedCalendarFile the path, relative to JENKINS_HOME unless absolute, blank for none
+         */
+        public void setSharedCalendarFile(String sharedCalendarFile) {
+            this.sharedCalendarFile = StringUtils.trimToNull(sharedCalendarFile);
+            FreezeWindowSharedCalendar.setFile(resolveSharedCalendarFile(this.sharedCalendarFile));
+        }
+
+        private static File resolveSharedCalendarFile(String path) {
+            if (path == null) {
+                return null;
+            }
+            File file = new File(path);
+            return file.isAbsolute() ? file : new File(Jenkins.getInstance().getRootDir(), path);
+        }
+
+        /**
+         * Validate the shared calendar file entered by the user
+         * @param value the path of the shared calendar file
+         * @return FormValidation ok, warning or error
+         */
+        public FormValidation doCheckSharedCalendarFile(@QueryParameter String value) {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            File file = resolveSharedCalendarFile(StringUtils.trimToNull(value));
+            if (file == null) {
+                return FormValidation.ok();
+            }
+            if (!file.isFile()) {
+                return FormValidation.warning("File " + file + " not found");
+            }
+            try {
+                Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                try {
+                    return FormValidation.ok("Calendars: " + StringUtils.join(FreezeWindowSharedCalendar.parse(reader).keySet(), ", "));
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                return FormValidation.error(e, "Failed to read " + file);
+            } catch (ParseException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Returns true if jobs with an invalid freeze window are blocked.
+         * @return true to fail closed, false to ignore invalid freeze windows
+         */
+        public boolean isFailClosed() {
+            return failClosed;
+        }
+
+        /**
+         * Sets if jobs with an invalid freeze window are blocked.
+         * @param failClosed true to fail closed, false to ignore invalid freeze windows
+         */
+        public void setFailClosed(boolean failClosed) {
+            this.failClosed = failClosed;
+            FreezeWindowQuarantine.setFailClosed(failClosed);
+        }
+
+        /**
+         * Returns true if builds whose estimated duration runs into the next freeze are blocked.
+         * @return true if builds that would run into a freeze are blocked
+         */
+        public boolean isBlockOverlappingBuilds() {
+            return blockOverlappingBuilds;
+        }
+
+        /**
+         * Returns the maximum build duration used instead of the estimate of the job.
+         * @return the maximum build duration in minutes, 0 if the estimate is used
+         */
+        public int getMaximumBuildMinutes() {
+            return maximumBuildMinutes;
+        }
+
+        /**
+         * Sets if builds whose estimated duration runs into the next freeze are blocked.
+         * @param blockOverlappingBuilds true to block builds that would run into a freeze
+         * @param maximumBuildMinutes the maximum build duration used instead of the estimate, 0 to use the estimate
+         */
+        public void setAdmission(boolean blockOverlappingBuilds, int maximumBuildMinutes) {
+            this.blockOverlappingBuilds = blockOverlappingBuilds;
+            this.maximumBuildMinutes = Math.max(maximumBuildMinutes, 0);
+            FreezeWindowAdmission.configure(this.blockOverlappingBuilds, this.maximumBuildMinutes);
+        }
+
+        /**
+         * Returns the number of builds released per interval after a freeze.
+         * @return the number of builds, 0 if all builds are released at once
+         */
+        public int getReleaseBuilds() {
+            return releaseBuilds;
+        }
+
+        /**
+         * Returns the interval of the gradual release after a freeze.
+         * @return the interval in seconds
+         */
+        public int getReleaseIntervalSeconds() {
+            return releaseIntervalSeconds;
+        }
+
+        /**
+         * Sets the gradual release after a freeze.
+         * @param releaseBuilds the number of builds released per interval, 0 to release all at once
+         * @param releaseIntervalSeconds the interval in seconds
+         */
+        public void setRelease(int releaseBuilds, int releaseIntervalSeconds) {
+            this.releaseBuilds = Math.max(releaseBuilds, 0);
+            this.releaseIntervalSeconds = releaseIntervalSeconds > 0 ? releaseIntervalSeconds : 60;
+            FreezeWindowQueueTaskDispatcher.configureRelease(this.releaseBuilds, this.releaseIntervalSeconds);
+        }
+
+        /**
+         * Returns the text of the global freeze windows field.
+         * @return the text of the global freeze windows field
+         */
+        public String getGlobalFreezeWindows() {
+            return globalFreezeWindows;
+        }
+
+        /**
+         * Sets the global freeze windows field
+         * @param globalFreezeWindows the global freeze windows entry
+         */
+        public void setGlobalFreezeWindows(String globalFreezeWindows) {
+            this.globalFreezeWindows = globalFreezeWindows;
+            FreezeWindowInheritance.setGlobalFreezeWindows(globalFreezeWindows);
+        }
+
+        /**
+         * Saves the global freeze windows when the global config page is saved.
+         * @param req stapler request
+         * @param formData the form data
+         * @return true
+         * @throws FormException
+         */
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
+            setSharedCalendarFile(formData.optString("sharedCalendarFile"));
+            setGlobalFreezeWindows(formData.optString("globalFreezeWindows"));
+            setRelease(formData.optInt("releaseBuilds"), formData.optInt("releaseIntervalSeconds", 60));
+            setAdmission(formData.optBoolean("blockOverlappingBuilds"), formData.optInt("maximumBuildMinutes"));
+            setFailClosed(formData.optBoolean("failClosed"));
+            save();
+            return true;
         }
 
         /**
@@ -141,20 +550,18 @@ public class FreezeWindowProperty extends JobProperty<Job<?, ?>> {
          */
         @Override
         public FreezeWindowProperty newInstance(StaplerRequest req, JSONObject formData) throws FormException {
-            FreezeWindowProperty freezeWindowProperty = new FreezeWindowProperty();
-
             if(formData.containsKey(USE_FREEZE_WINDOW)) {
                 try {
-                    freezeWindowProperty.setUseFreezeWindow(true);
-                    freezeWindowProperty.setFreezeWindows(formData.getJSONObject(USE_FREEZE_WINDOW).getString(FREEZE_WINDOW_KEYS));
+                    JSONObject useFreezeWindow = formData.getJSONObject(USE_FREEZE_WINDOW);
+                    return new FreezeWindowProperty(true, useFreezeWindow.getString(FREEZE_WINDOW_KEYS),
+                            useFreezeWindow.optInt(RELEASE_PRIORITY_KEY));
 
                 } catch(JSONException e) {
-                    freezeWindowProperty.setUseFreezeWindow(false);
                     LOG.log(Level.WARNING, "could not get freeze windows from " + formData.toString());
                 }
             }
 
-            return freezeWindowProperty;
+            return new FreezeWindowProperty();
         }
 
         /**
@@ -163,39 +570,44 @@ public class FreezeWindowProperty extends JobProperty<Job<?, ?>> {
         * @return FormValidation ok or error
         */
         public FormValidation doCheckCron(@QueryParameter final String freezeWindows) {
-            List<String> freezeWindowList = null;
-            String validChar[] = new String[]{"*","?"};
-            // Regular expression obtained from http://www.quartz-scheduler.org/xml/job_scheduling_data_2_0.xsd
-            // Modified to support true cron expression
-            // Note: order for expressions like 3-0 is not legal but will pass, and month and day names must be capitalized.
-            // MINUTES:             ( ((([0-9]|[0-5][0-9])(-([0-9]|[0-5][0-9]))?,)*([0-9]|[0-5][0-9])(-([0-9]|[0-5][0-9]))?) | (([\*]|[0-9]|[0-5][0-9])/([0-9]|[0-5][0-9])) | ([\?]) | ([\*]) ) [\s]
-            // HOURS: ( ((([0-9]|[0-1][0-9]|[2][0-3])(-([0-9]|[0-1][0-9]|[2][0-3]))?,)*([0-9]|[0-1][0-9]|[2][0-3])(-([0-9]|[0-1][0-9]|[2][0-3]))?) | (([\*]|[0-9]|[0-1][0-9]|[2][0-3])/([0-9]|[0-1][0-9]|[2][0-3])) | ([\?]) | ([\*]) ) [\s]
-            // DAY OF MONTH: ( ((([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(-([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1]))?,)*([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(-([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1]))?(C)?) | (([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])/([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(C)?) | (L(-[0-9])?) | (L(-[1-2][0-9])?) | (L(-[3][0-1])?) | (LW) | ([1-9]W) | ([1-3][0-9]W) | ([\?]) | ([\*]) )[\s]
-            // MONTH: ( ((([1-9]|0[1-9]|1[0-2])(-([1-9]|0[1-9]|1[0-2]))?,)*([1-9]|0[1-9]|1[0-2])(-([1-9]|0[1-9]|1[0-2]))?) | (([1-9]|0[1-9]|1[0-2])/([1-9]|0[1-9]|1[0-2])) | (((JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)(-(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))?,)*(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)(-(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))?) | ((JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)/(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)) | ([\?]) | ([\*]) )[\s]
-            // DAY OF WEEK: ( (([0-7](-([0-7]))?,)*([0-7])(-([0-7]))?) | ([0-7]/([0-7])) | (((MON|TUE|WED|THU|FRI|SAT|SUN)(-(MON|TUE|WED|THU|FRI|SAT|SUN))?,)*(MON|TUE|WED|THU|FRI|SAT|SUN)(-(MON|TUE|WED|THU|FRI|SAT|SUN))?(C)?) | ((MON|TUE|WED|THU|FRI|SAT|SUN)/(MON|TUE|WED|THU|FRI|SAT|SUN)(C)?) | (([0-7]|(MON|TUE|WED|THU|FRI|SAT|SUN))(L|LW)?) | (([0-7]|MON|TUE|WED|THU|FRI|SAT|SUN)#([0-7])?) | ([\?]) | ([\*]) )
-            // YEAR (OPTIONAL): ( [\s]? ([\*])? | ((19[7-9][0-9])|(20[0-9][0-9]))? | (((19[7-9][0-9])|(20[0-9][0-9]))/((19[7-9][0-9])|(20[0-9][0-9])))? | ((((19[7-9][0-9])|(20[0-9][0-9]))(-((19[7-9][0-9])|(20[0-9][0-9])))?,)*((19[7-9][0-9])|(20[0-9][0-9]))(-((19[7-9][0-9])|(20[0-9][0-9])))?)? )
-            String pattern = "(((([0-9]|[0-5][0-9])(-([0-9]|[0-5][0-9]))?,)*([0-9]|[0-5][0-9])(-([0-9]|[0-5][0-9]))?)|(([\\*]|[0-9]|[0-5][0-9])/([0-9]|[0-5][0-9]))|([\\?])|([\\*]))[\\s](((([0-9]|[0-1][0-9]|[2][0-3])(-([0-9]|[0-1][0-9]|[2][0-3]))?,)*([0-9]|[0-1][0-9]|[2][0-3])(-([0-9]|[0-1][0-9]|[2][0-3]))?)|(([\\*]|[0-9]|[0-1][0-9]|[2][0-3])/([0-9]|[0-1][0-9]|[2][0-3]))|([\\?])|([\\*]))[\\s](((([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(-([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1]))?,)*([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(-([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1]))?(C)?)|(([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])/([1-9]|[0][1-9]|[1-2][0-9]|[3][0-1])(C)?)|(L(-[0-9])?)|(L(-[1-2][0-9])?)|(L(-[3][0-1])?)|(LW)|([1-9]W)|([1-3][0-9]W)|([\\?])|([\\*]))[\\s](((([1-9]|0[1-9]|1[0-2])(-([1-9]|0[1-9]|1[0-2]))?,)*([1-9]|0[1-9]|1[0-2])(-([1-9]|0[1-9]|1[0-2]))?)|(([1-9]|0[1-9]|1[0-2])/([1-9]|0[1-9]|1[0-2]))|(((JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)(-(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))?,)*(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)(-(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))?)|((JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC)/(JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))|([\\?])|([\\*]))[\\s]((([0-7](-([0-7]))?,)*([0-7])(-([0-7]))?)|([0-7]/([0-7]))|(((MON|TUE|WED|THU|FRI|SAT|SUN)(-(MON|TUE|WED|THU|FRI|SAT|SUN))?,)*(MON|TUE|WED|THU|FRI|SAT|SUN)(-(MON|TUE|WED|THU|FRI|SAT|SUN))?(C)?)|((MON|TUE|WED|THU|FRI|SAT|SUN)/(MON|TUE|WED|THU|FRI|SAT|SUN)(C)?)|(([0-7]|(MON|TUE|WED|THU|FRI|SAT|SUN))?(L|LW)?)|(([0-7]|MON|TUE|WED|THU|FRI|SAT|SUN)#([0-7])?)|([\\?])|([\\*]))([\\s]?(([\\*])?|(19[7-9][0-9])|(20[0-9][0-9]))?| (((19[7-9][0-9])|(20[0-9][0-9]))/((19[7-9][0-9])|(20[0-9][0-9])))?| ((((19[7-9][0-9])|(20[0-9][0-9]))(-((19[7-9][0-9])|(20[0-9][0-9])))?,)*((19[7-9][0-9])|(20[0-9][0-9]))(-((19[7-9][0-9])|(20[0-9][0-9])))?)?)";
-
-            if(StringUtils.isNotBlank(freezeWindows)) {
-                freezeWindowList = Arrays.asList(freezeWindows.split("\n"));
-            }
+            return checkCron(freezeWindows);
+        }
 
-            for (String fw: freezeWindowList) {
-                boolean matches = Pattern.matches(pattern, fw);
-                String[] cronParts = fw.split(" ");
-                if ((cronParts.length != 5) && cronParts.length != 6) {
-                    matches = false;
-                }
-                // Either day of week or day of month should be "?"
-                else if (! ((cronParts[2].trim().equals("?")) ^ (cronParts[4].trim().equals("?")))) {
-                    matches = false;
+        /**
+         * Validate the global freeze windows entered by the user
+         * @param value the global freeze windows
+         * @return FormValidation ok or error
+         */
+        public FormValidation doCheckGlobalFreezeWindows(@QueryParameter String value) {
+            return checkCron(value);
+        }
+
+        /**
+        * Validate the cron expressions of a freeze windows field
+        * @param freezeWindows line feed separated list of freeze windows
+        * @return FormValidation ok or error
+        */
+        static FormValidation checkCron(String freezeWindows) {
+            if (StringUtils.isBlank(freezeWindows)) {
+                return FormValidation.ok();
+            }
+            String[] lines = freezeWindows.split("\n");
+            List<FreezeWindow> windows = new ArrayList<FreezeWindow>(lines.length);
+            for (int i = 0; i < lines.length; i++) {
+                if (StringUtils.isBlank(lines[i])) {
+                    continue;
                 }
-                System.out.println("Validating freeze window " + fw);
-                System.out.println("Validation of " + fw + " == " + matches);
-                if (!matches) {
-                    return FormValidation.error("Invalid cron expression " + fw);
+                String error = FreezeWindowValidator.validate(lines[i], windows);
+                if (error != null) {
+                    return FormValidation.error("Line " + (i + 1) + ": " + error);
                 }
             }
+            // the freeze windows compiled by the validation, the quarantine is left alone
+            List<FreezeWindowOptimizer.Removal> removed = FreezeWindowOptimizer.optimize(windows).getRemoved();
+            if (!removed.isEmpty()) {
+                return FormValidation.warning("Ignored because other freeze windows block whenever they do: "
+                        + StringUtils.join(removed, "; "));
+            }
             return FormValidation.ok();
         }
 
@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the freeze window lines that failed to compile, so that an invalid line is
+ * compiled and logged once rather than every time a set containing it is compiled.
+ *
+ * Only syntax errors are quarantined: a line whose iCalendar file cannot be read is compiled
+ * again once the file changes. At most {@link #MAX_ENTRIES} lines are kept, the oldest are dropped first.
+ *
+ * Warnings are rate limited across all lines, the ones over the limit are counted and
+ * reported with the next warning. Whether a set with an invalid line blocks builds
+ * (fail closed) or ignores the line (fail open, the default) is decided by the queue.
+ */
+public final class FreezeWindowQuarantine {
+
+    /**
+     * the logger
+     */
+    private static final Logger LOG = Logger.getLogger(FreezeWindowQuarantine.class.getName());
+
+    /**
+     * the most warnings logged per minute
+     */
+    static final int WARNINGS_PER_MINUTE = 10;
+
+    /**
+     * the most lines kept in quarantine
+     */
+    static final int MAX_ENTRIES = Integer.getInteger(FreezeWindowQuarantine.class.getName() + ".maxEntries", 1000);
+
+    /**
+     * the quarantine of the compiled freeze windows, on the system clock
+     */
+    static final FreezeWindowQuarantine SYSTEM = new FreezeWindowQuarantine(FreezeWindowClock.SYSTEM);
+
+    /**
+     * true if a set with an invalid line blocks all builds
+     */
+    private static volatile boolean failClosed;
+
+    /**
+     * the clock of the rate limit and of the time lines are quarantined at
+     */
+    private final FreezeWindowClock clock;
+
+    /**
+     * the invalid lines mapped to why they failed
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * the quarantined lines, the oldest first
+     */
+    private final Queue<String> order = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * the minute the warnings are currently counted for
+     */
+    private final AtomicLong warningMinute = new AtomicLong();
+
+    /**
+     * the warnings logged in {@link #warningMinute}
+     */
+    private final AtomicInteger warnings = new AtomicInteger();
+
+    /**
+     * the warnings not logged because of the rate limit
+     */
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    /**
+     * Constructor
+     * @param clock the source of the current time
+     */
+    FreezeWindowQuarantine(FreezeWindowClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the failure of a line if it is quarantined, and counts the compilation it saved.
+     * @param line the trimmed freeze window line
+     * @return the failure, null if the line is not quarantined
+     */
+    Entry get(String line) {
+        Entry entry = entries.get(line);
+        if (entry != null) {
+            entry.hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Quarantines a line that failed to compile and logs it unless it was quarantined
+     * before or the rate limit is reached.
+     * @param line the trimmed freeze window line
+     * @param failure why the line failed to compile
+     */
+    void add(String line, Exception failure) {
+        FreezeWindowMetrics.COMPILE_FAILURES.increment();
+        Entry entry = new Entry(line, failure.getMessage(), clock.currentTimeMillis());
+        if (entries.putIfAbsent(line, entry) == null) {
+            order.add(line);
+            while (entries.size() > MAX_ENTRIES) {
+                String oldest = order.poll();
+                if (oldest == null) {
+                    break;
+                }
+                entries.remove(oldest);
+            }
+            warn("Ignoring invalid freeze window \"" + line + "\": " + failure.getMessage(),
+                    failure instanceof RuntimeException ? failure : null);
+        }
+    }
+
+    /**
+     * Logs a line that failed to compile for a reason that may go away, without quarantining it.
+     * @param line the trimmed freeze window line
+     * @param failure why the line failed to compile
+     */
+    void failed(String line, Exception failure) {
+        FreezeWindowMetrics.COMPILE_FAILURES.increment();
+        warn("Ignoring freeze window \"" + line + "\" for now: " + failure.getMessage(), null);
+    }
+
+    private void warn(String message, Exception failure) {
+        long minute = clock.currentMinute();
+        long current = warningMinute.get();
+        if (current != minute && warningMinute.compareAndSet(current, minute)) {
+            warnings.set(0);
+        }
+        if (warnings.incrementAndGet() > WARNINGS_PER_MINUTE) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        int skipped = suppressed.getAndSet(0);
+        if (skipped > 0) {
+            message += " (" + skipped + " more invalid freeze windows were not logged)";
+        }
+        LOG.log(Level.WARNING, message, failure);
+    }
+
+    /**
+     * @return true if a set with an invalid line blocks all builds
+     */
+    public static boolean isFailClosed() {
+        return failClosed;
+    }
+
+    /**
+     * Sets whether a set with an invalid line blocks all builds.
+     * @param failClosed true to block, false to ignore the invalid lines
+     */
+    static void setFailClosed(boolean failClosed) {
+        FreezeWindowQuarantine.failClosed = failClosed;
+    }
+
+    /**
+     * @return the quarantined lines, the most recent first
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>(this.entries.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.since < b.since ? 1 : a.since == b.since ? 0 : -1;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * A quarantined line.
+     */
+    public static final class Entry {
+
+        private final String line;
+
+        private final String message;
+
+        private final long since;
+
+        /**
+         * the compilations saved since the line was quarantined
+         */
+        private final AtomicLong hits = new AtomicLong();
+
+        Entry(String line, String message, long since) {
+            this.line = line;
+            this.message = message;
+            this.since = since;
+        }
+
+        public String getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return when the line failed to compile, in milliseconds since the epoch
+         */
+        public long getSince() {
+            return since;
+        }
+
+        /**
+         * @return the compilations of the line saved since it was quarantined
+         */
+        public long getHits() {
+            return hits.get();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admin page that lists the quarantined freeze windows and the jobs whose effective freeze windows
+ * contain one of them, see {@link FreezeWindowQuarantine}.
+ */
+@Extension
+public class FreezeWindowQuarantineLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "warning.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.FreezeWindowQuarantine_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.FreezeWindowQuarantine_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "freezeWindowQuarantine";
+    }
+
+    /**
+     * @return the quarantined freeze windows, the most recent first
+     */
+    public List<FreezeWindowQuarantine.Entry> getEntries() {
+        return FreezeWindowQuarantine.SYSTEM.getEntries();
+    }
+
+    /**
+     * Returns how long a freeze window has been quarantined.
+     * @param entry the quarantined freeze window
+     * @return the time span since the freeze window failed to compile
+     */
+    public String getAge(FreezeWindowQuarantine.Entry entry) {
+        return Util.getTimeSpanString(FreezeWindowClock.SYSTEM.currentTimeMillis() - entry.getSince());
+    }
+
+    /**
+     * @return true if jobs with an invalid freeze window are blocked
+     */
+    public boolean isFailClosed() {
+        return FreezeWindowQuarantine.isFailClosed();
+    }
+
+    /**
+     * Returns the jobs whose own or inherited freeze windows contain an invalid line.
+     * @return the jobs with invalid freeze windows
+     */
+    public List<Job> getQuarantinedJobs() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        // unknown calendars and unreadable iCalendar files are invalid without being quarantined
+        List<Job> jobs = new ArrayList<Job>();
+        for (Job job : Jenkins.getInstance().getAllItems(Job.class)) {
+            if (!getInvalidLines(job).isEmpty()) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Returns the invalid lines of the effective freeze windows of a job.
+     * @param job the job
+     * @return the invalid lines
+     */
+    public List<String> getInvalidLines(Job<?, ?> job) {
+        return FreezeWindowInheritance.getEffectiveSet(job).getInvalidLines();
+    }
+}
@@ -28,19 +28,99 @@
 package hudson.plugins.freezewindow;
 
 import hudson.Extension;
-import hudson.model.AbstractProject;
+import hudson.model.Job;
+import hudson.model.Node;
 import hudson.model.Queue;
 import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueListener;
 import hudson.model.queue.QueueTaskDispatcher;
-import org.joda.time.DateTime;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Queue task dispatcher that evaluates the given freeze windows in the config of the
- * actual job. If an active freeze window is detected, the actual job will stay in the build queue.
+ * actual job, together with the freeze windows it inherits from its folders and the global config. If an active freeze window is detected, the actual job will stay in the build queue.
  */
 @Extension
 public class FreezeWindowQueueTaskDispatcher extends QueueTaskDispatcher {
 
+    /**
+     * schedules a queue maintenance when the earliest blocking freeze window ends
+     */
+    private static final FreezeWindowWakeup WAKEUP = createWakeup(FreezeWindowClock.SYSTEM);
+
+    /**
+     * releases the items blocked by a freeze window gradually once the freeze ends
+     */
+    private static final FreezeWindowReleaseGate GATE = new FreezeWindowReleaseGate(FreezeWindowClock.SYSTEM);
+
+    /**
+     * the clock the freeze windows are evaluated with
+     */
+    private final FreezeWindowClock clock;
+
+    /**
+     * the wakeup of this dispatcher, on the same clock
+     */
+    private final FreezeWindowWakeup wakeup;
+
+    /**
+     * the release gate of this dispatcher, on the same clock
+     */
+    private final FreezeWindowReleaseGate gate;
+
+    /**
+     * Constructor, the dispatcher evaluates the freeze windows with the system clock
+     */
+    public FreezeWindowQueueTaskDispatcher() {
+        this(FreezeWindowClock.SYSTEM, WAKEUP, GATE);
+    }
+
+    private FreezeWindowQueueTaskDispatcher(FreezeWindowClock clock, FreezeWindowWakeup wakeup,
+                                            FreezeWindowReleaseGate gate) {
+        this.clock = clock;
+        this.wakeup = wakeup;
+        this.gate = gate;
+    }
+
+    /**
+     * Creates a dispatcher that evaluates the freeze windows with the given clock, such as a simulated clock
+     * in load tests. It has its own wakeup and release gate on the same clock, the gate releases all items at once.
+     * @param clock the clock
+     * @return the dispatcher
+     */
+    static FreezeWindowQueueTaskDispatcher create(FreezeWindowClock clock) {
+        return new FreezeWindowQueueTaskDispatcher(clock, createWakeup(clock), new FreezeWindowReleaseGate(clock));
+    }
+
+    private static FreezeWindowWakeup createWakeup(FreezeWindowClock clock) {
+        return new FreezeWindowWakeup(clock,
+                new FreezeWindowWakeup.Scheduler() {
+                    public void schedule(Runnable task, long delayMillis) {
+                        Timer.get().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        Jenkins jenkins = Jenkins.getInstance();
+                        if (jenkins != null) {
+                            jenkins.getQueue().scheduleMaintenance();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Configures the gradual release of the items blocked by a freeze window.
+     * @param builds the number of builds released per interval, 0 to release all at once
+     * @param intervalSeconds the interval in seconds
+     */
+    static void configureRelease(int builds, int intervalSeconds) {
+        GATE.configure(builds, intervalSeconds * 1000L);
+    }
+
     /**
      * Called whenever {@link hudson.model.Queue} is considering if {@link hudson.model.Queue.Item} is ready to execute immediately
      * (which doesn't necessarily mean that it gets executed right away &mdash; it's still subject to
@@ -69,22 +149,106 @@ public class FreezeWindowQueueTaskDispatcher extends QueueTaskDispatcher {
      * @since 1.427
      */
     @Override
-    @SuppressWarnings("unchecked")
     public CauseOfBlockage canRun(Queue.Item item){
-        if(item.task instanceof AbstractProject) {
-            AbstractProject project = (AbstractProject) item.task;
+        long start = System.nanoTime();
+        try {
+            CauseOfBlockage cause = check(item);
+            if (!(cause instanceof FreezeWindowCauseOfBlockage)) {
+                FreezeWindowMetrics.unblocked(item.getId());
+            }
+            return cause;
+        } finally {
+            FreezeWindowMetrics.CAN_RUN.record(System.nanoTime() - start);
+        }
+    }
 
-            FreezeWindowProperty property = (FreezeWindowProperty) project.getProperty(FreezeWindowProperty.class);
+    private CauseOfBlockage check(Queue.Item item) {
+        // freestyle, matrix and pipeline jobs, among others
+        if(item.task instanceof Job) {
+            Job<?, ?> job = (Job<?, ?>) item.task;
 
-            if(property != null) {
-                String freezeWindows = property.getFreezeWindows();
-                String blockingFW = new FreezeWindowMonitor(freezeWindows).shouldBlock();
+            FreezeWindowSet freezeWindowSet = FreezeWindowInheritance.getEffectiveSet(job);
+
+            if (FreezeWindowQuarantine.isFailClosed() && freezeWindowSet.getInvalidCause() != null) {
+                return freezeWindowSet.getInvalidCause();
+            }
+
+            if (!freezeWindowSet.isEmpty()) {
+                FreezeWindowMetrics.EVALUATIONS.increment();
+                long now = clock.currentMinute();
+                FreezeWindow blockingFW = freezeWindowSet.shouldBlock(now);
 
                 if (blockingFW != null) {
-                    return CauseOfBlockage.fromMessage(Messages._BlockingByFreezeWindow(new DateTime(), blockingFW));
+                    FreezeWindowMetrics.blocked(item.getId(), blockingFW);
+                    if (gate.isEnabled()) {
+                        gate.blocked(item.getId(), getReleasePriority(job), item.getInQueueSince());
+                    }
+                    wakeup.request(freezeWindowSet.getNextTransition(now));
+                    return FreezeWindowCauseOfBlockage.of(blockingFW, now);
+                }
+
+                if (FreezeWindowAdmission.isEnabled()) {
+                    long duration = FreezeWindowAdmission.getDuration(job);
+                    FreezeWindowSet.State next = FreezeWindowAdmission.check(freezeWindowSet, now, duration);
+                    if (next != null) {
+                        // the build can only start once the freeze it would run into is over
+                        FreezeWindowMetrics.ADMISSION_BLOCKS.increment();
+                        wakeup.request(next.getValidUntil());
+                        return new FreezeWindowAdmissionCause(next.getBlockingWindow(), next.getValidFrom(), duration);
+                    }
                 }
             }
         }
+        if (!gate.release(item.getId())) {
+            FreezeWindowMetrics.RELEASE_WAITS.increment();
+            wakeup.request(gate.getNextRefill());
+            return new FreezeWindowReleaseCause(gate, item.getId());
+        }
         return super.canRun(item);
     }
+
+    /**
+     * Called for every pair of node and buildable item during load balancing: a node whose freeze windows
+     * or whose labels' freeze windows are active takes no builds, while other nodes keep building.
+     *
+     * @return null if the node can take the item, otherwise the freeze window that blocks the node
+     */
+    @Override
+    public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+        FreezeWindowSet freezeWindowSet = FreezeWindowNodeCache.get(node);
+
+        if (FreezeWindowQuarantine.isFailClosed() && freezeWindowSet.getInvalidCause() != null) {
+            return freezeWindowSet.getInvalidCause();
+        }
+
+        if (!freezeWindowSet.isEmpty()) {
+            long now = clock.currentMinute();
+            FreezeWindow blockingFW = freezeWindowSet.shouldBlock(now);
+
+            if (blockingFW != null) {
+                FreezeWindowMetrics.NODE_BLOCKS.increment();
+                wakeup.request(freezeWindowSet.getNextTransition(now));
+                return FreezeWindowCauseOfBlockage.of(blockingFW, now);
+            }
+        }
+        return super.canTake(node, item);
+    }
+
+    private static int getReleasePriority(Job<?, ?> job) {
+        FreezeWindowProperty property = FreezeWindowJobIndex.getProperty(job);
+        return property == null ? 0 : property.getReleasePriority();
+    }
+
+    /**
+     * Forgets the items that leave the queue while they are blocked or wait to be released.
+     */
+    @Extension
+    public static class ReleaseListener extends QueueListener {
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            GATE.left(li.getId());
+            FreezeWindowMetrics.unblocked(li.getId());
+        }
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Plugin wide registry of the compiled freeze window sets.
+ *
+ * Jobs generated from the same template hold identical freeze windows, so every distinct
+ * set is compiled once and the compiled instance, with its caches, is shared by all of them.
+ * Sets are only weakly referenced and are dropped once no configuration uses them.
+ * Sets whose shared calendars or iCalendar files changed are compiled again in the background,
+ * see {@link #recompile()}, so the queue never compiles a set or reads a file.
+ */
+public final class FreezeWindowRegistry {
+
+    /**
+     * canonical freeze windows mapped to the compiled sets
+     */
+    private static final ConcurrentMap<String, Entry> SETS = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * receives the entries whose sets have been garbage collected
+     */
+    private static final ReferenceQueue<FreezeWindowSet> COLLECTED = new ReferenceQueue<FreezeWindowSet>();
+
+    private FreezeWindowRegistry() {
+    }
+
+    /**
+     * Returns the compiled set of the given freeze windows, shared with every other
+     * configuration with the same canonical freeze windows.
+     * @param freezeWindows line feed separated list of freeze windows, may be null
+     * @return the compiled freeze windows
+     */
+    public static FreezeWindowSet get(String freezeWindows) {
+        String canonical = canonicalize(freezeWindows);
+        if (canonical.length() == 0) {
+            return FreezeWindowSet.EMPTY;
+        }
+        expungeCollected();
+
+        String key = TimeZone.getDefault().getID() + '\n' + canonical;
+        Entry entry = SETS.get(key);
+        // the registered set is always the latest one, stale sets are replaced in the background
+        FreezeWindowSet set = entry == null ? null : entry.get();
+        if (set != null) {
+            FreezeWindowMetrics.REGISTRY_HITS.increment();
+        }
+        while (set == null) {
+            FreezeWindowMetrics.REGISTRY_MISSES.increment();
+            FreezeWindowSet compiled = FreezeWindowSet.compile(canonical);
+            Entry created = new Entry(key, compiled);
+            if (entry == null ? SETS.putIfAbsent(key, created) == null : SETS.replace(key, entry, created)) {
+                return compiled;
+            }
+            // another thread registered the same freeze windows concurrently
+            entry = SETS.get(key);
+            set = entry == null ? null : entry.get();
+        }
+        return set;
+    }
+
+    /**
+     * Compiles the registered sets again whose shared calendars or iCalendar files changed, and replaces
+     * them all at once: the holders of the old sets see them as stale, see {@link FreezeWindowSet#isStale()},
+     * only once every new set is registered. Reads the file system, so it is called in the background,
+     * see {@link FreezeWindowSharedCalendarPoller}, and never by the queue.
+     * @return the number of sets compiled again
+     */
+    static synchronized int recompile() {
+        expungeCollected();
+        Map<File, long[]> files = new HashMap<File, long[]>();
+        List<Entry> replaced = new ArrayList<Entry>();
+        List<FreezeWindowSet> compiled = new ArrayList<FreezeWindowSet>();
+        for (Entry entry : SETS.values()) {
+            FreezeWindowSet set = entry.get();
+            if (set != null && set.needsRecompile(files)) {
+                replaced.add(entry);
+                compiled.add(FreezeWindowSet.compile(entry.key.substring(entry.key.indexOf('\n') + 1)));
+            }
+        }
+        if (replaced.isEmpty()) {
+            return 0;
+        }
+        FreezeWindowSet.Recompilation recompilation = new FreezeWindowSet.Recompilation();
+        for (int i = 0; i < replaced.size(); i++) {
+            Entry entry = replaced.get(i);
+            FreezeWindowSet set = entry.get();
+            if (set != null && SETS.replace(entry.key, entry, new Entry(entry.key, compiled.get(i)))) {
+                set.replaceWith(compiled.get(i), recompilation);
+            }
+        }
+        recompilation.publish();
+        return replaced.size();
+    }
+
+    /**
+     * Returns the canonical form of the freeze windows: one trimmed line per freeze window,
+     * fields separated by a single space, no blank or repeated lines. The arguments of directives
+     * are kept as written, see {@link FreezeWindowOptimizer#canonical(String)}, so the canonical form
+     * compiles to the same freeze windows as the original.
+     * @param freezeWindows line feed separated list of freeze windows, may be null
+     * @return the canonical freeze windows, empty if there is no freeze window
+     */
+    public static String canonicalize(String freezeWindows) {
+        if (StringUtils.isBlank(freezeWindows)) {
+            return "";
+        }
+        Set<String> lines = new LinkedHashSet<String>();
+        for (String line : freezeWindows.split("\n")) {
+            String canonical = FreezeWindowOptimizer.canonical(line);
+            if (canonical.length() > 0) {
+                lines.add(canonical);
+            }
+        }
+        return StringUtils.join(lines, '\n');
+    }
+
+    /**
+     * Returns the number of distinct freeze window sets currently in use.
+     * @return the number of registered sets
+     */
+    public static int size() {
+        expungeCollected();
+        return SETS.size();
+    }
+
+    private static void expungeCollected() {
+        Reference<? extends FreezeWindowSet> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            Entry entry = (Entry) collected;
+            SETS.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * A weak reference to a compiled set that remembers its key.
+     */
+    private static final class Entry extends WeakReference<FreezeWindowSet> {
+
+        private final String key;
+
+        Entry(String key, FreezeWindowSet set) {
+            super(set, COLLECTED);
+            this.key = key;
+        }
+    }
+}
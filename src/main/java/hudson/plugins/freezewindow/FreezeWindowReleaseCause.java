@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.queue.CauseOfBlockage;
+
+/**
+ * Cause of blockage of an item whose freeze ended and that waits for its turn
+ * to be released, see {@link FreezeWindowReleaseGate}. The position is only looked up
+ * when the cause is displayed, not on every check of the queue.
+ */
+public class FreezeWindowReleaseCause extends CauseOfBlockage {
+
+    /**
+     * the gate the item waits at
+     */
+    private final FreezeWindowReleaseGate gate;
+
+    /**
+     * the queue id of the item
+     */
+    private final long id;
+
+    /**
+     * Constructor
+     * @param gate the gate the item waits at
+     * @param id the queue id of the item
+     */
+    FreezeWindowReleaseCause(FreezeWindowReleaseGate gate, long id) {
+        this.gate = gate;
+        this.id = id;
+    }
+
+    /**
+     * @return the position of the item in the release order, starting with 1, or 0 if it is no longer waiting
+     */
+    public int getPosition() {
+        return gate.getPosition(id);
+    }
+
+    /**
+     * @return the number of items waiting to be released
+     */
+    public int getCount() {
+        return gate.getPendingCount();
+    }
+
+    @Override
+    public String getShortDescription() {
+        return Messages.QueuedForRelease(getPosition(), getCount());
+    }
+}
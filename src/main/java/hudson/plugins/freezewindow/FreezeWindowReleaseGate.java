@@ -0,0 +1,324 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases the queue items that were blocked by a freeze window gradually once the freeze ends,
+ * so that they do not all hit the agents, clouds and SCM servers in the same second.
+ *
+ * A token bucket allows up to a configured number of builds per interval. Items whose freeze ended
+ * wait for a token in order of their release priority, then of their time in the queue.
+ * The queue keeps them blocked with a {@link FreezeWindowReleaseCause} until their turn comes.
+ * With a number of builds of 0 (the default) every item is released as soon as its freeze ends.
+ *
+ * Items that the queue stops checking without them leaving it, for instance because another dispatcher
+ * blocks them, are dropped after {@link #STALE_MILLIS} so that they do not hold up the items behind them.
+ */
+final class FreezeWindowReleaseGate {
+
+    /**
+     * the default interval of the token bucket
+     */
+    static final long DEFAULT_INTERVAL_MILLIS = 60L * 1000L;
+
+    /**
+     * the time after which an item the queue no longer checks is dropped, the queue checks its items every few seconds
+     */
+    static final long STALE_MILLIS = 5L * 60L * 1000L;
+
+    /**
+     * orders the items by descending priority, then by ascending time in the queue, then by id
+     */
+    private static final Comparator<Waiting> RELEASE_ORDER = new Comparator<Waiting>() {
+        public int compare(Waiting a, Waiting b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            if (a.inQueueSince != b.inQueueSince) {
+                return a.inQueueSince < b.inQueueSince ? -1 : 1;
+            }
+            return a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
+        }
+    };
+
+    private final FreezeWindowClock clock;
+
+    /**
+     * the items that have been blocked by a freeze window and have not been released yet, by queue id
+     */
+    private final Map<Long, Waiting> waiting = new ConcurrentHashMap<Long, Waiting>();
+
+    /**
+     * the waiting items whose freeze ended, in release order
+     */
+    private final TreeSet<Waiting> order = new TreeSet<Waiting>(RELEASE_ORDER);
+
+    /**
+     * the waiting items seen blocked in {@link #frozenMinute}, they join {@link #order} once the minute is over
+     */
+    private final List<Waiting> frozen = new ArrayList<Waiting>();
+
+    private long frozenMinute = Long.MIN_VALUE;
+
+    /**
+     * the number of builds released per interval, 0 to release all builds at once
+     */
+    private volatile int builds;
+
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+    /**
+     * the tokens left in the bucket
+     */
+    private int tokens;
+
+    /**
+     * the time the bucket was last refilled
+     */
+    private long refilled;
+
+    /**
+     * Constructor
+     * @param clock the source of the current time
+     */
+    FreezeWindowReleaseGate(FreezeWindowClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Configures the token bucket, which starts full.
+     * @param builds the number of builds released per interval, 0 to release all builds at once
+     * @param intervalMillis the length of the interval
+     */
+    synchronized void configure(int builds, long intervalMillis) {
+        this.builds = Math.max(builds, 0);
+        this.intervalMillis = intervalMillis > 0 ? intervalMillis : DEFAULT_INTERVAL_MILLIS;
+        this.tokens = this.builds;
+        this.refilled = clock.currentTimeMillis();
+        if (this.builds == 0) {
+            waiting.clear();
+            order.clear();
+            frozen.clear();
+        }
+    }
+
+    /**
+     * Records that an item is blocked by a freeze window in the current minute.
+     * @param id the queue id of the item
+     * @param priority the release priority of the item, higher is released first
+     * @param inQueueSince the time the item entered the queue
+     */
+    synchronized void blocked(long id, int priority, long inQueueSince) {
+        if (builds == 0) {
+            return;
+        }
+        roll();
+        Waiting item = waiting.get(id);
+        if (item == null || item.priority != priority) {
+            remove(id);
+            item = new Waiting(id, priority, inQueueSince);
+            waiting.put(id, item);
+        } else {
+            order.remove(item);
+        }
+        if (item.blockedAt != frozenMinute) {
+            item.blockedAt = frozenMinute;
+            frozen.add(item);
+        }
+        item.seenAt = clock.currentTimeMillis();
+    }
+
+    /**
+     * Called when no freeze window blocks an item. Items that were never blocked are released at once.
+     * Items that were blocked get a token from the bucket in release order, among the items that have not
+     * been seen blocked in the current minute: the queue checks its items in its own order, so the items
+     * it has not checked yet since the freeze ended are assumed to be released as well.
+     * @param id the queue id of the item
+     * @return true if the item may run, false if it has to wait for its turn
+     */
+    boolean release(long id) {
+        if (waiting.isEmpty() || !waiting.containsKey(id)) {
+            return true;
+        }
+        synchronized (this) {
+            Waiting item = waiting.get(id);
+            if (item == null || builds == 0) {
+                remove(id);
+                return true;
+            }
+            long now = clock.currentTimeMillis();
+            roll();
+            item.blockedAt = Long.MIN_VALUE;
+            item.seenAt = now;
+            order.add(item);
+            refill();
+            // frozen items are not in the order, so at most as many items as there are tokens are walked
+            int ahead = 0;
+            for (Iterator<Waiting> it = order.iterator(); it.hasNext() && ahead < tokens; ) {
+                Waiting next = it.next();
+                if (next == item) {
+                    tokens--;
+                    remove(id);
+                    return true;
+                }
+                if (now - next.seenAt > STALE_MILLIS) {
+                    // no longer checked by the queue
+                    it.remove();
+                    waiting.remove(next.id);
+                } else {
+                    ahead++;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Forgets an item that left the queue.
+     * @param id the queue id of the item
+     */
+    void left(long id) {
+        if (waiting.containsKey(id)) {
+            synchronized (this) {
+                remove(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of an item among the items waiting for their turn.
+     * This walks the waiting items, so it is only called when the cause of blockage is displayed.
+     * @param id the queue id of the item
+     * @return the position starting with 1, or 0 if the item is not waiting for its turn
+     */
+    synchronized int getPosition(long id) {
+        roll();
+        Waiting item = waiting.get(id);
+        if (item == null || item.blockedAt == frozenMinute) {
+            return 0;
+        }
+        int position = 1;
+        for (Waiting next : order) {
+            if (next == item) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of items that are waiting for their turn
+     */
+    synchronized int getPendingCount() {
+        roll();
+        return order.size();
+    }
+
+    /**
+     * @return the time the next tokens are added to the bucket
+     */
+    synchronized long getNextRefill() {
+        return refilled + intervalMillis;
+    }
+
+    boolean isEnabled() {
+        return builds > 0;
+    }
+
+    private void refill() {
+        long intervals = (clock.currentTimeMillis() - refilled) / intervalMillis;
+        if (intervals > 0) {
+            tokens = (int) Math.min(builds, tokens + intervals * builds);
+            refilled += intervals * intervalMillis;
+        }
+    }
+
+    /**
+     * Moves the items that were frozen in a previous minute to the release order.
+     */
+    private void roll() {
+        long minute = clock.currentMinute();
+        if (minute == frozenMinute) {
+            return;
+        }
+        for (Waiting item : frozen) {
+            // skips the items that left the queue or were released in the meantime
+            if (item.blockedAt == frozenMinute && waiting.get(item.id) == item) {
+                order.add(item);
+            }
+        }
+        frozen.clear();
+        frozenMinute = minute;
+    }
+
+    private void remove(long id) {
+        Waiting item = waiting.remove(id);
+        if (item != null) {
+            order.remove(item);
+        }
+    }
+
+    /**
+     * A queue item that has been blocked by a freeze window.
+     */
+    private static final class Waiting {
+
+        private final long id;
+
+        private final int priority;
+
+        private final long inQueueSince;
+
+        /**
+         * the minute the item was last seen blocked by a freeze window, {@link Long#MIN_VALUE} if its freeze ended
+         */
+        private long blockedAt;
+
+        /**
+         * the time the queue last checked the item
+         */
+        private long seenAt;
+
+        Waiting(long id, int priority, long inQueueSince) {
+            this.id = id;
+            this.priority = priority;
+            this.inQueueSince = inQueueSince;
+            this.blockedAt = Long.MIN_VALUE;
+        }
+    }
+}
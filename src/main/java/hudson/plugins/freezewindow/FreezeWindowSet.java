@@ -0,0 +1,598 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The compiled, immutable form of the freeze windows of a job configuration.
+ *
+ * The freeze windows are parsed once when the configuration is created or loaded,
+ * so that checking the build queue never parses cron text again.
+ * Use {@link FreezeWindowRegistry#get(String)} to share the set between identical configurations.
+ *
+ * The freeze state only changes at the boundaries of the windows, so the last evaluation
+ * is cached together with the time until which it stays valid.
+ */
+public final class FreezeWindowSet {
+    /**
+     * how far ahead the next change of the freeze state is searched
+     */
+    private static final long HORIZON = 7L * 24L * 60L * CronMask.MILLIS_PER_MINUTE;
+
+    /**
+     * a set without any freeze window
+     */
+    public static final FreezeWindowSet EMPTY = new FreezeWindowSet(
+            FreezeWindowOptimizer.optimize(Collections.<FreezeWindow>emptyList()), FreezeWindowCalendar.EMPTY,
+            Collections.<String>emptyList(), -1, Collections.<File, long[]>emptyMap(), TimeZone.getDefault());
+
+    /**
+     * the compiled freeze windows in the order they are checked, see {@link FreezeWindowOptimizer}
+     */
+    private final List<FreezeWindow> windows;
+
+    /**
+     * the compiled freeze windows in configuration order
+     */
+    private final List<FreezeWindow> configured;
+
+    /**
+     * the freeze windows removed because other freeze windows cover them
+     */
+    private final List<FreezeWindowOptimizer.Removal> removed;
+
+    /**
+     * the ranges of the <code>@except</code> lines, in which no freeze window blocks
+     */
+    private final FreezeWindowCalendar exceptions;
+
+    /**
+     * the lines that failed to compile, see {@link FreezeWindowQuarantine}
+     */
+    private final List<String> invalidLines;
+
+    /**
+     * the version of the shared calendars this set was compiled with, -1 if it references none
+     */
+    private final long calendarGeneration;
+
+    /**
+     * the version of each iCalendar file this set read, see {@link FreezeWindowCalendar#stamp(File)}
+     */
+    private final Map<File, long[]> icsFiles;
+
+    /**
+     * the set compiled in the background to replace this one, see {@link FreezeWindowRegistry#recompile()}
+     */
+    private volatile Replacement replacement;
+
+    /**
+     * the time zone all freeze windows of this set are evaluated in
+     */
+    private final TimeZone timeZone;
+
+    /**
+     * the last evaluation, replaced as a whole once it expires
+     */
+    private volatile State state;
+
+    /**
+     * the masks of the freeze windows if they are checked with a bitmap, otherwise null
+     */
+    private final List<CronMask> bitmapMasks;
+
+    /**
+     * the bitmap of the last checked year
+     */
+    private volatile FreezeWindowBitmap bitmap;
+
+    /**
+     * the upcoming freezes of the current freeze state, see {@link FreezeWindowForecast#getUpcoming}
+     */
+    private volatile FreezeWindowForecast.Upcoming upcoming;
+
+    /**
+     * the cause of blockage of the items of this set while invalid freeze windows block builds,
+     * shared by all of them, null if every line compiled
+     */
+    private final FreezeWindowInvalidCause invalidCause;
+
+    private FreezeWindowSet(FreezeWindowOptimizer.Result optimized, FreezeWindowCalendar exceptions,
+                            List<String> invalidLines, long calendarGeneration, Map<File, long[]> icsFiles,
+                            TimeZone timeZone) {
+        this.windows = optimized.getCheckOrder();
+        this.configured = optimized.getWindows();
+        this.removed = optimized.getRemoved();
+        this.exceptions = exceptions;
+        this.invalidLines = invalidLines;
+        this.invalidCause = invalidLines.isEmpty() ? null : new FreezeWindowInvalidCause(invalidLines.get(0));
+        this.calendarGeneration = calendarGeneration;
+        this.icsFiles = icsFiles;
+        this.timeZone = timeZone;
+        this.state = windows.isEmpty() ? State.NEVER_BLOCKED : State.EXPIRED;
+
+        List<CronMask> masks = null;
+        if (FreezeWindowBitmap.ENABLED && !windows.isEmpty() && exceptions.size() == 0) {
+            masks = new ArrayList<CronMask>();
+            for (FreezeWindow window : windows) {
+                if (window.getMask() == null) {
+                    masks = null;
+                    break;
+                }
+                masks.add(window.getMask());
+            }
+        }
+        this.bitmapMasks = masks;
+    }
+
+    /**
+     * Compiles the line feed separated list of freeze windows.
+     * Lines that are not valid cron expressions are quarantined and ignored, and lines covered by other lines are removed.
+     * <code>@except</code> lines lift all freezes of the set during their ranges,
+     * <code>@calendar</code> lines stand for the lines of a {@link FreezeWindowSharedCalendar}.
+     * @param freezeWindows line feed separated list of freeze windows, may be null
+     * @return the compiled freeze windows
+     */
+    public static FreezeWindowSet compile(String freezeWindows) {
+        if (StringUtils.isBlank(freezeWindows)) {
+            return EMPTY;
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        List<FreezeWindow> windows = new ArrayList<FreezeWindow>();
+        List<FreezeWindowCalendar> exceptions = new ArrayList<FreezeWindowCalendar>();
+        List<String> invalidLines = new ArrayList<String>();
+        FreezeWindowSharedCalendar.Snapshot calendars = null;
+        Map<File, long[]> icsFiles = null;
+        for (String line : freezeWindows.split("\n")) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            line = line.trim();
+            if (FreezeWindowSharedCalendar.isReference(line)) {
+                if (calendars == null) {
+                    calendars = FreezeWindowSharedCalendar.getSnapshot();
+                }
+                List<String> calendar = calendars.get(FreezeWindowSharedCalendar.getName(line));
+                if (calendar == null) {
+                    // not quarantined, the calendar may appear with the next version of the file
+                    invalidLines.add(line);
+                    continue;
+                }
+                for (String calendarLine : calendar) {
+                    icsFiles = stampIcsFile(calendarLine, icsFiles);
+                    compileLine(calendarLine, timeZone, windows, exceptions, invalidLines);
+                }
+                continue;
+            }
+            icsFiles = stampIcsFile(line, icsFiles);
+            compileLine(line, timeZone, windows, exceptions, invalidLines);
+        }
+        return new FreezeWindowSet(FreezeWindowOptimizer.optimize(windows), FreezeWindowCalendar.union(exceptions),
+                invalidLines.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList(invalidLines),
+                calendars == null ? -1 : calendars.getGeneration(),
+                icsFiles == null ? Collections.<File, long[]>emptyMap() : icsFiles, timeZone);
+    }
+
+    /**
+     * Records the version of the file an <code>@ics</code> line reads, before the line is compiled,
+     * so that a change while the file is read is noticed as well.
+     */
+    private static Map<File, long[]> stampIcsFile(String line, Map<File, long[]> icsFiles) {
+        File file = FreezeWindowCalendar.getFile(line);
+        if (file == null) {
+            return icsFiles;
+        }
+        if (icsFiles == null) {
+            icsFiles = new HashMap<File, long[]>();
+        }
+        if (!icsFiles.containsKey(file)) {
+            icsFiles.put(file, FreezeWindowCalendar.stamp(file));
+        }
+        return icsFiles;
+    }
+
+    private static void compileLine(String line, TimeZone timeZone, List<FreezeWindow> windows,
+                                    List<FreezeWindowCalendar> exceptions, List<String> invalidLines) {
+        if (FreezeWindowQuarantine.SYSTEM.get(line) != null) {
+            invalidLines.add(line);
+            return;
+        }
+        try {
+            FreezeWindow window = FreezeWindow.compile(line, timeZone, FreezeWindow.QUARTZ_ONLY);
+            if (window.isException()) {
+                exceptions.add(window.getCalendar());
+            } else {
+                windows.add(window);
+            }
+        } catch (FreezeWindowCalendar.UnreadableException e) {
+            // read again when the file changes, see FreezeWindowCalendar#poll()
+            FreezeWindowQuarantine.SYSTEM.failed(line, e);
+            invalidLines.add(line);
+        } catch (ParseException e) {
+            FreezeWindowQuarantine.SYSTEM.add(line, e);
+            invalidLines.add(line);
+        } catch (RuntimeException e) {
+            FreezeWindowQuarantine.SYSTEM.add(line, e);
+            invalidLines.add(line);
+        }
+    }
+
+    /**
+     * Returns the compiled freeze windows in configuration order.
+     * @return the compiled freeze windows, without the ones covered by other freeze windows
+     */
+    public List<FreezeWindow> getWindows() {
+        return configured;
+    }
+
+    /**
+     * Returns the freeze windows removed from this set because other freeze windows block whenever they do.
+     * @return the removed freeze windows
+     */
+    List<FreezeWindowOptimizer.Removal> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the lines of this set that failed to compile and are ignored.
+     * @return the invalid lines in configuration order
+     */
+    public List<String> getInvalidLines() {
+        return invalidLines;
+    }
+
+    /**
+     * Returns the cause of blockage naming the first invalid line, shared by all items of this set.
+     * @return the cause, null if every line compiled
+     */
+    FreezeWindowInvalidCause getInvalidCause() {
+        return invalidCause;
+    }
+
+    /**
+     * Returns true if this set was replaced by a set compiled again in the background, because a shared calendar
+     * or an iCalendar file it references changed. Holders of compiled sets check this on use and get the new set
+     * from the {@link FreezeWindowRegistry}, which never compiles a set again on the queue thread.
+     * @return true if a newer set replaces this one
+     */
+    public boolean isStale() {
+        Replacement current = replacement;
+        return current != null && current.recompilation.published;
+    }
+
+    /**
+     * Returns true if a shared calendar or an iCalendar file this set references changed since it was compiled.
+     * Reads the file system, only called in the background.
+     * @param files the versions of the files already looked at, filled with the files looked at by this call
+     * @return true if the set must be compiled again
+     */
+    boolean needsRecompile(Map<File, long[]> files) {
+        if (calendarGeneration >= 0 && calendarGeneration != FreezeWindowSharedCalendar.getGeneration()) {
+            return true;
+        }
+        for (Map.Entry<File, long[]> entry : icsFiles.entrySet()) {
+            long[] stamp = files.get(entry.getKey());
+            if (stamp == null) {
+                stamp = FreezeWindowCalendar.stamp(entry.getKey());
+                files.put(entry.getKey(), stamp);
+            }
+            if (!Arrays.equals(stamp, entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the set replacing this one, effective once the recompilation is published.
+     * @param set the new set
+     * @param recompilation the recompilation the new set is part of
+     */
+    void replaceWith(FreezeWindowSet set, Recompilation recompilation) {
+        replacement = new Replacement(set, recompilation);
+    }
+
+    /**
+     * @return the set replacing this one, or this set if it is not replaced
+     */
+    FreezeWindowSet getReplacement() {
+        return isStale() ? replacement.set.getReplacement() : this;
+    }
+
+    /**
+     * @return the upcoming freezes last computed for this set, may be null
+     */
+    FreezeWindowForecast.Upcoming getUpcoming() {
+        return upcoming;
+    }
+
+    void setUpcoming(FreezeWindowForecast.Upcoming upcoming) {
+        this.upcoming = upcoming;
+    }
+
+    /**
+     * Returns true if there is no freeze window in this set.
+     * @return true if there is no freeze window in this set
+     */
+    public boolean isEmpty() {
+        return windows.isEmpty();
+    }
+
+    /**
+     * Check if the given time is in one of the freeze windows.
+     * @param time the time to check
+     * @return null if the time is not in any freeze window.
+     * Otherwise return a freeze window that contains the time, checking the ones that match most often first
+     */
+    public FreezeWindow shouldBlock(Date time) {
+        return shouldBlock(time.getTime());
+    }
+
+    /**
+     * Check if the given time is in one of the freeze windows.
+     * @param time milliseconds since the epoch
+     * @return null if the time is not in any freeze window.
+     * Otherwise return a freeze window that contains the time, checking the ones that match most often first
+     */
+    public FreezeWindow shouldBlock(long time) {
+        if (bitmapMasks != null) {
+            return shouldBlockWithBitmap(time);
+        }
+        return getState(time).getBlockingWindow();
+    }
+
+    /**
+     * Checks the bitmap, the freeze windows are only evaluated to find the blocking one.
+     */
+    private FreezeWindow shouldBlockWithBitmap(long time) {
+        long fields = CronMask.fields(time, timeZone);
+        if (!getBitmap(fields).isSet(fields)) {
+            return null;
+        }
+        for (int i = 0; i < windows.size(); i++) {
+            FreezeWindow window = windows.get(i);
+            if (window.isActive(time, fields)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    private FreezeWindowBitmap getBitmap(long fields) {
+        FreezeWindowBitmap current = bitmap;
+        if (current == null || !current.covers(fields)) {
+            current = FreezeWindowBitmap.build(bitmapMasks, CronMask.year(fields));
+            bitmap = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the next time {@link #shouldBlock(long)} may change its answer. With a bitmap this is looked up
+     * in the bitmap, otherwise it is the end of the freeze state at the given time.
+     * @param time milliseconds since the epoch
+     * @return milliseconds since the epoch, at most a week after the given time
+     */
+    public long getNextTransition(long time) {
+        if (bitmapMasks == null) {
+            return getState(time).getValidUntil();
+        }
+        long minute = FreezeWindowClock.floorToMinute(time);
+        long fields = CronMask.fields(minute, timeZone);
+        int minutes = getBitmap(fields).minutesUntilChange(fields, (int) (HORIZON / CronMask.MILLIS_PER_MINUTE));
+        long transition = minute + minutes * CronMask.MILLIS_PER_MINUTE;
+        if (timeZone.getOffset(transition) != timeZone.getOffset(minute)) {
+            // the bitmap counts local minutes, which differ from elapsed minutes across a daylight saving change
+            return getState(time).getValidUntil();
+        }
+        return transition;
+    }
+
+    /**
+     * Returns the freeze state at the given time, reusing the last evaluation while it is valid.
+     * @param time milliseconds since the epoch
+     * @return the freeze state at the given time
+     */
+    public State getState(long time) {
+        State current = state;
+        if (time < current.validFrom || time >= current.validUntil) {
+            FreezeWindowMetrics.STATE_MISSES.increment();
+            current = evaluate(time);
+            state = current;
+        } else {
+            FreezeWindowMetrics.STATE_HITS.increment();
+        }
+        return current;
+    }
+
+    /**
+     * Returns the next freeze at or after the given time, looking up to a week ahead.
+     * The result is cached with the freeze state, so it is computed once per state rather than once per call.
+     * @param time milliseconds since the epoch
+     * @return the freeze state at the start of the next freeze, whose valid from time is the start of the freeze,
+     * or null if no freeze starts within a week
+     */
+    public State getNextFreeze(long time) {
+        return getNextFreeze(time, time + HORIZON);
+    }
+
+    /**
+     * Returns the first freeze at or after the given time that starts before the given end. The states
+     * between the two are walked one transition after the other, so a freeze that follows a state without
+     * a freeze, such as the end of an <code>@except</code> range, is found as well. The successor of each
+     * state is cached with the state.
+     * @param time milliseconds since the epoch
+     * @param end the exclusive end of the range to look at, in milliseconds since the epoch
+     * @return the freeze state at the start of the first freeze, whose valid from time is the start of the freeze,
+     * or null if no freeze starts before the end
+     */
+    public State getNextFreeze(long time, long end) {
+        State current = getState(time);
+        while (current.blockingWindow == null) {
+            if (current.validUntil >= end || current.validUntil == Long.MAX_VALUE) {
+                return null;
+            }
+            State next = current.nextFreeze;
+            if (next == null) {
+                next = evaluate(current.validUntil);
+                current.nextFreeze = next;
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Evaluates all freeze windows at the given time and computes when the result changes next,
+     * without using or replacing the cached freeze state.
+     * @param time milliseconds since the epoch
+     * @return the freeze state at the given time
+     */
+    State evaluate(long time) {
+        long minute = FreezeWindowClock.floorToMinute(time);
+        long limit = minute + HORIZON;
+        long fields = CronMask.fields(minute, timeZone);
+        FreezeWindow blocking = null;
+        long validUntil = limit;
+        for (int i = 0; i < windows.size(); i++) {
+            FreezeWindow window = windows.get(i);
+            boolean active = window.isActive(minute, fields);
+            if (active && blocking == null) {
+                blocking = window;
+            }
+            validUntil = Math.min(validUntil, window.nextTransition(minute, active, validUntil));
+        }
+        if (exceptions.size() > 0) {
+            if (exceptions.contains(minute)) {
+                blocking = null;
+            }
+            validUntil = exceptions.nextTransition(minute, validUntil);
+        }
+        return new State(minute, validUntil, blocking);
+    }
+
+    /**
+     * The result of evaluating the freeze windows, valid for a range of time.
+     */
+    public static final class State {
+
+        /**
+         * the state of a set without freeze windows
+         */
+        static final State NEVER_BLOCKED = new State(Long.MIN_VALUE, Long.MAX_VALUE, null);
+
+        /**
+         * a state that is never valid, to force the first evaluation
+         */
+        static final State EXPIRED = new State(Long.MAX_VALUE, Long.MIN_VALUE, null);
+
+        private final long validFrom;
+
+        private final long validUntil;
+
+        private final FreezeWindow blockingWindow;
+
+        /**
+         * the state at {@link #validUntil} if this state is not blocked, computed on first use
+         * by {@link FreezeWindowSet#getNextFreeze(long, long)}
+         */
+        private volatile State nextFreeze;
+
+        State(long validFrom, long validUntil, FreezeWindow blockingWindow) {
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+            this.blockingWindow = blockingWindow;
+        }
+
+        /**
+         * Returns the first freeze window that blocks builds in this state.
+         * @return the blocking freeze window, or null if builds are not blocked
+         */
+        public FreezeWindow getBlockingWindow() {
+            return blockingWindow;
+        }
+
+        /**
+         * Returns the time from which this state is valid.
+         * @return milliseconds since the epoch
+         */
+        public long getValidFrom() {
+            return validFrom;
+        }
+
+        /**
+         * Returns the time until which this state is valid. This is the next time any freeze window
+         * opens or closes, or a time in the future after which the freeze windows are evaluated again.
+         * @return milliseconds since the epoch, exclusive
+         */
+        public long getValidUntil() {
+            return validUntil;
+        }
+    }
+
+    /**
+     * The sets compiled again in one pass, see {@link FreezeWindowRegistry#recompile()}.
+     * All of them replace the old sets at once when the recompilation is published.
+     */
+    static final class Recompilation {
+
+        private volatile boolean published;
+
+        void publish() {
+            published = true;
+        }
+    }
+
+    /**
+     * A set replacing another one.
+     */
+    private static final class Replacement {
+
+        private final FreezeWindowSet set;
+
+        private final Recompilation recompilation;
+
+        Replacement(FreezeWindowSet set, Recompilation recompilation) {
+            this.set = set;
+            this.recompilation = recompilation;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * A file of named freeze calendars shared by several Jenkins instances, for instance on a shared disk.
+ * Freeze windows reference a calendar with a <code>@calendar NAME</code> line, which stands for all lines
+ * of the calendar. The file lists the calendars as sections:
+ * <pre>
+ * # comment
+ * [release]
+ * * 22-23 ? * 1-5
+ * &#64;range 2015-12-24 2015-12-26
+ * </pre>
+ *
+ * The file is polled in the background, see {@link #poll()}. A changed file is parsed and validated
+ * completely before the new calendars replace the old ones in a single step, so the queue always sees
+ * either the old or the new version. A file that is missing or invalid is logged and the last valid
+ * version stays in use. The sets that reference a calendar are compiled again with each new version
+ * by the thread that loaded it, and replace the old sets all at once, see {@link FreezeWindowRegistry#recompile()}. The cached effective
+ * freeze windows of the jobs are invalidated as well, so jobs pick up calendars referenced by inherited lines.
+ */
+public final class FreezeWindowSharedCalendar {
+
+    /**
+     * the logger
+     */
+    private static final Logger LOG = Logger.getLogger(FreezeWindowSharedCalendar.class.getName());
+
+    /**
+     * the directive referencing a calendar
+     */
+    static final String DIRECTIVE = "@calendar";
+
+    /**
+     * the valid calendar names
+     */
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    /**
+     * the calendars currently in use
+     */
+    private static volatile Snapshot snapshot = new Snapshot(null, Collections.<String, List<String>>emptyMap(), 0, 0, 0);
+
+    /**
+     * the file, null if no shared calendar file is configured
+     */
+    private static volatile File file;
+
+    /**
+     * the last modification time and length of a file that could not be loaded, so that it is logged once
+     */
+    private static long[] failed;
+
+    private FreezeWindowSharedCalendar() {
+    }
+
+    /**
+     * Sets the shared calendar file and loads it.
+     * @param file the file, null to drop the shared calendars
+     */
+    static void setFile(File file) {
+        FreezeWindowSharedCalendar.file = file;
+        poll();
+    }
+
+    /**
+     * @return the shared calendar file, null if none is configured
+     */
+    static File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the file if it changed since it was last loaded. Called periodically in the background,
+     * never by the queue.
+     * @return true if a new version of the calendars is in use
+     */
+    static synchronized boolean poll() {
+        File current = file;
+        Snapshot old = snapshot;
+        if (current == null) {
+            if (old.file == null) {
+                return false;
+            }
+            snapshot = new Snapshot(null, Collections.<String, List<String>>emptyMap(), 0, 0, old.generation + 1);
+            FreezeWindowRegistry.recompile();
+            FreezeWindowInheritance.invalidate();
+            return true;
+        }
+        long lastModified = current.lastModified();
+        long length = current.length();
+        if (current.equals(old.file) && lastModified == old.lastModified && length == old.length) {
+            return false;
+        }
+        if (failed != null && lastModified == failed[0] && length == failed[1]) {
+            return false;
+        }
+        if (lastModified == 0) {
+            failed = new long[] {lastModified, length};
+            LOG.log(Level.WARNING, "Shared freeze calendar file {0} not found, keeping the last version", current);
+            return false;
+        }
+        Map<String, List<String>> calendars;
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(current), "UTF-8");
+            try {
+                calendars = parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            failed = new long[] {lastModified, length};
+            LOG.log(Level.WARNING, "Failed to read the shared freeze calendar file " + current + ", keeping the last version", e);
+            return false;
+        } catch (ParseException e) {
+            failed = new long[] {lastModified, length};
+            LOG.log(Level.WARNING, "Invalid shared freeze calendar file " + current + ", keeping the last version: " + e.getMessage());
+            return false;
+        }
+        failed = null;
+        snapshot = new Snapshot(current, calendars, lastModified, length, old.generation + 1);
+        FreezeWindowRegistry.recompile();
+        FreezeWindowInheritance.invalidate();
+        LOG.log(Level.INFO, "Loaded {0} shared freeze calendars from {1}", new Object[] {calendars.size(), current});
+        return true;
+    }
+
+    /**
+     * Replaces the calendars in use.
+     * @param calendars the text of the calendar file
+     * @throws ParseException if the text is not valid
+     */
+    static synchronized void load(String calendars) throws ParseException {
+        try {
+            Map<String, List<String>> parsed = parse(new StringReader(calendars));
+            snapshot = new Snapshot(null, parsed, 0, 0, snapshot.generation + 1);
+            FreezeWindowRegistry.recompile();
+            FreezeWindowInheritance.invalidate();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses and validates a calendar file.
+     * @param reader the calendar file
+     * @return the lines of each calendar by name
+     * @throws IOException if the file cannot be read
+     * @throws ParseException if the file is not valid
+     */
+    static Map<String, List<String>> parse(Reader reader) throws IOException, ParseException {
+        Map<String, List<String>> calendars = new LinkedHashMap<String, List<String>>();
+        BufferedReader lines = new BufferedReader(reader);
+        List<String> calendar = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                String name = line.substring(1, line.length() - 1).trim();
+                if (!NAME.matcher(name).matches()) {
+                    throw new ParseException("Line " + lineNumber + ": invalid calendar name " + name, 0);
+                }
+                if (calendars.containsKey(name)) {
+                    throw new ParseException("Line " + lineNumber + ": duplicate calendar " + name, 0);
+                }
+                calendar = new ArrayList<String>();
+                calendars.put(name, calendar);
+                continue;
+            }
+            if (calendar == null) {
+                throw new ParseException("Line " + lineNumber + ": expected a [calendar] before the first freeze window", 0);
+            }
+            if (isReference(line)) {
+                throw new ParseException("Line " + lineNumber + ": calendars cannot reference other calendars", 0);
+            }
+            String error = FreezeWindowValidator.validate(line);
+            if (error != null) {
+                throw new ParseException("Line " + lineNumber + ": " + error, 0);
+            }
+            calendar.add(line);
+        }
+        for (Map.Entry<String, List<String>> entry : calendars.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(calendars);
+    }
+
+    /**
+     * Returns true if a freeze window line references a shared calendar.
+     * @param line the trimmed line
+     * @return true for <code>@calendar</code> lines
+     */
+    static boolean isReference(String line) {
+        return line.startsWith(DIRECTIVE) && (line.length() == DIRECTIVE.length()
+                || Character.isWhitespace(line.charAt(DIRECTIVE.length())));
+    }
+
+    /**
+     * Returns the calendar name of a <code>@calendar</code> line.
+     * @param line the trimmed line
+     * @return the name
+     */
+    static String getName(String line) {
+        return line.substring(DIRECTIVE.length()).trim();
+    }
+
+    /**
+     * Validates a <code>@calendar</code> line against the calendars in use.
+     * @param line the trimmed line
+     * @return null if the calendar exists, otherwise the error
+     */
+    static String validateReference(String line) {
+        String name = getName(line);
+        if (name.length() == 0) {
+            return "Missing calendar name in \"" + line + "\"";
+        }
+        if (snapshot.get(name) == null) {
+            return "Unknown shared calendar \"" + name + "\"" + (file == null ? ", no shared calendar file is configured" : "");
+        }
+        return null;
+    }
+
+    /**
+     * @return the calendars in use
+     */
+    static Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the version of the calendars in use, increased whenever they change
+     */
+    static long getGeneration() {
+        return snapshot.generation;
+    }
+
+    /**
+     * @return the names of the calendars in use
+     */
+    public static Set<String> getNames() {
+        return snapshot.calendars.keySet();
+    }
+
+    /**
+     * An immutable version of the calendars.
+     */
+    static final class Snapshot {
+
+        private final File file;
+
+        private final Map<String, List<String>> calendars;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final long generation;
+
+        Snapshot(File file, Map<String, List<String>> calendars, long lastModified, long length, long generation) {
+            this.file = file;
+            this.calendars = calendars;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.generation = generation;
+        }
+
+        /**
+         * Returns the lines of a calendar.
+         * @param name the name of the calendar
+         * @return the lines, null if there is no such calendar
+         */
+        List<String> get(String name) {
+            return calendars.get(name);
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+    }
+}
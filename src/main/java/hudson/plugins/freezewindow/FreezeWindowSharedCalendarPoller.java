@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Polls the shared calendar file in the background, see {@link FreezeWindowSharedCalendar}.
+ * Jenkins instances sharing the file pick up a new version within a poll interval.
+ * The sets whose iCalendar files changed are compiled again as well, see {@link FreezeWindowRegistry#recompile()},
+ * so that the queue never reads a file.
+ */
+@Extension
+public class FreezeWindowSharedCalendarPoller extends AsyncPeriodicWork {
+
+    /**
+     * the interval between two checks of the shared calendar file
+     */
+    private static final long INTERVAL = TimeUnit.SECONDS.toMillis(Long.getLong(
+            FreezeWindowSharedCalendarPoller.class.getName() + ".intervalSeconds", 30));
+
+    public FreezeWindowSharedCalendarPoller() {
+        super("Freeze window shared calendar poller");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return INTERVAL;
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINEST;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        if (FreezeWindowSharedCalendar.getFile() != null && FreezeWindowSharedCalendar.poll()) {
+            listener.getLogger().println("Loaded a new version of " + FreezeWindowSharedCalendar.getFile());
+        }
+        int recompiled = FreezeWindowRegistry.recompile();
+        if (recompiled > 0) {
+            listener.getLogger().println("Compiled " + recompiled + " freeze window sets again");
+        }
+    }
+}
@@ -0,0 +1,666 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays a log of build submissions against a candidate set of freeze windows and reports how long
+ * the builds of each job would have been delayed.
+ *
+ * The freezes of the whole log are computed once as merged intervals by jumping from transition to
+ * transition, see {@link FreezeWindowForecast}, so the cost does not depend on the minutes the log covers.
+ * Each submission is then a binary search: a build submitted during a freeze is delayed until it ends.
+ * Freezes still active a year after the last submission count as never released.
+ *
+ * The log is either CSV, one <code>job,time</code> per line, or JSON, an array or a sequence of
+ * <code>{"job": "name", "time": ...}</code> objects. Times are milliseconds since the epoch or
+ * <code>yyyy-MM-dd'T'HH:mm[:ss]</code> in the default time zone. Run it with:
+ * <pre>java -cp ... hudson.plugins.freezewindow.FreezeWindowSimulator windows.txt builds.csv</pre>
+ */
+public final class FreezeWindowSimulator {
+
+    /**
+     * the upper bounds of the delay buckets of the distribution, the last bucket holds the longer delays
+     */
+    static final long[] BUCKETS = {
+            15L * CronMask.MILLIS_PER_MINUTE,
+            60L * CronMask.MILLIS_PER_MINUTE,
+            4L * 60L * CronMask.MILLIS_PER_MINUTE,
+            24L * 60L * CronMask.MILLIS_PER_MINUTE,
+            7L * 24L * 60L * CronMask.MILLIS_PER_MINUTE};
+
+    /**
+     * the names of the delay buckets, one more than {@link #BUCKETS}
+     */
+    static final String[] BUCKET_NAMES = {"15m", "1h", "4h", "1d", "1w", "more"};
+
+    /**
+     * the candidate freeze windows
+     */
+    private final FreezeWindowSet freezeWindowSet;
+
+    /**
+     * the jobs by name
+     */
+    private final Map<String, JobDelays> jobs = new HashMap<String, JobDelays>();
+
+    /**
+     * the jobs in the order they were first submitted
+     */
+    private final List<JobDelays> jobList = new ArrayList<JobDelays>();
+
+    /**
+     * the submission times, in the order they were added
+     */
+    private long[] times = new long[1024];
+
+    /**
+     * the job of each submission
+     */
+    private JobDelays[] submitted = new JobDelays[1024];
+
+    /**
+     * the number of submissions
+     */
+    private int size;
+
+    /**
+     * Constructor
+     * @param freezeWindowSet the candidate freeze windows
+     */
+    public FreezeWindowSimulator(FreezeWindowSet freezeWindowSet) {
+        this.freezeWindowSet = freezeWindowSet;
+    }
+
+    /**
+     * Adds a build submission.
+     * @param job the name of the job
+     * @param time the submission time in milliseconds since the epoch
+     */
+    public void add(String job, long time) {
+        JobDelays stats = jobs.get(job);
+        if (stats == null) {
+            stats = new JobDelays(job);
+            jobs.put(job, stats);
+            jobList.add(stats);
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            submitted = Arrays.copyOf(submitted, size * 2);
+        }
+        times[size] = time;
+        submitted[size] = stats;
+        size++;
+    }
+
+    /**
+     * @return the number of build submissions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replays the build submissions.
+     * @return the delays of each job, followed by the delays of all jobs together
+     */
+    public List<JobDelays> run() {
+        JobDelays total = new JobDelays("(all)");
+        for (JobDelays job : jobList) {
+            job.reset();
+        }
+        if (size > 0) {
+            long from = Long.MAX_VALUE;
+            long until = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                from = Math.min(from, times[i]);
+                until = Math.max(until, times[i]);
+            }
+            long limit = until + FreezeWindowForecast.MAX_RANGE;
+            long[][] freezes = computeFreezes(from, limit);
+            long[] starts = freezes[0];
+            long[] ends = freezes[1];
+            for (int i = 0; i < size; i++) {
+                long time = times[i];
+                int index = Arrays.binarySearch(starts, time);
+                if (index < 0) {
+                    index = -index - 2;
+                }
+                long delay = 0;
+                if (index >= 0 && time < ends[index]) {
+                    delay = ends[index] >= limit ? Long.MAX_VALUE : ends[index] - time;
+                }
+                submitted[i].record(delay);
+                total.record(delay);
+            }
+        }
+        List<JobDelays> result = new ArrayList<JobDelays>(jobList);
+        result.add(total);
+        return result;
+    }
+
+    /**
+     * Computes the merged freezes of the candidate freeze windows within a range.
+     * @return the sorted starts and ends of the freezes
+     */
+    private long[][] computeFreezes(long from, long limit) {
+        long[] starts = new long[16];
+        long[] ends = new long[16];
+        int count = 0;
+        for (long time = FreezeWindowClock.floorToMinute(from); time < limit; ) {
+            long until = Math.min(limit, time + FreezeWindowForecast.MAX_RANGE);
+            FreezeWindowForecast forecast = new FreezeWindowForecast(freezeWindowSet, time, until);
+            while (forecast.hasNext()) {
+                FreezeWindowForecast.Interval interval = forecast.next();
+                if (count > 0 && ends[count - 1] == interval.getStart()) {
+                    // a freeze that continues into the next range
+                    ends[count - 1] = interval.getEnd();
+                    continue;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = interval.getStart();
+                ends[count] = interval.getEnd();
+                count++;
+            }
+            time = until;
+        }
+        return new long[][] {Arrays.copyOf(starts, count), Arrays.copyOf(ends, count)};
+    }
+
+    /**
+     * Reads build submissions in CSV format, one <code>job,time</code> per line. Empty lines, lines starting
+     * with <code>#</code> and a header line are skipped, job names may contain commas.
+     * @param reader the CSV
+     * @throws IOException if the CSV cannot be read
+     * @throws ParseException if a time is invalid
+     */
+    public void readCsv(Reader reader) throws IOException, ParseException {
+        BufferedReader lines = new BufferedReader(reader);
+        SimpleDateFormat[] formats = createFormats();
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            int comma = line.lastIndexOf(',');
+            if (comma < 0) {
+                throw new ParseException("Line " + lineNumber + ": expected job,time", 0);
+            }
+            String job = unquote(line.substring(0, comma).trim());
+            String time = unquote(line.substring(comma + 1).trim());
+            if (lineNumber == 1 && time.length() > 0 && !Character.isDigit(time.charAt(0))) {
+                // header
+                continue;
+            }
+            add(job, parseTime(time, formats, lineNumber));
+        }
+    }
+
+    /**
+     * Reads build submissions in JSON format: an array or a sequence of objects with the fields
+     * <code>job</code> and <code>time</code>, other fields are ignored. Nested values are not supported.
+     * @param reader the JSON
+     * @throws IOException if the JSON cannot be read
+     * @throws ParseException if the JSON or a time is invalid
+     */
+    public void readJson(Reader reader) throws IOException, ParseException {
+        JsonScanner scanner = new JsonScanner(reader);
+        SimpleDateFormat[] formats = createFormats();
+        int objects = 0;
+        while (scanner.nextObject()) {
+            objects++;
+            String job = null;
+            String time = null;
+            String key;
+            while ((key = scanner.nextKey()) != null) {
+                String value = scanner.nextValue();
+                if ("job".equals(key)) {
+                    job = value;
+                } else if ("time".equals(key)) {
+                    time = value;
+                }
+            }
+            if (job == null || time == null) {
+                throw new ParseException("Object " + objects + ": expected job and time", scanner.position);
+            }
+            add(job, parseTime(time, formats, objects));
+        }
+    }
+
+    private static SimpleDateFormat[] createFormats() {
+        return new SimpleDateFormat[] {
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US),
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm", Locale.US)};
+    }
+
+    private static long parseTime(String value, SimpleDateFormat[] formats, int record) throws ParseException {
+        if (value.length() > 0 && Character.isDigit(value.charAt(0)) && value.indexOf('-') < 0) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new ParseException("Record " + record + ": invalid time " + value, 0);
+            }
+        }
+        for (SimpleDateFormat format : formats) {
+            try {
+                format.setLenient(false);
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        throw new ParseException("Record " + record + ": invalid time " + value, 0);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Writes the delays of the jobs as JSON.
+     * @param jobs the result of {@link #run()}
+     * @param writer where to write to
+     * @throws IOException if writing fails
+     */
+    public static void writeJson(List<JobDelays> jobs, Writer writer) throws IOException {
+        writer.write("{\"jobs\": [");
+        for (int i = 0; i < jobs.size(); i++) {
+            if (i > 0) {
+                writer.write(",");
+            }
+            writer.write("\n  ");
+            jobs.get(i).writeJson(writer);
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Replays a build log against candidate freeze windows and prints the delays of each job as JSON.
+     * @param args the file with the candidate freeze windows, one per line, and the CSV or JSON build log
+     * @throws Exception if a file cannot be read or parsed
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: FreezeWindowSimulator WINDOWS_FILE BUILD_LOG.(csv|json)");
+            System.exit(2);
+        }
+        String windows = read(args[0]);
+        FreezeWindowSet set = FreezeWindowSet.compile(windows);
+        for (String line : set.getInvalidLines()) {
+            System.err.println("Ignoring invalid freeze window: " + line);
+        }
+        FreezeWindowSimulator simulator = new FreezeWindowSimulator(set);
+        long start = System.nanoTime();
+        Reader log = new InputStreamReader(new FileInputStream(args[1]), "UTF-8");
+        try {
+            if (args[1].endsWith(".json") || args[1].endsWith(".jsonl")) {
+                simulator.readJson(log);
+            } else {
+                simulator.readCsv(log);
+            }
+        } finally {
+            log.close();
+        }
+        List<JobDelays> jobs = simulator.run();
+        writeJson(jobs, new OutputStreamWriter(System.out, "UTF-8"));
+        System.err.println("Replayed " + simulator.size() + " builds in "
+                + (System.nanoTime() - start) / 1000000L + " ms");
+    }
+
+    private static String read(String file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The delays of the builds of a job.
+     */
+    public static final class JobDelays {
+
+        private final String name;
+
+        private int builds;
+
+        private int unreleased;
+
+        /**
+         * the delays of the delayed builds that were released, sorted once all builds are recorded
+         */
+        private long[] delays = new long[16];
+
+        private int delayed;
+
+        private boolean sorted;
+
+        private final int[] buckets = new int[BUCKET_NAMES.length];
+
+        JobDelays(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+            builds = 0;
+            unreleased = 0;
+            delayed = 0;
+            Arrays.fill(buckets, 0);
+        }
+
+        void record(long delay) {
+            builds++;
+            if (delay == 0) {
+                return;
+            }
+            if (delay == Long.MAX_VALUE) {
+                unreleased++;
+                return;
+            }
+            if (delayed == delays.length) {
+                delays = Arrays.copyOf(delays, delayed * 2);
+            }
+            delays[delayed++] = delay;
+            sorted = false;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && delay > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of builds submitted
+         */
+        public int getBuilds() {
+            return builds;
+        }
+
+        /**
+         * @return the number of builds delayed by a freeze and released
+         */
+        public int getDelayed() {
+            return delayed;
+        }
+
+        /**
+         * @return the number of builds blocked by a freeze that lasts more than a year after the last submission
+         */
+        public int getUnreleased() {
+            return unreleased;
+        }
+
+        /**
+         * @return the number of delayed builds in each of {@link #BUCKET_NAMES}
+         */
+        public int[] getBuckets() {
+            return buckets.clone();
+        }
+
+        /**
+         * Returns a percentile of the delays of the delayed builds.
+         * @param percent the percentile, between 0 and 100
+         * @return the delay in milliseconds, 0 if no build was delayed
+         */
+        public long getPercentile(double percent) {
+            if (delayed == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(delays, 0, delayed);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(percent / 100.0 * delayed);
+            return delays[Math.min(Math.max(rank, 1), delayed) - 1];
+        }
+
+        /**
+         * @return the mean delay of the delayed builds in milliseconds, 0 if no build was delayed
+         */
+        public long getMeanDelay() {
+            if (delayed == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (int i = 0; i < delayed; i++) {
+                sum += delays[i];
+            }
+            return sum / delayed;
+        }
+
+        void writeJson(Writer writer) throws IOException {
+            writer.write("{\"job\": " + quote(name)
+                    + ", \"builds\": " + builds
+                    + ", \"delayed\": " + delayed
+                    + ", \"unreleased\": " + unreleased
+                    + ", \"meanDelayMillis\": " + getMeanDelay()
+                    + ", \"p50DelayMillis\": " + getPercentile(50)
+                    + ", \"p90DelayMillis\": " + getPercentile(90)
+                    + ", \"p99DelayMillis\": " + getPercentile(99)
+                    + ", \"maxDelayMillis\": " + getPercentile(100)
+                    + ", \"distribution\": {");
+            for (int i = 0; i < buckets.length; i++) {
+                writer.write((i > 0 ? ", " : "") + quote(BUCKET_NAMES[i]) + ": " + buckets[i]);
+            }
+            writer.write("}}");
+        }
+    }
+
+    /**
+     * Reads the fields of flat JSON objects one at a time, without building a tree of the whole document.
+     */
+    private static final class JsonScanner {
+
+        private final Reader reader;
+
+        private int position;
+
+        private int pushedBack = -2;
+
+        JsonScanner(Reader reader) {
+            this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            position++;
+            return reader.read();
+        }
+
+        private int readNonSpace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+            return c;
+        }
+
+        /**
+         * Moves to the start of the next object.
+         * @return false at the end of the document
+         */
+        boolean nextObject() throws IOException, ParseException {
+            int c;
+            do {
+                c = readNonSpace();
+                if (c == -1) {
+                    return false;
+                }
+            } while (c == '[' || c == ']' || c == ',');
+            if (c != '{') {
+                throw new ParseException("Expected an object at " + position, position);
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next key of the current object.
+         * @return the key or null at the end of the object
+         */
+        String nextKey() throws IOException, ParseException {
+            int c = readNonSpace();
+            if (c == ',') {
+                c = readNonSpace();
+            }
+            if (c == '}') {
+                return null;
+            }
+            if (c != '"') {
+                throw new ParseException("Expected a key at " + position, position);
+            }
+            String key = readString();
+            if (readNonSpace() != ':') {
+                throw new ParseException("Expected : at " + position, position);
+            }
+            return key;
+        }
+
+        /**
+         * Reads the value of the current key, a string or a literal such as a number.
+         * @return the value
+         */
+        String nextValue() throws IOException, ParseException {
+            int c = readNonSpace();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[' || c == -1) {
+                throw new ParseException("Expected a string or number at " + position, position);
+            }
+            StringBuilder sb = new StringBuilder();
+            while (c != ',' && c != '}' && c != -1 && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                sb.append((char) c);
+                c = read();
+            }
+            pushedBack = c;
+            return sb.toString();
+        }
+
+        private String readString() throws IOException, ParseException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw new ParseException("Unterminated string at " + position, position);
+                }
+                if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                hex[i] = (char) read();
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw new ParseException("Invalid escape at " + position, position);
+                            }
+                            break;
+                        default:
+                            sb.append((char) c);
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import com.google.inject.Inject;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline step that waits until no freeze window is active.
+ *
+ * The step suspends the run instead of sleeping: it holds no executor (when used outside of a node block)
+ * and no thread, and resumes on a timer set to the end of the blocking freeze window.
+ * Without explicit freeze windows, the freeze windows of the job, its folders and the global config apply.
+ * Only available if the Pipeline plugins are installed.
+ */
+public class FreezeWindowStep extends AbstractStepImpl {
+
+    /**
+     * the freeze windows to wait for, null for the freeze windows of the job
+     */
+    private String windows;
+
+    /**
+     * Constructor
+     */
+    @DataBoundConstructor
+    public FreezeWindowStep() {
+    }
+
+    /**
+     * Returns the freeze windows to wait for.
+     * @return line feed separated list of freeze windows or null for the freeze windows of the job
+     */
+    public String getWindows() {
+        return windows;
+    }
+
+    /**
+     * Sets the freeze windows to wait for.
+     * @param windows line feed separated list of freeze windows
+     */
+    @DataBoundSetter
+    public void setWindows(String windows) {
+        this.windows = windows;
+    }
+
+    /**
+     * Waits for the freeze windows without holding a thread.
+     */
+    public static class Execution extends AbstractStepExecutionImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject(optional = true)
+        private transient FreezeWindowStep step;
+
+        /**
+         * the freeze windows resolved when the step started, kept when the run is resumed
+         */
+        private String freezeWindows;
+
+        /**
+         * the timer task that checks the freeze windows again
+         */
+        private transient volatile ScheduledFuture<?> task;
+
+        @Override
+        public boolean start() throws Exception {
+            freezeWindows = step.getWindows() != null ? step.getWindows()
+                    : FreezeWindowInheritance.resolve(getContext().get(Run.class).getParent());
+            if (block()) {
+                return false;
+            }
+            getContext().onSuccess(null);
+            return true;
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            ScheduledFuture<?> scheduled = task;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            resume();
+        }
+
+        /**
+         * Completes the step unless a freeze window still blocks.
+         */
+        private void resume() {
+            try {
+                if (!block()) {
+                    getListener().getLogger().println(Messages.FreezeWindowStep_Resuming());
+                    getContext().onSuccess(null);
+                }
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+
+        /**
+         * Checks the freeze windows and, if one is active, schedules the next check at its end.
+         * @return true if a freeze window is active
+         * @throws IOException if the listener of the run cannot be obtained
+         * @throws InterruptedException if interrupted while obtaining the listener of the run
+         */
+        private boolean block() throws IOException, InterruptedException {
+            FreezeWindowSet freezeWindowSet = FreezeWindowRegistry.get(freezeWindows);
+            long now = FreezeWindowClock.SYSTEM.currentMinute();
+            FreezeWindow blocking = freezeWindowSet.shouldBlock(now);
+            if (blocking == null) {
+                return false;
+            }
+            getListener().getLogger().println(FreezeWindowCauseOfBlockage.of(blocking, now).getShortDescription());
+            long delay = freezeWindowSet.getNextTransition(now) - FreezeWindowClock.SYSTEM.currentTimeMillis();
+            task = Timer.get().schedule(new Runnable() {
+                public void run() {
+                    resume();
+                }
+            }, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        /**
+         * Looks up the listener of the run on each use, the execution outlives a restart but the listener does not.
+         * @return the listener of the run
+         */
+        private TaskListener getListener() throws IOException, InterruptedException {
+            return getContext().get(TaskListener.class);
+        }
+    }
+
+    /**
+     * Descriptor
+     */
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        /**
+         * Constructor
+         */
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "freezeWindow";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.FreezeWindowStep_DisplayName();
+        }
+
+        /**
+         * Validate the freeze windows entered by the user
+         * @param value the freeze windows
+         * @return FormValidation ok or error
+         */
+        public FormValidation doCheckWindows(@QueryParameter String value) {
+            return FreezeWindowProperty.FreezeWindowDescriptor.checkCron(value);
+        }
+    }
+}
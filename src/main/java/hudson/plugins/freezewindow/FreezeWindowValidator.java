@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Validates freeze windows with the parser of {@link CronMask}, so that the form validation
+ * accepts exactly what the freeze windows evaluate. Each line is checked in a single pass,
+ * only the syntax that just quartz supports (L, W, #, C, year lists) is handed to quartz.
+ * Lines with explicit ranges are validated by compiling them, which reads their calendar file,
+ * and <code>@calendar</code> lines must name a shared calendar that is currently loaded.
+ * The freeze windows compiled while validating can be collected, so that the form validation
+ * reports redundant freeze windows without compiling the lines again.
+ */
+final class FreezeWindowValidator {
+
+    private FreezeWindowValidator() {
+    }
+
+    /**
+     * Validate a single freeze window.
+     * @param line a cron expression in the standard cron format, optionally followed by a year
+     * @return null if the freeze window is valid, otherwise a message naming the failing field and character
+     */
+    static String validate(String freezeWindow) {
+        return validate(freezeWindow, null);
+    }
+
+    /**
+     * Validate a single freeze window and collect it if it is valid.
+     * @param freezeWindow a cron expression in the standard cron format, optionally followed by a year
+     * @param windows receives the compiled freeze window if it is valid and blocks builds, may be null.
+     *                The lines of a shared calendar are not collected, they are validated when the calendar is loaded.
+     * @return null if the freeze window is valid, otherwise a message naming the failing field and character
+     */
+    static String validate(String freezeWindow, List<FreezeWindow> windows) {
+        String line = freezeWindow.trim();
+        if (FreezeWindowSharedCalendar.isReference(line)) {
+            return FreezeWindowSharedCalendar.validateReference(line);
+        }
+        if (line.startsWith("@")) {
+            try {
+                FreezeWindow window = FreezeWindow.compile(line);
+                if (windows != null && !window.isException()) {
+                    windows.add(window);
+                }
+                return null;
+            } catch (ParseException e) {
+                return "Invalid freeze window \"" + line + "\": " + e.getMessage() + " at character " + (e.getErrorOffset() + 1);
+            }
+        }
+        int[] starts = new int[7];
+        int[] ends = new int[7];
+        int count = 0;
+        int i = 0;
+        while (count < starts.length) {
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == line.length()) {
+                break;
+            }
+            starts[count] = i;
+            while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            ends[count++] = i;
+        }
+        if (count < 5) {
+            return error(line, "Too few fields, expected 5 or 6", line.length());
+        }
+        if (count > 6) {
+            return error(line, "Too many fields, expected 5 or 6", starts[6]);
+        }
+        for (i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > 0x7f) {
+                return error(line, "Unexpected character '" + line.charAt(i) + "'", i);
+            }
+        }
+
+        StringBuilder canonical = new StringBuilder(line.length());
+        for (int field = 0; field < count; field++) {
+            if (field > 0) {
+                canonical.append(' ');
+            }
+            canonical.append(line, starts[field], ends[field]);
+        }
+        String normalized = FreezeWindowMonitor.normalize(canonical.toString());
+        try {
+            CronMask mask = CronMask.parse(normalized);
+            CronExpression expression = mask == null ? new CronExpression(normalized) : null;
+            if (windows != null) {
+                windows.add(FreezeWindow.of(line, TimeZone.getDefault(), mask, expression));
+            }
+            return null;
+        } catch (ParseException e) {
+            // normalize() prepends "* " and keeps the length of the fields
+            int offset = Math.max(e.getErrorOffset() - 2, 0);
+            for (int field = 0; field < count; field++) {
+                int length = ends[field] - starts[field];
+                if (offset <= length || field == count - 1) {
+                    return error(line, e.getMessage(), starts[field] + Math.min(offset, length));
+                }
+                offset -= length + 1;
+            }
+            return error(line, e.getMessage(), line.length());
+        }
+    }
+
+    private static String error(String line, String message, int offset) {
+        return "Invalid cron expression \"" + line + "\": " + message + " at character " + (offset + 1);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wakes up the build queue when the earliest upcoming freeze window transition is reached,
+ * so that blocked builds are released on time instead of at the next periodic queue maintenance.
+ *
+ * Only a single wakeup, the earliest one requested, is pending at any time. Blocked items request
+ * the transition of their freeze window set again once it has fired.
+ */
+final class FreezeWindowWakeup {
+
+    /**
+     * no wakeup is pending
+     */
+    private static final long NONE = Long.MAX_VALUE;
+
+    /**
+     * Runs a task after a delay.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final FreezeWindowClock clock;
+
+    private final Scheduler scheduler;
+
+    /**
+     * what to do at a transition, typically scheduling a queue maintenance
+     */
+    private final Runnable action;
+
+    /**
+     * the time of the pending wakeup, or {@link #NONE}
+     */
+    private final AtomicLong pending = new AtomicLong(NONE);
+
+    FreezeWindowWakeup(FreezeWindowClock clock, Scheduler scheduler, Runnable action) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.action = action;
+    }
+
+    /**
+     * Requests a wakeup at the given time. Requests later than the pending wakeup are ignored.
+     * @param time milliseconds since the epoch
+     */
+    void request(final long time) {
+        long current;
+        do {
+            current = pending.get();
+            if (time >= current) {
+                return;
+            }
+        } while (!pending.compareAndSet(current, time));
+
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                // a wakeup that was replaced by an earlier one is stale
+                if (pending.compareAndSet(time, NONE)) {
+                    action.run();
+                }
+            }
+        }, Math.max(0, time - clock.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the time of the pending wakeup.
+     * @return milliseconds since the epoch, or {@link Long#MAX_VALUE} if no wakeup is pending
+     */
+    long getPending() {
+        return pending.get();
+    }
+}
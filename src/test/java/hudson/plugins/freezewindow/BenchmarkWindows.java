@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark parameters shared by the freeze window benchmarks: a set of freeze windows of a given
+ * size and expression complexity that either blocks or does not block builds.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkWindows {
+
+    /**
+     * the number of freeze windows
+     */
+    @Param({"1", "10", "100"})
+    public int windowCount;
+
+    /**
+     * simple: single values, ranges: lists, ranges, steps and names, quartz: syntax only quartz supports
+     */
+    @Param({"simple", "ranges", "quartz"})
+    public String complexity;
+
+    /**
+     * true if the last freeze window blocks builds at any time, false if no window does
+     */
+    @Param({"true", "false"})
+    public boolean blocked;
+
+    /**
+     * the freeze windows, line feed separated
+     */
+    public String text;
+
+    /**
+     * the freeze windows, one per element
+     */
+    public String[] lines;
+
+    @Setup
+    public void setUp() {
+        lines = new String[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            // windows pinned to 2099 never block
+            if ("simple".equals(complexity)) {
+                lines[i] = "* " + (i % 24) + " " + (1 + i % 28) + " * ? 2099";
+            } else if ("ranges".equals(complexity)) {
+                lines[i] = "0-29/" + (1 + i % 5) + ",45 " + (i % 12) + "-" + (12 + i % 12) + " ? JAN-MAR,OCT MON-FRI 2099";
+            } else {
+                lines[i] = "* " + (i % 24) + " L * ? 2099";
+            }
+        }
+        if (blocked) {
+            if ("simple".equals(complexity)) {
+                lines[windowCount - 1] = "* * * * ?";
+            } else if ("ranges".equals(complexity)) {
+                lines[windowCount - 1] = "0-29,30-59 0-11,12-23 ? JAN-JUN,JUL-DEC SUN-SAT";
+            } else {
+                lines[windowCount - 1] = "* * * * ? 1970,2000-2099";
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        text = sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Unit tests, using quartz as the reference implementation
+ */
+public class CronMaskTest {
+
+    private static final String[] TIME_ZONES = {"UTC", "America/Los_Angeles", "Europe/Berlin", "Asia/Kolkata"};
+
+    private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+
+    private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    /**
+     * Testing fields
+     * @throws Exception
+     */
+    @Test
+    public void testFields() throws Exception {
+        Random random = new Random(42);
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            Calendar calendar = Calendar.getInstance(timeZone);
+            for (int i = 0; i < 20000; i++) {
+                long time = (long) (random.nextDouble() * 4102444800000L);
+                calendar.setTimeInMillis(time);
+                long fields = CronMask.fields(time, timeZone);
+                assertEquals(calendar.get(Calendar.YEAR), CronMask.year(fields));
+                assertEquals(calendar.get(Calendar.MONTH) + 1, CronMask.month(fields));
+                assertEquals(calendar.get(Calendar.DAY_OF_MONTH), CronMask.dayOfMonth(fields));
+                assertEquals(calendar.get(Calendar.DAY_OF_WEEK), CronMask.dayOfWeek(fields));
+                assertEquals(calendar.get(Calendar.HOUR_OF_DAY), CronMask.hour(fields));
+                assertEquals(calendar.get(Calendar.MINUTE), CronMask.minute(fields));
+            }
+        }
+    }
+
+    /**
+     * Expressions using syntax the masks do not support are left to quartz
+     * @throws Exception
+     */
+    @Test
+    public void testUnsupported() throws Exception {
+        assertNotNull(CronMask.compile(FreezeWindowMonitor.normalize("* 9-17 ? * MON-FRI 2015-2016")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * L * ?")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * 15W * ?")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * ? * 5#2")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * ? * 5L")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * ? * * 2015,2017")));
+        // rejected by quartz as well
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("* * * * *")));
+        assertNull(CronMask.compile(FreezeWindowMonitor.normalize("60 * * * ?")));
+
+        assertTrue(FreezeWindow.compile("* 9-17 ? * 1-5").isNative());
+        assertFalse(FreezeWindow.compile("* * L * ?").isNative());
+        assertFalse(FreezeWindow.compile("* 9-17 ? * 1-5", TimeZone.getDefault(), true).isNative());
+    }
+
+    /**
+     * Compares the masks with quartz for random expressions and times
+     * @throws Exception
+     */
+    @Test
+    public void testDifferential() throws Exception {
+        Random random = new Random(7);
+        int compiled = 0;
+        for (int i = 0; i < 3000; i++) {
+            String fw = randomExpression(random);
+            String normalized = FreezeWindowMonitor.normalize(fw);
+            TimeZone timeZone = TimeZone.getTimeZone(TIME_ZONES[random.nextInt(TIME_ZONES.length)]);
+            CronMask mask = CronMask.compile(normalized);
+
+            CronExpression expression;
+            try {
+                expression = new CronExpression(normalized);
+            } catch (ParseException e) {
+                assertNull("quartz rejects " + fw, mask);
+                continue;
+            }
+            // the parser only rejects what quartz rejects
+            CronMask.parse(normalized);
+            if (mask == null) {
+                continue;
+            }
+            compiled++;
+            expression.setTimeZone(timeZone);
+            for (int j = 0; j < 200; j++) {
+                // minutes between 2014 and 2030
+                long time = 1388534400000L + (long) random.nextInt(8900000) * 60000L;
+                assertEquals(fw + " at " + new Date(time) + " in " + timeZone.getID(),
+                        expression.isSatisfiedBy(new Date(time)), mask.matches(CronMask.fields(time, timeZone)));
+            }
+        }
+        assertTrue("too few expressions compiled: " + compiled, compiled > 2500);
+    }
+
+    private static String randomExpression(Random random) {
+        boolean useDayOfWeek = random.nextBoolean();
+        StringBuilder sb = new StringBuilder();
+        sb.append(randomField(random, 0, 59, null)).append(' ');
+        sb.append(randomField(random, 0, 23, null)).append(' ');
+        sb.append(useDayOfWeek ? "?" : randomField(random, 1, 31, null)).append(' ');
+        sb.append(randomField(random, 1, 12, MONTHS)).append(' ');
+        sb.append(useDayOfWeek ? randomField(random, 0, 6, DAYS) : "?");
+        switch (random.nextInt(4)) {
+            case 0:
+                sb.append(" *");
+                break;
+            case 1:
+                sb.append(' ').append(2014 + random.nextInt(16));
+                break;
+            case 2:
+                int year = 2014 + random.nextInt(16);
+                sb.append(' ').append(year).append('-').append(year + random.nextInt(5));
+                break;
+            default:
+                break;
+        }
+        return sb.toString();
+    }
+
+    private static String randomField(Random random, int min, int max, String[] names) {
+        StringBuilder sb = new StringBuilder();
+        int parts = 1 + (random.nextInt(4) == 0 ? random.nextInt(3) : 0);
+        for (int i = 0; i < parts; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            int start = min + random.nextInt(max - min + 1);
+            int end = min + random.nextInt(max - min + 1);
+            boolean named = names != null && random.nextInt(3) == 0;
+            switch (random.nextInt(7)) {
+                case 0:
+                    sb.append('*');
+                    break;
+                case 1:
+                    sb.append("*/").append(1 + random.nextInt(max));
+                    break;
+                case 2:
+                    sb.append(named ? names[start - min] : String.valueOf(start));
+                    break;
+                case 3:
+                    sb.append(start).append('/').append(1 + random.nextInt(max));
+                    break;
+                case 4:
+                    sb.append(start).append('-').append(end).append('/').append(1 + random.nextInt(max));
+                    break;
+                default:
+                    if (named) {
+                        sb.append(names[start - min]).append('-').append(names[end - min]);
+                    } else {
+                        sb.append(start).append('-').append(end);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
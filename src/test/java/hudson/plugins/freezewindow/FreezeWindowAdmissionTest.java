@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.*;
+import hudson.model.queue.CauseOfBlockage;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowAdmissionTest extends HudsonTestCase {
+
+    /**
+     * Testing check
+     * @throws Exception
+     */
+    public void testCheck() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* 9-17 ? * 1-5");
+        long friday = FreezeWindowSetTest.date(2015, 3, 27, 18, 0).getTime();
+        long monday = FreezeWindowSetTest.date(2015, 3, 30, 9, 0).getTime();
+
+        assertNull(FreezeWindowAdmission.check(set, friday, -1));
+        assertNull(FreezeWindowAdmission.check(set, friday, monday - friday));
+        FreezeWindowSet.State next = FreezeWindowAdmission.check(set, friday, monday - friday + 60000);
+        assertNotNull(next);
+        assertEquals(monday, next.getValidFrom());
+        assertEquals(FreezeWindowSetTest.date(2015, 3, 30, 18, 0).getTime(), next.getValidUntil());
+        assertNull(FreezeWindowAdmission.check(FreezeWindowSet.EMPTY, friday, 100L * 24 * 3600 * 1000));
+
+        // a freeze after a lifted freeze is found as well
+        set = FreezeWindowSet.compile("* 9-17 ? * 1-5\n@except 2015-03-30T09:00 2015-03-30T12:00");
+        assertNull(FreezeWindowAdmission.check(set, friday, monday - friday + 3 * 3600 * 1000));
+        next = FreezeWindowAdmission.check(set, friday, monday - friday + 3 * 3600 * 1000 + 60000);
+        assertNotNull(next);
+        assertEquals(FreezeWindowSetTest.date(2015, 3, 30, 12, 0).getTime(), next.getValidFrom());
+    }
+
+    /**
+     * Testing canRun with the admission check
+     * @throws Exception
+     */
+    public void testCanRun() throws Exception {
+        FreezeWindowQueueTaskDispatcher dispatcher = new FreezeWindowQueueTaskDispatcher();
+        FreeStyleProject project = this.createFreeStyleProject();
+        Queue.BuildableItem item = new Queue.BuildableItem(new Queue.WaitingItem(Calendar.getInstance(), project, new ArrayList<Action>()));
+
+        // freeze the whole day after tomorrow
+        Calendar freeze = Calendar.getInstance();
+        freeze.add(Calendar.DAY_OF_MONTH, 2);
+        project.addProperty(new FreezeWindowProperty(true, "* * ? * " + (freeze.get(Calendar.DAY_OF_WEEK) - 1)));
+
+        FreezeWindowProperty.FreezeWindowDescriptor descriptor =
+                (FreezeWindowProperty.FreezeWindowDescriptor) jenkins.getDescriptorOrDie(FreezeWindowProperty.class);
+        try {
+            // the project never built, so it has no estimate
+            descriptor.setAdmission(true, 0);
+            assertNull(dispatcher.canRun(item));
+
+            descriptor.setAdmission(true, 60);
+            assertNull(dispatcher.canRun(item));
+
+            descriptor.setAdmission(true, 3 * 24 * 60);
+            CauseOfBlockage causeOfBlockage = dispatcher.canRun(item);
+            assertTrue(causeOfBlockage instanceof FreezeWindowAdmissionCause);
+            assertTrue(causeOfBlockage.getShortDescription().contains("would run into freeze window"));
+
+            descriptor.setAdmission(false, 3 * 24 * 60);
+            assertNull(dispatcher.canRun(item));
+        } finally {
+            descriptor.setAdmission(false, 0);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowAuditTest {
+
+    /**
+     * Testing audit
+     * @throws Exception
+     */
+    @Test
+    public void testAudit() throws Exception {
+        long now = date(2015, 3, 1, 0, 0).getTime();
+        FreezeWindowAudit.Result result = FreezeWindowAudit.audit(new FreezeWindowAudit.Target("job",
+                "* * ? * 1\n\n60 * * * ?\n*  *  ? * 1\n* * 1 * ?\n* * 30 FEB ?\n* * * * ? 2014\n* * 29 FEB ?",
+                "* * 1 * ?"), now);
+        assertEquals("job", result.getName());
+        List<FreezeWindowAudit.Finding> findings = result.getFindings();
+        assertEquals(5, findings.size());
+
+        assertEquals(3, findings.get(0).getLine());
+        assertEquals(FreezeWindowAudit.Kind.INVALID, findings.get(0).getKind());
+        assertEquals(4, findings.get(1).getLine());
+        assertEquals(FreezeWindowAudit.Kind.REDUNDANT, findings.get(1).getKind());
+        assertEquals("Duplicate of line 1", findings.get(1).getMessage());
+        assertEquals(5, findings.get(2).getLine());
+        assertEquals(FreezeWindowAudit.Kind.REDUNDANT, findings.get(2).getKind());
+        assertEquals(6, findings.get(3).getLine());
+        assertEquals(FreezeWindowAudit.Kind.NEVER_FIRES, findings.get(3).getKind());
+        assertEquals(7, findings.get(4).getLine());
+        assertEquals(FreezeWindowAudit.Kind.NEVER_FIRES, findings.get(4).getKind());
+        assertTrue(result.format().startsWith("INVALID job line 3 \"60 * * * ?\": "));
+
+        assertTrue(FreezeWindowAudit.audit(new FreezeWindowAudit.Target("none", null, null), now).getFindings().isEmpty());
+
+        findings = FreezeWindowAudit.audit(new FreezeWindowAudit.Target("job", "* 10-12 ? * 2\n* 9-17 ? * 1-5", null), now)
+                .getFindings();
+        assertEquals(1, findings.size());
+        assertEquals(1, findings.get(0).getLine());
+        assertEquals("Covered by line 2", findings.get(0).getMessage());
+    }
+
+    /**
+     * Testing run, the targets are read lazily and every result is reported once
+     * @throws Exception
+     */
+    @Test
+    public void testRun() throws Exception {
+        final int count = 1000;
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final AtomicInteger reported = new AtomicInteger();
+        Iterator<FreezeWindowAudit.Target> targets = new Iterator<FreezeWindowAudit.Target>() {
+            public boolean hasNext() {
+                return read.get() < count;
+            }
+
+            public FreezeWindowAudit.Target next() {
+                int i = read.getAndIncrement();
+                maxAhead.set(Math.max(maxAhead.get(), i - reported.get()));
+                return new FreezeWindowAudit.Target("job" + i, i % 10 == 0 ? "not a cron" : "* * ? * " + (i % 7), null);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FreezeWindowAudit.Summary summary = FreezeWindowAudit.run(targets, date(2015, 3, 1, 0, 0).getTime(),
+                    new FreezeWindowAudit.Sink() {
+                        public void report(FreezeWindowAudit.Result result) {
+                            reported.incrementAndGet();
+                            names.add(result.getName());
+                        }
+                    }, executor, 8);
+            assertEquals(count, summary.getTargets());
+            assertEquals(count / 10, summary.getCount(FreezeWindowAudit.Kind.INVALID));
+            assertEquals(0, summary.getCount(FreezeWindowAudit.Kind.NEVER_FIRES));
+            assertEquals(count, names.size());
+            assertEquals(count, new HashSet<String>(names).size());
+            assertTrue(maxAhead.get() <= 8);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowBitmapTest {
+
+    private static List<CronMask> masks(String... freezeWindows) {
+        List<CronMask> masks = new ArrayList<CronMask>();
+        for (String fw : freezeWindows) {
+            masks.add(CronMask.compile(FreezeWindowMonitor.normalize(fw)));
+        }
+        return masks;
+    }
+
+    /**
+     * Every minute of the year must agree with the masks
+     * @throws Exception
+     */
+    @Test
+    public void testBuild() throws Exception {
+        List<List<CronMask>> sets = new ArrayList<List<CronMask>>();
+        sets.add(masks("* 9-17 ? * 1-5", "* 8-12 ? * 6-7"));
+        sets.add(masks("*/10 22-2 * * ?"));
+        sets.add(masks("* 14-20 1 * ?", "0-29 * 29 FEB ?", "* * ? JUN-AUG SAT,SUN 2016"));
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        for (List<CronMask> set : sets) {
+            for (int year : new int[]{2015, 2016}) {
+                FreezeWindowBitmap bitmap = FreezeWindowBitmap.build(set, year);
+                long start = CronMask.MILLIS_PER_MINUTE * 60 * 24 * (year == 2015 ? 16436 : 16801);
+                int minutes = (year == 2015 ? 365 : 366) * 24 * 60;
+                for (int i = 0; i < minutes; i++) {
+                    long fields = CronMask.fields(start + i * CronMask.MILLIS_PER_MINUTE, utc);
+                    assertEquals(year, CronMask.year(fields));
+                    assertTrue(bitmap.covers(fields));
+                    boolean expected = false;
+                    for (CronMask mask : set) {
+                        expected |= mask.matches(fields);
+                    }
+                    assertEquals(expected, bitmap.isSet(fields));
+                }
+            }
+        }
+    }
+
+    /**
+     * Weekly bitmaps cover every year, the others only the year they were built for
+     * @throws Exception
+     */
+    @Test
+    public void testCovers() throws Exception {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        long fields2015 = CronMask.fields(1426724690107L, utc);
+        long fields2016 = CronMask.fields(1458347090107L, utc);
+
+        FreezeWindowBitmap weekly = FreezeWindowBitmap.build(masks("* 9-17 ? * 1-5"), 2015);
+        assertTrue(weekly.covers(fields2015));
+        assertTrue(weekly.covers(fields2016));
+
+        FreezeWindowBitmap yearly = FreezeWindowBitmap.build(masks("* * 1 * ?"), 2015);
+        assertTrue(yearly.covers(fields2015));
+        assertFalse(yearly.covers(fields2016));
+    }
+
+    /**
+     * The minutes until a change must agree with a scan of the bitmap, minute by minute
+     * @throws Exception
+     */
+    @Test
+    public void testMinutesUntilChange() throws Exception {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        long start = CronMask.MILLIS_PER_MINUTE * 60 * 24 * 16436;
+        int week = 7 * 24 * 60;
+        for (String fw : new String[]{"* 9-17 ? * 1-5", "*/10 22-2 * * ?", "* * 31 DEC ?"}) {
+            FreezeWindowBitmap bitmap = FreezeWindowBitmap.build(masks(fw), 2015);
+            for (int i = 0; i < 365 * 24 * 60; i += 199) {
+                long fields = CronMask.fields(start + i * CronMask.MILLIS_PER_MINUTE, utc);
+                boolean state = bitmap.isSet(fields);
+                int expected = 1;
+                while (expected < week) {
+                    long time = start + (i + expected) * CronMask.MILLIS_PER_MINUTE;
+                    long next = CronMask.fields(time, utc);
+                    if (!bitmap.covers(next) || bitmap.isSet(next) != state) {
+                        break;
+                    }
+                    expected++;
+                }
+                assertEquals(fw + " at minute " + i, expected, bitmap.minutesUntilChange(fields, week));
+            }
+        }
+    }
+}
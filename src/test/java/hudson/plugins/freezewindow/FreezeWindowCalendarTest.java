@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowCalendarTest {
+
+    /**
+     * Testing the interval index
+     * @throws Exception
+     */
+    @Test
+    public void testIndex() throws Exception {
+        List<long[]> ranges = new ArrayList<long[]>();
+        ranges.add(new long[]{5 * 60000, 7 * 60000});
+        ranges.add(new long[]{60000, 3 * 60000});
+        ranges.add(new long[]{2 * 60000, 4 * 60000});
+        ranges.add(new long[]{8 * 60000 + 1, 8 * 60000 + 2});
+        ranges.add(new long[]{10 * 60000, 10 * 60000});
+        FreezeWindowCalendar calendar = FreezeWindowCalendar.of(ranges);
+
+        // overlapping ranges are merged, empty ones dropped, bounds rounded to minutes
+        assertEquals(3, calendar.size());
+        assertFalse(calendar.contains(0));
+        assertTrue(calendar.contains(60000));
+        assertTrue(calendar.contains(4 * 60000 - 1));
+        assertFalse(calendar.contains(4 * 60000));
+        assertTrue(calendar.contains(5 * 60000));
+        assertFalse(calendar.contains(7 * 60000));
+        assertTrue(calendar.contains(8 * 60000 + 30000));
+
+        assertEquals(60000, calendar.nextTransition(0, Long.MAX_VALUE));
+        assertEquals(4 * 60000, calendar.nextTransition(60000, Long.MAX_VALUE));
+        assertEquals(5 * 60000, calendar.nextTransition(4 * 60000, Long.MAX_VALUE));
+        assertEquals(7 * 60000, calendar.nextTransition(6 * 60000, Long.MAX_VALUE));
+        assertEquals(8 * 60000, calendar.nextTransition(7 * 60000, Long.MAX_VALUE));
+        assertEquals(100, calendar.nextTransition(9 * 60000, 100));
+        assertEquals(30000, calendar.nextTransition(0, 30000));
+    }
+
+    /**
+     * Testing @range and @except lines
+     * @throws Exception
+     */
+    @Test
+    public void testRange() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* 9-17 ? * 1-5\n@range 2015-12-24 2015-12-26\n"
+                + "@range 2015-03-20T18:30 2015-03-20T19:15\n@except 2015-03-19T12:00 2015-03-19T14:00");
+
+        assertEquals("@range 2015-12-24 2015-12-26", set.shouldBlock(date(2015, 12, 26, 23, 59)).getText());
+        assertNull(set.shouldBlock(date(2015, 12, 27, 0, 0)));
+        assertEquals("@range 2015-03-20T18:30 2015-03-20T19:15", set.shouldBlock(date(2015, 3, 20, 19, 0)).getText());
+        assertNull(set.shouldBlock(date(2015, 3, 20, 19, 15)));
+
+        // the exception lifts the freeze of the working hours
+        assertNotNull(set.shouldBlock(date(2015, 3, 19, 11, 59)));
+        assertNull(set.shouldBlock(date(2015, 3, 19, 12, 0)));
+        assertNull(set.shouldBlock(date(2015, 3, 19, 13, 59)));
+        FreezeWindowSet.State state = set.getState(date(2015, 3, 19, 12, 30).getTime());
+        assertEquals(date(2015, 3, 19, 14, 0).getTime(), state.getValidUntil());
+        assertNotNull(set.shouldBlock(date(2015, 3, 19, 14, 0)));
+        assertEquals(3, set.getWindows().size());
+
+        assertEquals("@range 2015-12-25", FreezeWindowSet.compile("@range 2015-12-25")
+                .shouldBlock(date(2015, 12, 25, 12, 0)).getText());
+        assertTrue(FreezeWindowSet.compile("@except 2015-12-25").isEmpty());
+    }
+
+    /**
+     * Testing the validation of lines with explicit ranges
+     * @throws Exception
+     */
+    @Test
+    public void testValidate() throws Exception {
+        assertNull(FreezeWindowValidator.validate("@range 2015-12-24 2015-12-26"));
+        assertNull(FreezeWindowValidator.validate("@except 2015-12-24T10:00"));
+        assertEquals("Invalid freeze window \"@range 2015-12-24 2015-12-23\": The end must be after the start at character 19",
+                FreezeWindowValidator.validate("@range 2015-12-24 2015-12-23"));
+        assertTrue(FreezeWindowValidator.validate("@range 2015-13-01").contains("Invalid date \"2015-13-01\""));
+        assertTrue(FreezeWindowValidator.validate("@range").contains("Expected a start"));
+        assertTrue(FreezeWindowValidator.validate("@holidays x").contains("Unknown directive @holidays"));
+    }
+
+    /**
+     * Testing iCalendar files
+     * @throws Exception
+     */
+    @Test
+    public void testIcs() throws Exception {
+        TimeZone timeZone = TimeZone.getDefault();
+        String ics = "BEGIN:VCALENDAR\r\nVERSION:2.0\r\n"
+                + "BEGIN:VEVENT\r\nSUMMARY:Christmas\r\nDTSTART;VALUE=DATE:20151225\r\nDTEND;VALUE=DATE:20151227\r\nEND:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\nSUMMARY:Launch\r\nDTSTART:20150320T100000\r\nDTEND:20150320T1\r\n 20000\r\nEND:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\nDTSTART;VALUE=DATE:20150101\r\nEND:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\nDTSTART:20150401T120000Z\r\nDTEND:20150401T130000Z\r\nEND:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\nDTSTART;TZID=America/New_York:20150501T090000\r\nDTEND;TZID=America/New_York:20150501T100000\r\nEND:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\nDTSTART;VALUE=DATE:20150704\r\nRRULE:FREQ=YEARLY\r\nEND:VEVENT\r\n"
+                + "END:VCALENDAR\r\n";
+        FreezeWindowCalendar calendar = FreezeWindowCalendar.parseIcs(new StringReader(ics), timeZone);
+        assertEquals(5, calendar.size());
+        assertTrue(calendar.contains(date(2015, 12, 26, 23, 59).getTime()));
+        assertFalse(calendar.contains(date(2015, 12, 27, 0, 0).getTime()));
+        assertTrue(calendar.contains(date(2015, 3, 20, 11, 59).getTime()));
+        assertFalse(calendar.contains(date(2015, 3, 20, 12, 0).getTime()));
+        assertTrue(calendar.contains(date(2015, 1, 1, 12, 0).getTime()));
+        assertTrue(calendar.contains(1427889600000L));
+        assertFalse(calendar.contains(1427893200000L));
+        assertTrue(calendar.contains(1430485200000L));
+        assertFalse(calendar.contains(date(2015, 7, 4, 12, 0).getTime()));
+
+        try {
+            FreezeWindowCalendar.parseIcs(new StringReader("BEGIN:VEVENT\nDTSTART:2015\nEND:VEVENT\n"), timeZone);
+            fail();
+        } catch (ParseException e) {
+            assertEquals("Invalid date \"2015\" at line 2", e.getMessage());
+        }
+    }
+
+    /**
+     * Testing @ics lines, the files must be in the calendar directory
+     * @throws Exception
+     */
+    @Test
+    public void testIcsFile() throws Exception {
+        File directory = File.createTempFile("freeze-calendars", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        File previous = FreezeWindowCalendar.getDirectory();
+        try {
+            FreezeWindowCalendar.setDirectory(directory);
+            FileOutputStream out = new FileOutputStream(new File(directory, "holidays.ics"));
+            out.write(("BEGIN:VCALENDAR\nBEGIN:VEVENT\nDTSTART;VALUE=DATE:20151225\nEND:VEVENT\nEND:VCALENDAR\n").getBytes("UTF-8"));
+            out.close();
+
+            FreezeWindowSet set = FreezeWindowSet.compile("@ics holidays.ics\n@except-ics holidays.ics\n* * 25 DEC ?");
+            assertNull(set.shouldBlock(date(2015, 12, 25, 12, 0)));
+            assertNotNull(set.shouldBlock(date(2016, 12, 25, 12, 0)));
+
+            assertNull(FreezeWindowValidator.validate("@ics holidays.ics"));
+            assertTrue(FreezeWindowValidator.validate("@ics missing.ics").contains("Cannot read calendar missing.ics"));
+            assertTrue(FreezeWindowValidator.validate("@ics ../holidays.ics").contains("The calendar must be in"));
+        } finally {
+            FreezeWindowCalendar.setDirectory(previous);
+            new File(directory, "holidays.ics").delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * Testing that sets reading an iCalendar file are compiled again in the background once the file changed
+     * @throws Exception
+     */
+    @Test
+    public void testIcsFileChanged() throws Exception {
+        File directory = File.createTempFile("freeze-calendars", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        File previous = FreezeWindowCalendar.getDirectory();
+        File file = new File(directory, "launches.ics");
+        try {
+            FreezeWindowCalendar.setDirectory(directory);
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(("BEGIN:VCALENDAR\nBEGIN:VEVENT\nDTSTART;VALUE=DATE:20151225\nEND:VEVENT\nEND:VCALENDAR\n").getBytes("UTF-8"));
+            out.close();
+            FreezeWindowSet set = FreezeWindowRegistry.get("@ics launches.ics\n* * 1 JAN ?");
+            FreezeWindowSet plain = FreezeWindowRegistry.get("* * 1 JAN ?");
+            assertNotNull(set.shouldBlock(date(2015, 12, 25, 12, 0)));
+            assertNull(set.shouldBlock(date(2015, 12, 26, 12, 0)));
+            FreezeWindowRegistry.recompile();
+            assertFalse(set.isStale());
+
+            out = new FileOutputStream(file);
+            out.write(("BEGIN:VCALENDAR\nBEGIN:VEVENT\nDTSTART;VALUE=DATE:20151226\nEND:VEVENT\nEND:VCALENDAR\n").getBytes("UTF-8"));
+            out.close();
+            assertTrue(file.setLastModified(file.lastModified() + 2000));
+            // nothing is read again until the background recompilation
+            assertFalse(set.isStale());
+            assertSame(set, FreezeWindowRegistry.get("@ics launches.ics\n* * 1 JAN ?"));
+            assertTrue(FreezeWindowRegistry.recompile() >= 1);
+            assertEquals(0, FreezeWindowRegistry.recompile());
+            assertTrue(set.isStale());
+            assertFalse(plain.isStale());
+
+            FreezeWindowSet recompiled = FreezeWindowRegistry.get("@ics launches.ics\n* * 1 JAN ?");
+            assertSame(recompiled, set.getReplacement());
+            assertFalse(recompiled.isStale());
+            assertNull(recompiled.shouldBlock(date(2015, 12, 25, 12, 0)));
+            assertNotNull(recompiled.shouldBlock(date(2015, 12, 26, 12, 0)));
+        } finally {
+            FreezeWindowCalendar.setDirectory(previous);
+            file.delete();
+            directory.delete();
+        }
+    }
+}
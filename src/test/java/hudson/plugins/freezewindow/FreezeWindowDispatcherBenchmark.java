@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.util.FormValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Benchmarks of the Jenkins entry points: the queue task dispatcher and the form validation.
+ */
+public class FreezeWindowDispatcherBenchmark {
+
+    /**
+     * A queue item of a job configured with the freeze windows of the benchmark parameters.
+     */
+    @State(Scope.Benchmark)
+    public static class QueueItem {
+
+        FreezeWindowQueueTaskDispatcher dispatcher;
+
+        Queue.Item item;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setUp(BenchmarkWindows windows) {
+            FreezeWindowProperty property = new FreezeWindowProperty();
+            property.setUseFreezeWindow(true);
+            property.setFreezeWindows(windows.text);
+
+            AbstractProject project = mock(AbstractProject.class, withSettings().stubOnly());
+            when(project.getProperty(FreezeWindowProperty.class)).thenReturn(property);
+            when(project.getFullName()).thenReturn("benchmark");
+            property.setOwner(project);
+
+            dispatcher = new FreezeWindowQueueTaskDispatcher();
+            item = new Queue.WaitingItem(Calendar.getInstance(), project, new ArrayList<Action>());
+        }
+    }
+
+    @Benchmark
+    public CauseOfBlockage canRun(QueueItem queueItem) {
+        return queueItem.dispatcher.canRun(queueItem.item);
+    }
+
+    @Benchmark
+    public FormValidation doCheckCron(BenchmarkWindows windows) {
+        return FreezeWindowProperty.FreezeWindowDescriptor.checkCron(windows.text);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.FreeStyleProject;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowForecastActionTest extends HudsonTestCase {
+
+    /**
+     * Testing the job and global forecast
+     * @throws Exception
+     */
+    public void testForecast() throws Exception {
+        FreeStyleProject project = this.createFreeStyleProject("frozen");
+        project.addProperty(new FreezeWindowProperty(true, "* * 1 * ?"));
+        this.createFreeStyleProject("unfrozen");
+
+        WebClient wc = createWebClient();
+        JSONObject json = JSONObject.fromObject(wc.goTo("job/frozen/freezeForecast/?count=3", "application/json")
+                .getWebResponse().getContentAsString());
+        assertEquals("frozen", json.getString("name"));
+        assertEquals("* * 1 * ?", json.getJSONArray("freezeWindows").getString(0));
+        JSONArray freezes = json.getJSONArray("freezes");
+        assertEquals(3, freezes.size());
+        JSONObject freeze = freezes.getJSONObject(1);
+        assertEquals(24L * 60 * 60 * 1000, freeze.getLong("end") - freeze.getLong("start"), 60L * 60 * 1000);
+
+        long now = System.currentTimeMillis();
+        json = JSONObject.fromObject(wc.goTo("job/frozen/freezeForecast/?from=" + now + "&to=" + (now + 100L * 24 * 60 * 60 * 1000),
+                "application/json").getWebResponse().getContentAsString());
+        assertTrue(json.getJSONArray("freezes").size() >= 3);
+
+        json = JSONObject.fromObject(wc.goTo("freezeForecast/", "application/json").getWebResponse().getContentAsString());
+        assertEquals(0, json.getJSONArray("freezes").size());
+        JSONArray jobs = json.getJSONArray("jobs");
+        assertEquals(1, jobs.size());
+        assertEquals("frozen", jobs.getJSONObject(0).getString("name"));
+
+        // the range of the global forecast is clamped
+        json = JSONObject.fromObject(wc.goTo("freezeForecast/?from=" + now + "&to=" + (now + 100L * 24 * 60 * 60 * 1000),
+                "application/json").getWebResponse().getContentAsString());
+        assertEquals(now + FreezeWindowForecastAction.MAX_GLOBAL_RANGE, json.getLong("to"));
+        assertTrue(json.getJSONArray("jobs").getJSONObject(0).getJSONArray("freezes").size() <= 1);
+    }
+}
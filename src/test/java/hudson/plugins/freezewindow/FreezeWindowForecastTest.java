@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowForecastTest {
+
+    /**
+     * Testing the iterator
+     * @throws Exception
+     */
+    @Test
+    public void testIterator() throws Exception {
+        // the lunch freeze on the first of the month overlaps the working hours on weekdays
+        FreezeWindowSet set = FreezeWindowSet.compile("0-29 12 1 * ?\n* 9-17 ? * 1-5\n* 18 ? * 1-5");
+        FreezeWindowForecast forecast = new FreezeWindowForecast(set,
+                date(2015, 3, 27, 18, 30).getTime(), date(2015, 4, 2, 10, 0).getTime());
+
+        // Friday until 19:00, clipped to the start of the range
+        FreezeWindowForecast.Interval interval = forecast.next();
+        assertEquals(date(2015, 3, 27, 18, 30).getTime(), interval.getStart());
+        assertEquals(date(2015, 3, 27, 19, 0).getTime(), interval.getEnd());
+        assertEquals("* 18 ? * 1-5", interval.getFreezeWindows().get(0).getText());
+
+        // adjoining windows are merged into one freeze
+        interval = forecast.next();
+        assertEquals(date(2015, 3, 30, 9, 0).getTime(), interval.getStart());
+        assertEquals(date(2015, 3, 30, 19, 0).getTime(), interval.getEnd());
+        assertEquals(2, interval.getFreezeWindows().size());
+
+        forecast.next();
+        interval = forecast.next();
+        assertEquals(date(2015, 4, 1, 9, 0).getTime(), interval.getStart());
+        // the lunch freeze is checked after the working hours, which already block
+        assertEquals(2, interval.getFreezeWindows().size());
+
+        // clipped to the end of the range
+        interval = forecast.next();
+        assertEquals(date(2015, 4, 2, 9, 0).getTime(), interval.getStart());
+        assertEquals(date(2015, 4, 2, 10, 0).getTime(), interval.getEnd());
+        assertFalse(forecast.hasNext());
+
+        assertFalse(new FreezeWindowForecast(FreezeWindowSet.EMPTY, 0, FreezeWindowForecast.MAX_RANGE).hasNext());
+        assertFalse(new FreezeWindowForecast(FreezeWindowSet.compile("* * 25 DEC ?"),
+                date(2015, 3, 1, 0, 0).getTime(), date(2015, 12, 1, 0, 0).getTime()).hasNext());
+    }
+
+    /**
+     * Testing getUpcoming
+     * @throws Exception
+     */
+    @Test
+    public void testGetUpcoming() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* * 1 * ?");
+        long now = date(2015, 3, 2, 0, 0).getTime();
+
+        List<FreezeWindowForecast.Interval> upcoming = FreezeWindowForecast.getUpcoming(set, now, 2);
+        assertEquals(2, upcoming.size());
+        assertEquals(date(2015, 4, 1, 0, 0).getTime(), upcoming.get(0).getStart());
+        assertEquals(date(2015, 4, 2, 0, 0).getTime(), upcoming.get(0).getEnd());
+        assertEquals(date(2015, 5, 1, 0, 0).getTime(), upcoming.get(1).getStart());
+
+        // no more than about a year is forecast
+        assertEquals(12, FreezeWindowForecast.getUpcoming(set, now, 100).size());
+
+        // the intervals are reused while the freeze state does not change
+        FreezeWindowForecast.Interval first = upcoming.get(0);
+        assertSame(first, FreezeWindowForecast.getUpcoming(set, now + 60000, 1).get(0));
+        assertTrue(FreezeWindowForecast.getValidUntil(set, now) > now);
+        assertEquals(0, FreezeWindowForecast.getUpcoming(FreezeWindowSet.EMPTY, now, 5).size());
+    }
+}
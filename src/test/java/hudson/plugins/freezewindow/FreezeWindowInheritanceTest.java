@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.model.FreeStyleProject;
+import org.apache.commons.io.FileUtils;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.io.File;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowInheritanceTest extends HudsonTestCase {
+
+    /**
+     * Testing global and folder freeze windows
+     * @throws Exception
+     */
+    public void testEffectiveSet() throws Exception {
+        FreezeWindowProperty.FreezeWindowDescriptor descriptor =
+                jenkins.getDescriptorByType(FreezeWindowProperty.FreezeWindowDescriptor.class);
+        Folder outer = jenkins.createProject(Folder.class, "outer");
+        Folder inner = outer.createProject(Folder.class, "inner");
+        FreeStyleProject project = inner.createProject(FreeStyleProject.class, "project");
+        assertTrue(FreezeWindowInheritance.getEffectiveSet(project).isEmpty());
+
+        descriptor.setGlobalFreezeWindows("* * 25 DEC ?");
+        assertEquals("* * 25 DEC ?", FreezeWindowInheritance.resolve(project));
+
+        outer.getProperties().add(new FreezeWindowFolderProperty("* * 1 JAN ?"));
+        FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* 9-17 ? * 1-5");
+        project.addProperty(property);
+        assertEquals("* 9-17 ? * 1-5\n* * 1 JAN ?\n* * 25 DEC ?", FreezeWindowInheritance.resolve(project));
+
+        // cached until a configuration changes
+        FreezeWindowSet effective = FreezeWindowInheritance.getEffectiveSet(project);
+        assertEquals(3, effective.getWindows().size());
+        assertSame(effective, FreezeWindowInheritance.getEffectiveSet(project));
+
+        inner.getProperties().add(new FreezeWindowFolderProperty("* * 31 DEC ?"));
+        effective = FreezeWindowInheritance.getEffectiveSet(project);
+        assertEquals(4, effective.getWindows().size());
+        assertEquals("* * 31 DEC ?", effective.getWindows().get(1).getText());
+
+        // jobs outside of the folders only inherit the global freeze windows
+        FreeStyleProject other = this.createFreeStyleProject("other");
+        assertEquals(1, FreezeWindowInheritance.getEffectiveSet(other).getWindows().size());
+
+        // a change to a job only drops the cached set of that job
+        long misses = FreezeWindowMetrics.INHERITANCE_MISSES.sum();
+        property.setFreezeWindows("* 9-12 ? * 1-5");
+        assertEquals("* 9-12 ? * 1-5", FreezeWindowInheritance.getEffectiveSet(project).getWindows().get(0).getText());
+        FreezeWindowInheritance.getEffectiveSet(other);
+        assertEquals(misses + 1, FreezeWindowMetrics.INHERITANCE_MISSES.sum());
+    }
+
+    /**
+     * Testing the global configuration round trip
+     * @throws Exception
+     */
+    public void testGlobalConfig() throws Exception {
+        FreezeWindowProperty.FreezeWindowDescriptor descriptor =
+                jenkins.getDescriptorByType(FreezeWindowProperty.FreezeWindowDescriptor.class);
+        descriptor.setGlobalFreezeWindows("* * 25 DEC ?");
+        submit(createWebClient().goTo("configure").getFormByName("config"));
+        assertEquals("* * 25 DEC ?", descriptor.getGlobalFreezeWindows());
+        FreeStyleProject project = this.createFreeStyleProject();
+        assertEquals(1, FreezeWindowInheritance.getEffectiveSet(project).getWindows().size());
+    }
+
+    /**
+     * Testing global freeze windows that reference a shared calendar loaded later
+     * @throws Exception
+     */
+    public void testGlobalSharedCalendar() throws Exception {
+        FreezeWindowProperty.FreezeWindowDescriptor descriptor =
+                jenkins.getDescriptorByType(FreezeWindowProperty.FreezeWindowDescriptor.class);
+        File file = new File(jenkins.getRootDir(), "shared-calendars.txt");
+        descriptor.setSharedCalendarFile(file.getName());
+        descriptor.setGlobalFreezeWindows("@calendar release");
+        FreeStyleProject project = this.createFreeStyleProject();
+        assertTrue(FreezeWindowInheritance.getEffectiveSet(project).isEmpty());
+
+        // the file appears after startup, for example once a shared disk is mounted
+        FileUtils.writeStringToFile(file, "[release]\n* * 25 DEC ?\n", "UTF-8");
+        assertTrue(FreezeWindowSharedCalendar.poll());
+        assertEquals(1, FreezeWindowInheritance.getEffectiveSet(project).getWindows().size());
+        descriptor.setSharedCalendarFile(null);
+    }
+
+    /**
+     * Testing a change to a job while the queue resolves its freeze windows
+     * @throws Exception
+     */
+    public void testChangeWhileResolving() throws Exception {
+        Folder folder = jenkins.createProject(Folder.class, "folder");
+        FreeStyleProject project = folder.createProject(FreeStyleProject.class, "project");
+        final FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* 9-17 ? * 1-5");
+        project.addProperty(property);
+        InterleavedFolderProperty folderProperty = new InterleavedFolderProperty("* * 1 JAN ?");
+        folder.getProperties().add(folderProperty);
+
+        // the job is saved after its freeze windows were read and before the set is cached
+        folderProperty.onRead = new Runnable() {
+            public void run() {
+                property.setFreezeWindows("* 9-12 ? * 1-5");
+            }
+        };
+        assertEquals("* 9-17 ? * 1-5", FreezeWindowInheritance.getEffectiveSet(project).getWindows().get(0).getText());
+        assertEquals("* 9-12 ? * 1-5", FreezeWindowInheritance.getEffectiveSet(project).getWindows().get(0).getText());
+
+        // without folder and global freeze windows jobs no longer look for inherited ones
+        folder.getProperties().remove(folderProperty);
+        long misses = FreezeWindowMetrics.INHERITANCE_MISSES.sum();
+        assertEquals(1, FreezeWindowInheritance.getEffectiveSet(project).getWindows().size());
+        assertEquals(misses, FreezeWindowMetrics.INHERITANCE_MISSES.sum());
+    }
+
+    /**
+     * A folder property that runs an action the next time its freeze windows are read.
+     */
+    public static class InterleavedFolderProperty extends FreezeWindowFolderProperty {
+
+        transient Runnable onRead;
+
+        public InterleavedFolderProperty(String freezeWindows) {
+            super(freezeWindows);
+        }
+
+        @Override
+        public String getFreezeWindows() {
+            Runnable action = onRead;
+            onRead = null;
+            if (action != null) {
+                action.run();
+            }
+            return super.getFreezeWindows();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.model.FreeStyleProject;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowJobIndexTest extends HudsonTestCase {
+
+    /**
+     * Testing the index through the lifecycle of a job
+     * @throws Exception
+     */
+    public void testLifecycle() throws Exception {
+        assertTrue(FreezeWindowJobIndex.isReady());
+        FreeStyleProject project = this.createFreeStyleProject();
+        assertNull(FreezeWindowJobIndex.getProperty(project));
+        assertEquals(0, FreezeWindowJobIndex.countFrozenJobs());
+
+        FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* * * * ?");
+        project.addProperty(property);
+        assertSame(property, FreezeWindowJobIndex.getProperty(project));
+        assertEquals(1, FreezeWindowJobIndex.countFrozenJobs());
+
+        FreeStyleProject copy = jenkins.copy(project, "copy");
+        assertNotNull(FreezeWindowJobIndex.getProperty(copy));
+        assertEquals(2, FreezeWindowJobIndex.countFrozenJobs());
+
+        project.renameTo("renamed");
+        assertSame(property, FreezeWindowJobIndex.getProperty(project));
+
+        project.removeProperty(FreezeWindowProperty.class);
+        assertNull(FreezeWindowJobIndex.getProperty(project));
+
+        copy.delete();
+        assertNull(FreezeWindowJobIndex.getProperty(copy));
+        assertEquals(0, FreezeWindowJobIndex.countFrozenJobs());
+    }
+
+    /**
+     * Testing that a reload from disk indexes the reloaded jobs
+     * @throws Exception
+     */
+    public void testReload() throws Exception {
+        FreeStyleProject project = this.createFreeStyleProject("frozen");
+        FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* * * * ?");
+        project.addProperty(property);
+
+        jenkins.reload();
+        FreeStyleProject reloaded = (FreeStyleProject) jenkins.getItem("frozen");
+        assertNotSame(project, reloaded);
+        assertNull(FreezeWindowJobIndex.getProperty(project));
+        assertNotNull(FreezeWindowJobIndex.getProperty(reloaded));
+        assertEquals(1, FreezeWindowJobIndex.countFrozenJobs());
+    }
+
+    /**
+     * Testing that deleting a folder removes the jobs within it from the index
+     * @throws Exception
+     */
+    public void testDeleteFolder() throws Exception {
+        Folder folder = jenkins.createProject(Folder.class, "folder");
+        FreeStyleProject project = folder.createProject(FreeStyleProject.class, "frozen");
+        FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* * * * ?");
+        project.addProperty(property);
+        assertSame(property, FreezeWindowJobIndex.getProperty(project));
+        assertEquals(1, FreezeWindowJobIndex.countFrozenJobs());
+
+        folder.delete();
+        assertNull(FreezeWindowJobIndex.getProperty(project));
+        assertEquals(0, FreezeWindowJobIndex.countFrozenJobs());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowMetricsTest {
+
+    /**
+     * Testing the striped counter from several threads
+     * @throws Exception
+     */
+    @Test
+    public void testCounter() throws Exception {
+        final FreezeWindowMetrics.Counter counter = new FreezeWindowMetrics.Counter("test_total", "Test");
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 100000; j++) {
+                        counter.increment();
+                    }
+                    counter.add(5);
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * 100005, counter.sum());
+    }
+
+    /**
+     * Testing the histogram buckets
+     * @throws Exception
+     */
+    @Test
+    public void testHistogram() throws Exception {
+        FreezeWindowMetrics.Histogram histogram = new FreezeWindowMetrics.Histogram("test_seconds", "Test");
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(1000);
+        histogram.record(1023);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        long[] buckets = histogram.getBuckets();
+        assertEquals(1, buckets[0]);
+        assertEquals(1, buckets[1]);
+        assertEquals(2, buckets[10]);
+        assertEquals(1, buckets[FreezeWindowMetrics.Histogram.BUCKETS - 1]);
+        assertEquals(5, histogram.getCount());
+        assertEquals(1024, FreezeWindowMetrics.Histogram.getUpperBound(10));
+    }
+
+    /**
+     * Testing the Prometheus text format
+     * @throws Exception
+     */
+    @Test
+    public void testPrometheus() throws Exception {
+        long blocks = FreezeWindowMetrics.BLOCKS.sum();
+        FreezeWindow window = FreezeWindow.compile("* * 1 * ?");
+        FreezeWindowMetrics.blocked(-1, window);
+        FreezeWindowMetrics.blocked(-2, window);
+        FreezeWindowMetrics.unblocked(-2);
+        FreezeWindowMetrics.CAN_RUN.record(1500);
+
+        StringWriter writer = new StringWriter();
+        FreezeWindowMetrics.writePrometheus(writer);
+        String text = writer.toString();
+        assertTrue(text.contains("# TYPE freezewindow_blocks_total counter\nfreezewindow_blocks_total " + (blocks + 2) + "\n"));
+        assertTrue(text.contains("freezewindow_blocked_items{window=\"* * 1 * ?\"} 1\n"));
+        assertTrue(text.contains("# TYPE freezewindow_can_run_seconds histogram\n"));
+        assertTrue(text.contains("freezewindow_can_run_seconds_bucket{le=\"2.048E-6\"} "));
+        assertTrue(text.contains("freezewindow_can_run_seconds_bucket{le=\"+Inf\"} "));
+        FreezeWindowMetrics.unblocked(-1);
+        assertFalse(FreezeWindowMetrics.getBlockedItems().containsKey("* * 1 * ?"));
+    }
+
+    /**
+     * Testing the table of blocked items against a map
+     * @throws Exception
+     */
+    @Test
+    public void testBlockedItems() throws Exception {
+        FreezeWindow[] windows = {FreezeWindow.compile("* * 1 * ?"), FreezeWindow.compile("* * 2 * ?"),
+                FreezeWindow.compile("* * 3 * ?")};
+        FreezeWindowMetrics.BlockedItems table = new FreezeWindowMetrics.BlockedItems();
+        Map<Long, FreezeWindow> expected = new HashMap<Long, FreezeWindow>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long id = random.nextInt(200) - 20;
+            if (random.nextInt(3) == 0) {
+                table.remove(id);
+                expected.remove(id);
+            } else {
+                FreezeWindow window = windows[random.nextInt(windows.length)];
+                table.put(id, window);
+                expected.put(id, window);
+            }
+            if (i % 1000 == 0) {
+                Map<String, Integer> counts = new TreeMap<String, Integer>();
+                for (FreezeWindow window : expected.values()) {
+                    Integer count = counts.get(window.getText());
+                    counts.put(window.getText(), count == null ? 1 : count + 1);
+                }
+                assertEquals(counts, table.count());
+            }
+        }
+        for (long id = -20; id < 180; id++) {
+            table.remove(id);
+        }
+        assertTrue(table.count().isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowOptimizerTest {
+
+    /**
+     * Testing the removal of duplicate and covered freeze windows
+     * @throws Exception
+     */
+    @Test
+    public void testOptimize() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile(
+                "* 10-12 ? * 2\n* 9-17 ? * 1-5\n* * 1 JAN ?\n* 9-17 ? * 1-5 \n* * * JAN ?\n* * 25 DEC ?\n* * ? * MON-FRI");
+
+        List<FreezeWindow> windows = set.getWindows();
+        assertEquals(3, windows.size());
+        assertEquals("* * * JAN ?", windows.get(0).getText());
+        assertEquals("* * 25 DEC ?", windows.get(1).getText());
+        assertEquals("* * ? * MON-FRI", windows.get(2).getText());
+
+        List<FreezeWindowOptimizer.Removal> removed = set.getRemoved();
+        assertEquals(4, removed.size());
+        assertTrue(removed.get(0).isDuplicate());
+        assertEquals("* 9-17 ? * 1-5", removed.get(0).getFreezeWindow().getText());
+        assertEquals("\"* 10-12 ? * 2\" is covered by \"* 9-17 ? * 1-5\"", removed.get(1).toString());
+        assertEquals("* 9-17 ? * 1-5", removed.get(2).getFreezeWindow().getText());
+        assertEquals("* * 1 JAN ?", removed.get(3).getFreezeWindow().getText());
+
+        // the weekdays match most often and are checked first
+        assertEquals("* * ? * MON-FRI", set.shouldBlock(date(2015, 1, 2, 10, 0)).getText());
+        assertEquals("* * * JAN ?", set.shouldBlock(date(2015, 1, 3, 10, 0)).getText());
+        assertNull(set.shouldBlock(date(2015, 3, 7, 10, 0)));
+    }
+
+    /**
+     * Testing that equal freeze windows keep the first one and that the day of week and day of month are not mixed up
+     * @throws Exception
+     */
+    @Test
+    public void testCovers() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* * ? * 0-6\n* * * * ?\n* * 1 * ?\n* * ? * 1");
+        assertEquals(1, set.getWindows().size());
+        assertEquals("* * ? * 0-6", set.getWindows().get(0).getText());
+
+        set = FreezeWindowSet.compile("* * ? * 1\n* * 1 * ?\n* * * * ? 2015\n* * 1 * ? 2015-2016");
+        assertEquals(3, set.getWindows().size());
+        assertEquals("\"* * 1 * ? 2015-2016\" is covered by \"* * 1 * ?\"", set.getRemoved().get(0).toString());
+    }
+
+    /**
+     * The optimized set must block exactly when the configured freeze windows do
+     * @throws Exception
+     */
+    @Test
+    public void testEquivalence() throws Exception {
+        String text = "* 10-12 ? * 2\n* 9-17 ? * 1-5\n* * 1 JAN ?\n0-29 12 1 * ?\n* * * JAN ?\n* 18 ? * 1-5";
+        FreezeWindowSet set = FreezeWindowSet.compile(text);
+        String[] lines = text.split("\n");
+        FreezeWindow[] windows = new FreezeWindow[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            windows[i] = FreezeWindow.compile(lines[i]);
+        }
+        for (long time = date(2015, 1, 1, 0, 0).getTime(); time < date(2015, 3, 1, 0, 0).getTime(); time += 7 * 60000) {
+            boolean blocked = false;
+            for (FreezeWindow window : windows) {
+                blocked |= window.isActive(new java.util.Date(time));
+            }
+            assertEquals(blocked, set.shouldBlock(time) != null);
+        }
+    }
+}
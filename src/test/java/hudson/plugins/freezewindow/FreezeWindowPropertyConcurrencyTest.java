@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Stress test of the configuration snapshot of {@link FreezeWindowProperty}
+ */
+public class FreezeWindowPropertyConcurrencyTest {
+
+    private static final int READERS = 8;
+
+    private static final long DURATION_MILLIS = 1000;
+
+    private static final String BLOCKING = "* * * * ?";
+
+    /**
+     * Saves the configuration repeatedly while many threads evaluate canRun
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveWhileEvaluating() throws Exception {
+        final FreezeWindowProperty property = new FreezeWindowProperty(true, BLOCKING);
+        AbstractProject project = mock(AbstractProject.class, withSettings().stubOnly());
+        when(project.getProperty(FreezeWindowProperty.class)).thenReturn(property);
+        when(project.getFullName()).thenReturn("stress");
+        property.setOwner(project);
+        Queue.Item item = new Queue.WaitingItem(Calendar.getInstance(), project, new ArrayList<Action>());
+
+        long baseline = evaluate(property, item, false);
+        long concurrent = evaluate(property, item, true);
+        assertTrue("throughput dropped from " + baseline + " to " + concurrent, concurrent * 10 > baseline);
+    }
+
+    /**
+     * Runs the readers for a fixed duration, with or without a writer saving the configuration.
+     * @return the number of evaluations of all readers
+     */
+    private static long evaluate(final FreezeWindowProperty property, final Queue.Item item, boolean save)
+            throws Exception {
+        final FreezeWindowQueueTaskDispatcher dispatcher = new FreezeWindowQueueTaskDispatcher();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong evaluations = new AtomicLong();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    long count = 0;
+                    while (running.get()) {
+                        FreezeWindowProperty.Config config = property.getConfig();
+                        boolean blocking = BLOCKING.equals(config.getFreezeWindows());
+                        if (config.isUseFreezeWindow() != blocking || config.getFreezeWindowSet().isEmpty() == blocking) {
+                            failure.compareAndSet(null, "torn configuration " + config.isUseFreezeWindow()
+                                    + " " + config.getFreezeWindows() + " " + config.getFreezeWindowSet());
+                        }
+                        CauseOfBlockage cause = dispatcher.canRun(item);
+                        if (cause != null && !cause.getShortDescription().contains(BLOCKING)) {
+                            failure.compareAndSet(null, "unexpected cause " + cause.getShortDescription());
+                        }
+                        count++;
+                    }
+                    evaluations.addAndGet(count);
+                }
+            });
+        }
+        if (save) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    boolean blocking = false;
+                    while (running.get()) {
+                        property.setConfig(blocking, blocking ? BLOCKING : null, 0);
+                        blocking = !blocking;
+                    }
+                    property.setConfig(true, BLOCKING, 0);
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get(), failure.get());
+        return evaluations.get();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
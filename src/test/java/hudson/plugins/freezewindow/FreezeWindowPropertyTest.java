@@ -28,11 +28,13 @@
 package hudson.plugins.freezewindow;
 
 import hudson.model.Job;
+import hudson.util.FormValidation;
 import net.sf.json.JSONObject;
 import org.easymock.EasyMock;
 import org.jvnet.hudson.test.HudsonTestCase;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.text.ParseException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -61,6 +63,31 @@ public class FreezeWindowPropertyTest extends HudsonTestCase {
 
         property.setFreezeWindows("* * * * ?");
         assertEquals("* * * * ?", property.getFreezeWindows());
+        assertEquals(1, property.getFreezeWindowSet().getWindows().size());
+
+        property.setFreezeWindows(null);
+        assertTrue(property.getFreezeWindowSet().isEmpty());
+    }
+
+    /**
+     * Testing checkCron
+     * @throws Exception
+     */
+    public void testCheckCron() throws Exception {
+        assertEquals(FormValidation.Kind.OK, FreezeWindowProperty.FreezeWindowDescriptor.checkCron("* 9-17 ? * 1-5").kind);
+        assertEquals(FormValidation.Kind.ERROR, FreezeWindowProperty.FreezeWindowDescriptor.checkCron("* 9-17 ? * 1-5\n60 * * * ?").kind);
+
+        FormValidation validation = FreezeWindowProperty.FreezeWindowDescriptor.checkCron("* 10-12 ? * 2\n* 9-17 ? * 1-5");
+        assertEquals(FormValidation.Kind.WARNING, validation.kind);
+        assertTrue(validation.getMessage().contains("is covered by"));
+
+        // the validation reports the lines the quarantine holds and leaves the quarantine alone
+        FreezeWindowQuarantine.SYSTEM.add("* 10-12 ? * 3", new ParseException("quarantined", 0));
+        FreezeWindowQuarantine.Entry entry = FreezeWindowQuarantine.SYSTEM.get("* 10-12 ? * 3");
+        validation = FreezeWindowProperty.FreezeWindowDescriptor.checkCron("* 10-12 ? * 3\n* 9-17 ? * 1-5");
+        assertEquals(FormValidation.Kind.WARNING, validation.kind);
+        assertTrue(validation.getMessage().contains("* 10-12 ? * 3"));
+        assertEquals(1, entry.getHits());
     }
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowQuarantineTest {
+
+    /**
+     * Testing that an invalid line is compiled once and remembered
+     * @throws Exception
+     */
+    @Test
+    public void testQuarantine() throws Exception {
+        long failures = FreezeWindowMetrics.COMPILE_FAILURES.sum();
+        FreezeWindowSet set = FreezeWindowSet.compile("* 22 * * ?\n* 99 * * * quarantine\n");
+        assertEquals(1, set.getWindows().size());
+        assertEquals(1, set.getInvalidLines().size());
+        assertEquals("* 99 * * * quarantine", set.getInvalidLines().get(0));
+        assertEquals(failures + 1, FreezeWindowMetrics.COMPILE_FAILURES.sum());
+
+        set = FreezeWindowSet.compile("  * 99 * * * quarantine  \n* 23 * * ?");
+        assertEquals(1, set.getWindows().size());
+        assertEquals("* 99 * * * quarantine", set.getInvalidLines().get(0));
+        assertEquals(failures + 1, FreezeWindowMetrics.COMPILE_FAILURES.sum());
+
+        FreezeWindowQuarantine.Entry entry = FreezeWindowQuarantine.SYSTEM.get("* 99 * * * quarantine");
+        assertNotNull(entry);
+        assertEquals(2, entry.getHits());
+        assertNotNull(entry.getMessage());
+        assertTrue(FreezeWindowQuarantine.SYSTEM.getEntries().contains(entry));
+
+        // all items of the set share the cause of blockage while invalid freeze windows block builds
+        assertEquals("* 99 * * * quarantine", set.getInvalidCause().getFreezeWindow());
+        assertNull(FreezeWindowSet.compile("* 22 * * ?").getInvalidCause());
+
+        assertTrue(FreezeWindowSet.compile("* 22 * * ?").getInvalidLines().isEmpty());
+        assertNull(FreezeWindowQuarantine.SYSTEM.get("* 22 * * ?"));
+    }
+
+    /**
+     * Testing the rate limit of the warnings
+     * @throws Exception
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        final long[] now = {FreezeWindowSetTest.date(2030, 1, 1, 0, 0).getTime()};
+        FreezeWindowQuarantine quarantine = new FreezeWindowQuarantine(new FreezeWindowClock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        });
+        final List<String> messages = new ArrayList<String>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(FreezeWindowQuarantine.class.getName());
+        logger.addHandler(handler);
+        try {
+            for (int i = 0; i < FreezeWindowQuarantine.WARNINGS_PER_MINUTE + 5; i++) {
+                quarantine.add("rate limit " + i, new ParseException("invalid", 0));
+                quarantine.add("rate limit " + i, new ParseException("invalid", 0));
+            }
+            assertEquals(FreezeWindowQuarantine.WARNINGS_PER_MINUTE, messages.size());
+            assertEquals(now[0], quarantine.get("rate limit 0").getSince());
+
+            now[0] += CronMask.MILLIS_PER_MINUTE;
+            quarantine.add("rate limit next minute", new ParseException("invalid", 0));
+            assertEquals(FreezeWindowQuarantine.WARNINGS_PER_MINUTE + 1, messages.size());
+            String last = messages.get(messages.size() - 1);
+            assertTrue(last, last.contains("rate limit next minute"));
+            assertTrue(last, last.contains("5 more"));
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    /**
+     * Testing that a line whose iCalendar file cannot be read is not quarantined
+     * @throws Exception
+     */
+    @Test
+    public void testUnreadableCalendar() throws Exception {
+        File directory = File.createTempFile("freeze-calendars", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        File previous = FreezeWindowCalendar.getDirectory();
+        File file = new File(directory, "later.ics");
+        try {
+            FreezeWindowCalendar.setDirectory(directory);
+            FreezeWindowSet set = FreezeWindowRegistry.get("@ics later.ics");
+            assertEquals(1, set.getInvalidLines().size());
+            assertNull(FreezeWindowQuarantine.SYSTEM.get("@ics later.ics"));
+
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(("BEGIN:VCALENDAR\nBEGIN:VEVENT\nDTSTART;VALUE=DATE:20151225\nEND:VEVENT\nEND:VCALENDAR\n").getBytes("UTF-8"));
+            out.close();
+            assertTrue(FreezeWindowRegistry.recompile() >= 1);
+            assertTrue(set.isStale());
+            set = FreezeWindowRegistry.get("@ics later.ics");
+            assertTrue(set.getInvalidLines().isEmpty());
+            assertNotNull(set.shouldBlock(FreezeWindowSetTest.date(2015, 12, 25, 12, 0)));
+        } finally {
+            FreezeWindowCalendar.setDirectory(previous);
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * Testing that the oldest lines are dropped once the quarantine is full
+     * @throws Exception
+     */
+    @Test
+    public void testBound() throws Exception {
+        FreezeWindowSet.compile("* 99 * * * oldest");
+        assertNotNull(FreezeWindowQuarantine.SYSTEM.get("* 99 * * * oldest"));
+        for (int i = 0; i < FreezeWindowQuarantine.MAX_ENTRIES; i++) {
+            FreezeWindowSet.compile("* 99 * * * bound " + i);
+        }
+        assertNull(FreezeWindowQuarantine.SYSTEM.get("* 99 * * * oldest"));
+        assertNotNull(FreezeWindowQuarantine.SYSTEM.get("* 99 * * * bound " + (FreezeWindowQuarantine.MAX_ENTRIES - 1)));
+        assertTrue(FreezeWindowQuarantine.SYSTEM.getEntries().size() <= FreezeWindowQuarantine.MAX_ENTRIES);
+    }
+}
@@ -59,4 +59,35 @@ public class FreezeWindowQueueTaskDispatcherTest extends HudsonTestCase {
         assertNotNull(causeOfBlockage);
         assertTrue(causeOfBlockage.getShortDescription().contains("is blocked by freeze window"));
     }
+
+    /**
+     * Testing that items blocked by the same freeze window share the cause of blockage
+     * @throws Exception
+     */
+    public void testSharedCauseOfBlockage() throws Exception {
+        final long[] now = {FreezeWindowSetTest.date(2030, 1, 1, 12, 0).getTime() + 30 * 1000};
+        FreezeWindowQueueTaskDispatcher dispatcher = FreezeWindowQueueTaskDispatcher.create(new FreezeWindowClock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        });
+        FreeStyleProject project = this.createFreeStyleProject();
+        FreezeWindowProperty property = new FreezeWindowProperty();
+        property.setFreezeWindows("* * * * ?");
+        project.addProperty(property);
+
+        Queue.BuildableItem item = new Queue.BuildableItem(new Queue.WaitingItem(Calendar.getInstance(), project, new ArrayList<Action>()));
+        Queue.BuildableItem other = new Queue.BuildableItem(new Queue.WaitingItem(Calendar.getInstance(), project, new ArrayList<Action>()));
+        CauseOfBlockage cause = dispatcher.canRun(item);
+        assertNotNull(cause);
+        assertSame(cause, dispatcher.canRun(other));
+
+        // the causes are shared within a minute, the next minute has its own
+        now[0] += CronMask.MILLIS_PER_MINUTE;
+        CauseOfBlockage next = dispatcher.canRun(item);
+        assertNotNull(next);
+        assertNotSame(cause, next);
+        assertSame(next, dispatcher.canRun(other));
+    }
 }
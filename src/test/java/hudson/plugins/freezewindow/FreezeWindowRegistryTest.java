@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowRegistryTest {
+
+    /**
+     * Testing canonicalize
+     * @throws Exception
+     */
+    @Test
+    public void testCanonicalize() throws Exception {
+        assertEquals("", FreezeWindowRegistry.canonicalize(null));
+        assertEquals("", FreezeWindowRegistry.canonicalize(" \r\n\t"));
+        assertEquals("* 9-17 ? * 1-5\n* * * 1 ?",
+                FreezeWindowRegistry.canonicalize("  *  9-17 ?\t* 1-5\r\n\n* * * 1 ?\n* 9-17 ? * 1-5 "));
+        // the argument of a directive may contain whitespace
+        assertEquals("@ics release  holidays.ics\n@ics release holidays.ics",
+                FreezeWindowRegistry.canonicalize("@ics\trelease  holidays.ics \n  @ics release holidays.ics"));
+    }
+
+    /**
+     * Identical freeze windows share one compiled set
+     * @throws Exception
+     */
+    @Test
+    public void testGet() throws Exception {
+        FreezeWindowSet set = FreezeWindowRegistry.get("* 9-17 ? * 1-5\n* * * 1 ?");
+        assertSame(set, FreezeWindowRegistry.get("* 9-17 ? * 1-5\r\n* * * 1 ?\n\n"));
+        assertSame(set, FreezeWindowRegistry.get("* 9-17  ? * 1-5\n* 9-17 ? * 1-5\n* * * 1 ?"));
+        assertNotSame(set, FreezeWindowRegistry.get("* * * 1 ?\n* 9-17 ? * 1-5"));
+        assertEquals(2, set.getWindows().size());
+
+        assertSame(FreezeWindowSet.EMPTY, FreezeWindowRegistry.get(null));
+        assertSame(FreezeWindowSet.EMPTY, FreezeWindowRegistry.get("\n"));
+    }
+
+    /**
+     * Sets that are no longer used are dropped from the registry
+     * @throws Exception
+     */
+    @Test
+    public void testUnusedSetsAreCollected() throws Exception {
+        FreezeWindowSet kept = FreezeWindowRegistry.get("* * * 2 ?");
+        for (int i = 0; i < 100; i++) {
+            FreezeWindowRegistry.get("* * * 3 ? " + (2100 + i));
+        }
+        assertTrue(FreezeWindowRegistry.size() > 100);
+        for (int i = 0; i < 50 && FreezeWindowRegistry.size() > 50; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(FreezeWindowRegistry.size() <= 50);
+        assertSame(kept, FreezeWindowRegistry.get("* * * 2 ?"));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests using a simulated clock
+ */
+public class FreezeWindowReleaseGateTest {
+
+    private static final class SimulatedClock extends FreezeWindowClock {
+
+        private long now = 1000000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Items that were never blocked, or all items when the gate is disabled, are released at once
+     * @throws Exception
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        FreezeWindowReleaseGate gate = new FreezeWindowReleaseGate(new SimulatedClock());
+        assertFalse(gate.isEnabled());
+        gate.blocked(1, 0, 0);
+        assertTrue(gate.release(1));
+
+        gate.configure(1, 60000);
+        gate.blocked(1, 0, 0);
+        gate.blocked(2, 0, 0);
+        assertTrue(gate.release(3));
+        gate.configure(0, 60000);
+        assertTrue(gate.release(2));
+    }
+
+    /**
+     * Blocked items are released a few per interval in order of priority, then of queue age
+     * @throws Exception
+     */
+    @Test
+    public void testRelease() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        FreezeWindowReleaseGate gate = new FreezeWindowReleaseGate(clock);
+        gate.configure(2, 60000);
+        gate.blocked(1, 0, 300);
+        gate.blocked(2, 0, 100);
+        gate.blocked(3, 5, 400);
+        gate.blocked(4, 0, 200);
+
+        // the freeze ends with the minute, the queue checks the items in its own order
+        clock.now += 60000;
+        assertFalse(gate.release(1));
+        assertTrue(gate.release(2));
+        assertTrue(gate.release(3));
+        assertFalse(gate.release(4));
+        assertFalse(gate.release(1));
+        assertFalse(gate.release(4));
+        assertEquals(1, gate.getPosition(4));
+        assertEquals(2, gate.getPosition(1));
+        assertEquals(2, gate.getPendingCount());
+        assertEquals(clock.now + 60000, gate.getNextRefill());
+
+        clock.now += 60000;
+        assertTrue(gate.release(1) & gate.release(4));
+        assertEquals(0, gate.getPendingCount());
+    }
+
+    /**
+     * Items blocked again or leaving the queue give up their place
+     * @throws Exception
+     */
+    @Test
+    public void testBlockedAgainAndLeft() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        FreezeWindowReleaseGate gate = new FreezeWindowReleaseGate(clock);
+        gate.configure(1, 60000);
+        gate.blocked(1, 0, 100);
+        gate.blocked(2, 0, 200);
+        gate.blocked(3, 0, 300);
+        clock.now += 60000;
+        assertFalse(gate.release(2));
+        assertFalse(gate.release(3));
+
+        // item 1 has left the queue, item 2 is frozen again
+        gate.left(1);
+        gate.blocked(2, 0, 200);
+        assertEquals(0, gate.getPosition(2));
+        assertTrue(gate.release(3));
+        assertFalse(gate.release(2));
+        clock.now += 60000;
+        assertTrue(gate.release(2));
+    }
+
+    /**
+     * Items the queue no longer checks do not hold up the items behind them
+     * @throws Exception
+     */
+    @Test
+    public void testStale() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        FreezeWindowReleaseGate gate = new FreezeWindowReleaseGate(clock);
+        gate.configure(1, 60000);
+        gate.blocked(1, 0, 100);
+        gate.blocked(2, 0, 200);
+        clock.now += 60000;
+        assertFalse(gate.release(2));
+
+        // item 1 is never checked again
+        clock.now += FreezeWindowReleaseGate.STALE_MILLIS - 60000;
+        assertFalse(gate.release(2));
+        clock.now += 60000;
+        assertTrue(gate.release(2));
+        assertEquals(0, gate.getPendingCount());
+    }
+
+    /**
+     * Items still frozen are not waiting for their turn, whatever their priority
+     * @throws Exception
+     */
+    @Test
+    public void testFrozenItemsAhead() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        FreezeWindowReleaseGate gate = new FreezeWindowReleaseGate(clock);
+        gate.configure(1, 60000);
+        gate.blocked(1, 0, 100);
+        clock.now += 60000;
+        for (int id = 2; id < 1000; id++) {
+            gate.blocked(id, 5, 0);
+        }
+        assertEquals(1, gate.getPendingCount());
+        assertEquals(0, gate.getPosition(2));
+        assertTrue(gate.release(1));
+
+        // the frozen items wait for their turn once their minute is over
+        clock.now += 60000;
+        assertEquals(998, gate.getPendingCount());
+        assertEquals(1, gate.getPosition(2));
+        assertTrue(gate.release(2));
+        assertFalse(gate.release(3));
+    }
+}
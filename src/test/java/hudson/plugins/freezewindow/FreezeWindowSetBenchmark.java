@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Benchmarks of parsing and evaluating freeze windows.
+ */
+public class FreezeWindowSetBenchmark {
+
+    /**
+     * The compiled freeze windows of the benchmark parameters.
+     */
+    @State(Scope.Benchmark)
+    public static class Compiled {
+
+        /**
+         * Thursday Mar 19, 2015 10:30
+         */
+        long time = 1426761000000L;
+
+        long fields;
+
+        FreezeWindowSet set;
+
+        List<FreezeWindow> windows;
+
+        List<FreezeWindow> quartzWindows;
+
+        @Setup
+        public void setUp(BenchmarkWindows benchmarkWindows) throws Exception {
+            set = FreezeWindowSet.compile(benchmarkWindows.text);
+            windows = set.getWindows();
+            fields = CronMask.fields(time, TimeZone.getDefault());
+            quartzWindows = new ArrayList<FreezeWindow>();
+            for (String line : benchmarkWindows.lines) {
+                quartzWindows.add(FreezeWindow.compile(line, TimeZone.getDefault(), true));
+            }
+        }
+    }
+
+    @Benchmark
+    public void normalize(BenchmarkWindows windows, Blackhole blackhole) {
+        for (String line : windows.lines) {
+            blackhole.consume(FreezeWindowMonitor.normalize(line));
+        }
+    }
+
+    @Benchmark
+    public FreezeWindowSet compile(BenchmarkWindows windows) {
+        return FreezeWindowSet.compile(windows.text);
+    }
+
+    /**
+     * the queue path: the cached state of a shared set
+     */
+    @Benchmark
+    public FreezeWindow shouldBlock(Compiled compiled) {
+        return compiled.set.shouldBlock(compiled.time);
+    }
+
+    /**
+     * evaluating every window, as done at each freeze state transition
+     */
+    @Benchmark
+    public FreezeWindow evaluateWindows(Compiled compiled) {
+        return evaluate(compiled.windows, compiled.time, compiled.fields);
+    }
+
+    /**
+     * evaluating every window with quartz, the reference implementation
+     */
+    @Benchmark
+    public FreezeWindow evaluateWindowsWithQuartz(Compiled compiled) {
+        return evaluate(compiled.quartzWindows, compiled.time, compiled.fields);
+    }
+
+    /**
+     * the public monitor API, looking up the set and evaluating it at the current time
+     */
+    @Benchmark
+    public String monitorShouldBlock(BenchmarkWindows windows) {
+        return new FreezeWindowMonitor(windows.text).shouldBlock();
+    }
+
+    private static FreezeWindow evaluate(List<FreezeWindow> windows, long time, long fields) {
+        for (FreezeWindow window : windows) {
+            if (window.isActive(time, fields)) {
+                return window;
+            }
+        }
+        return null;
+    }
+}
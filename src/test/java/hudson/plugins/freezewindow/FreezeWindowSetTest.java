@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowSetTest {
+
+    /**
+     * Creates a date in the default time zone, the time zone the freeze windows are evaluated in.
+     */
+    static Date date(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTime();
+    }
+
+    /**
+     * Testing compile
+     * @throws Exception
+     */
+    @Test
+    public void testCompile() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* * * 1 ?\r\n\n  * 9-17 ? * 1-5 \n");
+        assertEquals(2, set.getWindows().size());
+        assertEquals("* * * 1 ?", set.getWindows().get(0).getText());
+        assertEquals("* 9-17 ? * 1-5", set.getWindows().get(1).getText());
+
+        assertSame(FreezeWindowSet.EMPTY, FreezeWindowSet.compile(null));
+        assertSame(FreezeWindowSet.EMPTY, FreezeWindowSet.compile(" \n"));
+    }
+
+    /**
+     * Invalid lines are skipped instead of hiding the valid ones
+     * @throws Exception
+     */
+    @Test
+    public void testCompileSkipsInvalidLines() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* *\nnot a cron\n* * * 1 ?");
+        assertEquals(1, set.getWindows().size());
+        assertEquals("* * * 1 ?", set.shouldBlock(date(2015, 1, 20, 10, 0)).getText());
+    }
+
+    /**
+     * Testing shouldBlock
+     * @throws Exception
+     */
+    @Test
+    public void testShouldBlock() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* * * 3 ?\n* 9-17 ? * 1-5");
+        assertEquals("* * * 3 ?", set.getWindows().get(0).getText());
+
+        // Thursday Mar 19, 2015 is blocked by both windows, the one blocking most often is checked first
+        assertEquals("* 9-17 ? * 1-5", set.shouldBlock(date(2015, 3, 19, 10, 30)).getText());
+        assertEquals("* * * 3 ?", set.shouldBlock(date(2015, 3, 19, 20, 0)).getText());
+        // Saturday Apr 18, 2015
+        assertNull(set.shouldBlock(date(2015, 4, 18, 10, 30)));
+        assertTrue(FreezeWindowSet.EMPTY.isEmpty());
+        assertNull(FreezeWindowSet.EMPTY.shouldBlock(date(2015, 4, 18, 10, 30)));
+    }
+
+    /**
+     * Testing getState
+     * @throws Exception
+     */
+    @Test
+    public void testGetState() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* 9-17 ? * 1-5\n0-29 12 1 * ?");
+
+        // Thursday Mar 19, 2015
+        FreezeWindowSet.State state = set.getState(date(2015, 3, 19, 10, 30).getTime() + 1234);
+        assertEquals("* 9-17 ? * 1-5", state.getBlockingWindow().getText());
+        assertEquals(date(2015, 3, 19, 10, 30).getTime(), state.getValidFrom());
+        assertEquals(date(2015, 3, 19, 18, 0).getTime(), state.getValidUntil());
+        assertSame(state, set.getState(date(2015, 3, 19, 17, 59).getTime()));
+
+        // Friday evening until Monday morning, Wednesday Apr 1 at noon comes later
+        state = set.getState(date(2015, 3, 27, 18, 0).getTime());
+        assertNull(state.getBlockingWindow());
+        assertEquals(date(2015, 3, 30, 9, 0).getTime(), state.getValidUntil());
+
+        // Sunday Mar 1, 2015 at noon
+        state = set.getState(date(2015, 3, 1, 12, 15).getTime());
+        assertEquals("0-29 12 1 * ?", state.getBlockingWindow().getText());
+        assertEquals(date(2015, 3, 1, 12, 30).getTime(), state.getValidUntil());
+    }
+
+    /**
+     * Testing getNextFreeze
+     * @throws Exception
+     */
+    @Test
+    public void testGetNextFreeze() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* 9-17 ? * 1-5\n0-29 12 1 * ?");
+
+        // Friday evening until Monday morning
+        FreezeWindowSet.State next = set.getNextFreeze(date(2015, 3, 27, 18, 0).getTime());
+        assertEquals(date(2015, 3, 30, 9, 0).getTime(), next.getValidFrom());
+        assertEquals("* 9-17 ? * 1-5", next.getBlockingWindow().getText());
+        assertSame(next, set.getNextFreeze(date(2015, 3, 28, 11, 0).getTime()));
+
+        // already frozen
+        next = set.getNextFreeze(date(2015, 3, 30, 10, 0).getTime());
+        assertEquals(date(2015, 3, 30, 10, 0).getTime(), next.getValidFrom());
+
+        // nothing within a week
+        assertNull(FreezeWindowSet.compile("* * 25 DEC ?").getNextFreeze(date(2015, 3, 1, 0, 0).getTime()));
+        assertNull(FreezeWindowSet.EMPTY.getNextFreeze(date(2015, 3, 1, 0, 0).getTime()));
+    }
+
+    /**
+     * Testing getNextFreeze with a freeze that only starts after an exception ends
+     * @throws Exception
+     */
+    @Test
+    public void testGetNextFreezeAfterException() throws Exception {
+        FreezeWindowSet set = FreezeWindowSet.compile("* 9-17 ? * 1-5\n@except 2015-03-30T09:00 2015-03-30T12:00");
+        long friday = date(2015, 3, 27, 18, 0).getTime();
+
+        // the freeze of Monday morning is lifted until noon
+        FreezeWindowSet.State next = set.getNextFreeze(friday, date(2015, 3, 31, 0, 0).getTime());
+        assertEquals(date(2015, 3, 30, 12, 0).getTime(), next.getValidFrom());
+        assertEquals("* 9-17 ? * 1-5", next.getBlockingWindow().getText());
+        assertSame(next, set.getNextFreeze(friday));
+        assertNull(set.getNextFreeze(friday, date(2015, 3, 30, 12, 0).getTime()));
+    }
+
+    /**
+     * The cached state must always agree with evaluating every freeze window
+     * @throws Exception
+     */
+    @Test
+    public void testGetStateMatchesWindows() throws Exception {
+        String[] sets = {
+            "* 9-17 ? * 1-5\n* 8-12 ? * 6-7\n* 14-20 1 * ?",
+            "*/7 * * * ?\n30-10 22-2 ? * FRI-MON",
+            "0 0 29 2 ?\n* * L * ?\n15,45 */3 ? JUN-AUG 2,4",
+            "* * * * ? 2016\n5-50/5 10-14/2 10-20 * ?",
+        };
+        Random random = new Random(3);
+        for (String text : sets) {
+            FreezeWindowSet set = FreezeWindowSet.compile(text);
+            long time = date(2015, 1, 1, 0, 0).getTime();
+            long end = date(2017, 1, 1, 0, 0).getTime();
+            while (time < end) {
+                FreezeWindow expected = null;
+                for (FreezeWindow window : set.getWindows()) {
+                    if (window.isActive(new Date(time))) {
+                        expected = window;
+                        break;
+                    }
+                }
+                assertSame(text + " at " + new Date(time), expected, set.shouldBlock(time));
+                time += random.nextInt(180) * 60000L + random.nextInt(60000);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowSharedCalendarTest {
+
+    /**
+     * Drops the shared calendars.
+     * @throws Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        FreezeWindowSharedCalendar.setFile(null);
+        FreezeWindowSharedCalendar.load("");
+    }
+
+    /**
+     * Testing the parsing and validation of the calendar file
+     * @throws Exception
+     */
+    @Test
+    public void testLoad() throws Exception {
+        FreezeWindowSharedCalendar.load("# shared\n[release]\n* 22 * * ?\n\n[holidays]\n@range 2015-12-24 2015-12-26\n");
+        assertEquals(2, FreezeWindowSharedCalendar.getNames().size());
+        assertEquals(1, FreezeWindowSharedCalendar.getSnapshot().get("release").size());
+        assertNull(FreezeWindowSharedCalendar.validateReference("@calendar holidays"));
+        assertNotNull(FreezeWindowSharedCalendar.validateReference("@calendar other"));
+        assertNull(FreezeWindowValidator.validate("@calendar release"));
+        assertNotNull(FreezeWindowValidator.validate("@calendar"));
+
+        assertInvalid("* 22 * * ?\n");
+        assertInvalid("[release]\n* 99 * * ?\n");
+        assertInvalid("[release]\n@calendar holidays\n");
+        assertInvalid("[a b]\n");
+        assertInvalid("[a]\n[a]\n");
+        // the calendars in use are kept
+        assertEquals(2, FreezeWindowSharedCalendar.getNames().size());
+    }
+
+    private static void assertInvalid(String calendars) {
+        try {
+            FreezeWindowSharedCalendar.load(calendars);
+            fail(calendars);
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Testing that sets referencing a calendar are compiled again once it changes
+     * @throws Exception
+     */
+    @Test
+    public void testStale() throws Exception {
+        long evening = date(2015, 6, 1, 22, 30).getTime();
+        long noon = date(2015, 6, 1, 12, 30).getTime();
+        FreezeWindowSet unknown = FreezeWindowRegistry.get("@calendar release\n* 3 * * ?");
+        assertEquals(1, unknown.getInvalidLines().size());
+        assertEquals(1, unknown.getWindows().size());
+
+        FreezeWindowSharedCalendar.load("[release]\n* 22 * * ?\n");
+        // compiled again by the loading thread, nothing is left for the queue
+        assertEquals(0, FreezeWindowRegistry.recompile());
+        assertTrue(unknown.isStale());
+        FreezeWindowSet set = FreezeWindowRegistry.get("@calendar release\n* 3 * * ?");
+        assertNotSame(unknown, set);
+        assertFalse(set.isStale());
+        assertTrue(set.getInvalidLines().isEmpty());
+        assertNotNull(set.shouldBlock(evening));
+        assertNull(set.shouldBlock(noon));
+        assertSame(set, FreezeWindowRegistry.get("@calendar release\n* 3 * * ?"));
+
+        FreezeWindowSharedCalendar.load("[release]\n* 12 * * ?\n");
+        set = FreezeWindowRegistry.get("@calendar release\n* 3 * * ?");
+        assertNull(set.shouldBlock(evening));
+        assertNotNull(set.shouldBlock(noon));
+
+        // sets without a reference never become stale
+        FreezeWindowSet plain = FreezeWindowRegistry.get("* 3 * * ?");
+        FreezeWindowSharedCalendar.load("[release]\n");
+        assertFalse(plain.isStale());
+        assertTrue(FreezeWindowRegistry.get("@calendar release\n* 3 * * ?").getInvalidLines().isEmpty());
+    }
+
+    /**
+     * Testing that all sets referencing a calendar are replaced together by the thread loading it
+     * @throws Exception
+     */
+    @Test
+    public void testRecompiledTogether() throws Exception {
+        FreezeWindowSharedCalendar.load("[nightly]\n* 2 * * ?\n");
+        FreezeWindowSet first = FreezeWindowRegistry.get("@calendar nightly");
+        FreezeWindowSet second = FreezeWindowRegistry.get("@calendar nightly\n* 4 * * ?");
+        FreezeWindowSet plain = FreezeWindowRegistry.get("* 4 * * ?");
+
+        FreezeWindowSharedCalendar.load("[nightly]\n* 3 * * ?\n");
+        assertTrue(first.isStale());
+        assertTrue(second.isStale());
+        assertFalse(plain.isStale());
+        assertSame(first.getReplacement(), FreezeWindowRegistry.get("@calendar nightly"));
+        assertSame(second.getReplacement(), FreezeWindowRegistry.get("@calendar nightly\n* 4 * * ?"));
+        assertNotNull(first.getReplacement().shouldBlock(date(2015, 6, 1, 3, 30).getTime()));
+        assertNull(first.getReplacement().shouldBlock(date(2015, 6, 1, 2, 30).getTime()));
+    }
+
+    /**
+     * Testing the polling of the calendar file
+     * @throws Exception
+     */
+    @Test
+    public void testPoll() throws Exception {
+        File file = File.createTempFile("calendars", ".txt");
+        try {
+            write(file, "[release]\n* 22 * * ?\n", 1000000000000L);
+            FreezeWindowSharedCalendar.setFile(file);
+            long generation = FreezeWindowSharedCalendar.getGeneration();
+            assertNotNull(FreezeWindowSharedCalendar.getSnapshot().get("release"));
+            assertFalse(FreezeWindowSharedCalendar.poll());
+
+            // a corrupt version is not used
+            write(file, "[release]\n* 22 * *\n", 1000000060000L);
+            assertFalse(FreezeWindowSharedCalendar.poll());
+            assertEquals(generation, FreezeWindowSharedCalendar.getGeneration());
+            assertEquals("* 22 * * ?", FreezeWindowSharedCalendar.getSnapshot().get("release").get(0));
+
+            write(file, "[release]\n* 23 * * ?\n[other]\n", 1000000120000L);
+            assertTrue(FreezeWindowSharedCalendar.poll());
+            assertEquals(generation + 1, FreezeWindowSharedCalendar.getGeneration());
+            assertEquals("* 23 * * ?", FreezeWindowSharedCalendar.getSnapshot().get("release").get(0));
+
+            // a missing file keeps the last version
+            assertTrue(file.delete());
+            assertFalse(FreezeWindowSharedCalendar.poll());
+            assertNotNull(FreezeWindowSharedCalendar.getSnapshot().get("other"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void write(File file, String text, long lastModified) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+        assertTrue(file.setLastModified(lastModified));
+    }
+}
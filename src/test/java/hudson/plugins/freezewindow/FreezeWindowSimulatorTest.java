@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowSimulatorTest {
+
+    private static final long MINUTE = CronMask.MILLIS_PER_MINUTE;
+
+    /**
+     * Testing the delays of builds submitted before, during and after a freeze
+     * @throws Exception
+     */
+    @Test
+    public void testRun() throws Exception {
+        FreezeWindowSimulator simulator = new FreezeWindowSimulator(FreezeWindowSet.compile("* 22 * * ?"));
+        long freeze = date(2015, 6, 1, 22, 0).getTime();
+        simulator.add("a", freeze - MINUTE);
+        simulator.add("a", freeze);
+        simulator.add("a", freeze + 30 * MINUTE);
+        simulator.add("b", freeze + 59 * MINUTE + 30000);
+        simulator.add("b", freeze + 60 * MINUTE);
+
+        List<FreezeWindowSimulator.JobDelays> jobs = simulator.run();
+        assertEquals(3, jobs.size());
+
+        FreezeWindowSimulator.JobDelays a = jobs.get(0);
+        assertEquals("a", a.getName());
+        assertEquals(3, a.getBuilds());
+        assertEquals(2, a.getDelayed());
+        assertEquals(30 * MINUTE, a.getPercentile(50));
+        assertEquals(60 * MINUTE, a.getPercentile(100));
+        assertEquals(45 * MINUTE, a.getMeanDelay());
+        assertArrayEquals(new int[] {0, 2, 0, 0, 0, 0}, a.getBuckets());
+
+        FreezeWindowSimulator.JobDelays b = jobs.get(1);
+        assertEquals(1, b.getDelayed());
+        assertEquals(30000, b.getPercentile(99));
+
+        FreezeWindowSimulator.JobDelays total = jobs.get(2);
+        assertEquals("(all)", total.getName());
+        assertEquals(5, total.getBuilds());
+        assertEquals(3, total.getDelayed());
+        assertEquals(30000, total.getPercentile(0));
+    }
+
+    /**
+     * Testing freezes that span several forecast ranges and freezes that never end
+     * @throws Exception
+     */
+    @Test
+    public void testLongFreezes() throws Exception {
+        FreezeWindowSimulator simulator = new FreezeWindowSimulator(FreezeWindowSet.compile("* * * * ? 2015-2016"));
+        simulator.add("a", date(2015, 3, 1, 0, 0).getTime());
+        simulator.add("a", date(2017, 1, 1, 0, 0).getTime());
+        FreezeWindowSimulator.JobDelays a = simulator.run().get(0);
+        assertEquals(1, a.getDelayed());
+        assertEquals(date(2017, 1, 1, 0, 0).getTime() - date(2015, 3, 1, 0, 0).getTime(), a.getPercentile(50));
+        assertEquals(1, a.getBuckets()[5]);
+
+        simulator = new FreezeWindowSimulator(FreezeWindowSet.compile("* * * * ?"));
+        simulator.add("a", date(2015, 3, 1, 0, 0).getTime());
+        a = simulator.run().get(0);
+        assertEquals(0, a.getDelayed());
+        assertEquals(1, a.getUnreleased());
+    }
+
+    /**
+     * Testing the delays against a monitor whose simulated clock is stepped minute by minute
+     * @throws Exception
+     */
+    @Test
+    public void testAgainstMonitor() throws Exception {
+        String windows = "* 22-23 ? * 1-5\n* 12 * * ?\n0-29 * 1 * ?\n@except 2015-06-03";
+        final long[] now = new long[1];
+        FreezeWindowMonitor monitor = new FreezeWindowMonitor(windows, new FreezeWindowClock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        });
+        FreezeWindowSimulator simulator = new FreezeWindowSimulator(FreezeWindowSet.compile(windows));
+        long start = date(2015, 5, 28, 0, 0).getTime();
+        Random random = new Random(42);
+        long[] times = new long[500];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = start + (long) (random.nextDouble() * 10 * 24 * 60 * MINUTE);
+            simulator.add("job" + (i % 3), times[i]);
+        }
+        List<FreezeWindowSimulator.JobDelays> jobs = simulator.run();
+
+        int delayed = 0;
+        long maxDelay = 0;
+        for (long time : times) {
+            now[0] = time;
+            if (monitor.shouldBlock() != null) {
+                now[0] = FreezeWindowClock.floorToMinute(time);
+                while (monitor.shouldBlock() != null) {
+                    now[0] += MINUTE;
+                }
+                delayed++;
+                maxDelay = Math.max(maxDelay, now[0] - time);
+            }
+        }
+        FreezeWindowSimulator.JobDelays total = jobs.get(jobs.size() - 1);
+        assertTrue(delayed > 0);
+        assertEquals(delayed, total.getDelayed());
+        assertEquals(maxDelay, total.getPercentile(100));
+    }
+
+    /**
+     * Testing the CSV and JSON build logs
+     * @throws Exception
+     */
+    @Test
+    public void testRead() throws Exception {
+        FreezeWindowSimulator simulator = new FreezeWindowSimulator(FreezeWindowSet.compile("* 22 * * ?"));
+        simulator.readCsv(new StringReader("job,time\n# comment\n\"folder/a,b\",1433188800000\nc,2015-06-01T22:30\n\n"));
+        assertEquals(2, simulator.size());
+        simulator.readJson(new StringReader("[{\"job\": \"a\", \"time\": 1433188800000, \"result\": null},\n"
+                + "{\"time\": \"2015-06-01T22:30:15\", \"job\": \"d\\\"e\"}]"));
+        simulator.readJson(new StringReader("{\"job\":\"a\",\"time\":1}\n{\"job\":\"a\",\"time\":2}\n"));
+        assertEquals(6, simulator.size());
+
+        List<FreezeWindowSimulator.JobDelays> jobs = simulator.run();
+        assertEquals("folder/a,b", jobs.get(0).getName());
+        assertEquals("c", jobs.get(1).getName());
+        assertEquals(30 * MINUTE, jobs.get(1).getPercentile(50));
+        assertEquals("d\"e", jobs.get(3).getName());
+
+        StringWriter writer = new StringWriter();
+        FreezeWindowSimulator.writeJson(jobs, writer);
+        assertTrue(writer.toString(), writer.toString().contains("{\"job\": \"d\\\"e\", \"builds\": 1, \"delayed\": 1"));
+
+        try {
+            simulator.readCsv(new StringReader("a,1\nb,yesterday\n"));
+            fail();
+        } catch (java.text.ParseException e) {
+            assertTrue(e.getMessage().contains("Record 2"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowStepTest extends HudsonTestCase {
+
+    /**
+     * Testing a freeze window that is not active
+     * @throws Exception
+     */
+    public void testInactive() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "inactive");
+        job.setDefinition(new CpsFlowDefinition("freezeWindow windows: '* * 1 JAN ? 1999'\necho 'done'"));
+        WorkflowRun run = job.scheduleBuild2(0).get();
+        assertBuildStatus(Result.SUCCESS, run);
+        assertLogContains("done", run);
+    }
+
+    /**
+     * Testing that the run waits for an active freeze window without an executor
+     * @throws Exception
+     */
+    public void testActive() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "active");
+        job.setDefinition(new CpsFlowDefinition("freezeWindow windows: '* * * * ?'\necho 'done'"));
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        while (!getLog(run).contains("is blocked by freeze window")) {
+            Thread.sleep(100);
+        }
+        assertTrue(run.isBuilding());
+        assertEquals(0, jenkins.toComputer().countBusy());
+
+        run.doStop();
+        while (run.isBuilding()) {
+            Thread.sleep(100);
+        }
+        assertBuildStatus(Result.ABORTED, run);
+        assertFalse(getLog(run).contains("done"));
+    }
+
+    /**
+     * Testing that pipeline jobs with freeze windows stay in the queue
+     * @throws Exception
+     */
+    public void testCanRun() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "queued");
+        job.addProperty(new FreezeWindowProperty(true, "* * * * ?"));
+        job.setDefinition(new CpsFlowDefinition("echo 'done'"));
+        job.scheduleBuild2(0);
+        Thread.sleep(1000);
+        assertNull(job.getLastBuild());
+        assertTrue(jenkins.getQueue().getItem(job).isBlocked());
+    }
+}
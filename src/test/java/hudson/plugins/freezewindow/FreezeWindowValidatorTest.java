@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Random;
+
+/**
+ * Unit tests
+ */
+public class FreezeWindowValidatorTest {
+
+    private static final String ALPHABET = "0123456789*?,-/#LWC MONJANSAT";
+
+    /**
+     * Testing valid freeze windows
+     * @throws Exception
+     */
+    @Test
+    public void testValid() throws Exception {
+        assertNull(FreezeWindowValidator.validate("* 9-17 ? * 1-5"));
+        assertNull(FreezeWindowValidator.validate("  */15   22-2 ? JAN-MAR,DEC SAT,SUN 2015-2020 "));
+        assertNull(FreezeWindowValidator.validate("0-29 * 24-31 DEC ?"));
+        assertNull(FreezeWindowValidator.validate("* * L * ?"));
+        assertNull(FreezeWindowValidator.validate("* * ? * 5#2"));
+        assertNull(FreezeWindowValidator.validate("* * ? * * 2015,2017"));
+    }
+
+    /**
+     * Testing the field and character reported for invalid freeze windows
+     * @throws Exception
+     */
+    @Test
+    public void testInvalid() throws Exception {
+        assertEquals("Invalid cron expression \"* * * *\": Too few fields, expected 5 or 6 at character 8",
+                FreezeWindowValidator.validate("* * * *"));
+        assertEquals("Invalid cron expression \"* * ? * * * *\": Too many fields, expected 5 or 6 at character 13",
+                FreezeWindowValidator.validate("* * ? * * * *"));
+        assertEquals("Invalid cron expression \"60 * * * ?\": minute: The value must be between 0 and 59 at character 1",
+                FreezeWindowValidator.validate("60 * * * ?"));
+        assertEquals("Invalid cron expression \"* 9-17 ? * MON-5\": day of week: A range must be two numbers or two names at character 16",
+                FreezeWindowValidator.validate("* 9-17 ? * MON-5"));
+        assertEquals("Invalid cron expression \"* 9-17 ? * 1-5,\": day of week: Empty list element at character 16",
+                FreezeWindowValidator.validate("  * 9-17 ? * 1-5,"));
+        assertEquals("Invalid cron expression \"* 9-17 ? FOO 1-5\": month: Unknown name at character 10",
+                FreezeWindowValidator.validate("* 9-17 ? FOO 1-5"));
+        assertEquals("Invalid cron expression \"* */0 * * ?\": hour: The step must be between 1 and 23 at character 5",
+                FreezeWindowValidator.validate("* */0 * * ?"));
+        assertNotNull(FreezeWindowValidator.validate("* * * * *"));
+        assertNotNull(FreezeWindowValidator.validate("* * ? * 1-5 1969"));
+        // rejected by quartz
+        assertNotNull(FreezeWindowValidator.validate("* * 32W * ?"));
+    }
+
+    /**
+     * The validator must never accept what quartz rejects, and it must agree with the evaluation
+     * of the freeze windows on random, mostly invalid expressions
+     * @throws Exception
+     */
+    @Test
+    public void testDifferential() throws Exception {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder("* * ? * 1-5");
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                int position = random.nextInt(sb.length() + 1);
+                if (random.nextBoolean() && position < sb.length()) {
+                    sb.deleteCharAt(position);
+                } else {
+                    sb.insert(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+            String fw = sb.toString();
+            int fields = fw.trim().split("\\s+").length;
+            if (fields != 5 && fields != 6) {
+                assertNotNull(fw, FreezeWindowValidator.validate(fw));
+                continue;
+            }
+            String normalized = FreezeWindowMonitor.normalize(fw.trim().replaceAll("\\s+", " "));
+            if (FreezeWindowValidator.validate(fw) == null) {
+                assertTrue("accepted " + fw + " which quartz rejects", CronExpression.isValidExpression(normalized));
+                FreezeWindow.compile(fw.trim().replaceAll("\\s+", " "));
+            } else {
+                try {
+                    FreezeWindow.compile(fw.trim().replaceAll("\\s+", " "));
+                    fail("compiled " + fw + " which the validator rejects");
+                } catch (ParseException expected) {
+                    // the freeze window is ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Validating long and adversarial input takes linear time
+     * @throws Exception
+     */
+    @Test(timeout = 10000)
+    public void testLongInput() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i % 60).append(',');
+        }
+        String list = sb.toString();
+        assertNull(FreezeWindowValidator.validate(list + "0 * ? * *"));
+        assertNotNull(FreezeWindowValidator.validate(list + " * ? * *"));
+        StringBuilder textarea = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            textarea.append(i % 60).append(" 9-17 ? JAN-MAR,DEC MON-FRI\n");
+        }
+        for (String line : textarea.toString().split("\n")) {
+            assertNull(FreezeWindowValidator.validate(line));
+        }
+    }
+}
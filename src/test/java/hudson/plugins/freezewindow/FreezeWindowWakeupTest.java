@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests using a simulated clock
+ */
+public class FreezeWindowWakeupTest {
+
+    /**
+     * A clock that only moves when told to, running the scheduled tasks that become due.
+     */
+    private static final class SimulatedClock extends FreezeWindowClock implements FreezeWindowWakeup.Scheduler {
+
+        private long now;
+
+        private final List<long[]> dueTimes = new ArrayList<long[]>();
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        SimulatedClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        public void schedule(Runnable task, long delayMillis) {
+            dueTimes.add(new long[]{now + delayMillis});
+            tasks.add(task);
+        }
+
+        /**
+         * Moves the clock to the earliest scheduled task and runs it.
+         * @return false if no task is scheduled
+         */
+        boolean runNext() {
+            if (tasks.isEmpty()) {
+                return false;
+            }
+            int next = 0;
+            for (int i = 1; i < dueTimes.size(); i++) {
+                if (dueTimes.get(i)[0] < dueTimes.get(next)[0]) {
+                    next = i;
+                }
+            }
+            now = Math.max(now, dueTimes.remove(next)[0]);
+            tasks.remove(next).run();
+            return true;
+        }
+    }
+
+    /**
+     * Counts the queue maintenances and the times they happened at.
+     */
+    private static final class Maintenance implements Runnable {
+
+        private final FreezeWindowClock clock;
+
+        private final List<Long> times = new ArrayList<Long>();
+
+        Maintenance(FreezeWindowClock clock) {
+            this.clock = clock;
+        }
+
+        public void run() {
+            times.add(clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Only the earliest wakeup fires, replaced wakeups are ignored
+     * @throws Exception
+     */
+    @Test
+    public void testRequest() throws Exception {
+        SimulatedClock clock = new SimulatedClock(1000);
+        Maintenance maintenance = new Maintenance(clock);
+        FreezeWindowWakeup wakeup = new FreezeWindowWakeup(clock, clock, maintenance);
+
+        wakeup.request(5000);
+        wakeup.request(9000);
+        wakeup.request(3000);
+        assertEquals(3000, wakeup.getPending());
+        assertEquals(2, clock.tasks.size());
+
+        while (clock.runNext()) {
+            // run all
+        }
+        assertEquals(1, maintenance.times.size());
+        assertEquals(Long.valueOf(3000), maintenance.times.get(0));
+        assertEquals(Long.MAX_VALUE, wakeup.getPending());
+
+        // a wakeup in the past fires right away
+        long now = clock.currentTimeMillis();
+        wakeup.request(2000);
+        clock.runNext();
+        assertEquals(2, maintenance.times.size());
+        assertEquals(Long.valueOf(now), maintenance.times.get(1));
+    }
+
+    /**
+     * Items blocked by freeze windows are released at the end of the windows
+     * @throws Exception
+     */
+    @Test
+    public void testReleaseAtTransitions() throws Exception {
+        final FreezeWindowSet set = FreezeWindowSet.compile("* 9-11 ? * 1-5\n0-29 12 ? * 1-5\n* 14-15 ? * 4");
+        final SimulatedClock clock = new SimulatedClock(FreezeWindowSetTest.date(2015, 3, 19, 8, 30).getTime());
+        final List<Long> releases = new ArrayList<Long>();
+        final FreezeWindowWakeup[] wakeup = new FreezeWindowWakeup[1];
+        // the queue maintenance releases the item if it is no longer blocked, otherwise asks to be woken up again
+        Runnable maintenance = new Runnable() {
+            public void run() {
+                FreezeWindowSet.State state = set.getState(clock.currentTimeMillis());
+                if (state.getBlockingWindow() == null) {
+                    releases.add(clock.currentTimeMillis());
+                } else {
+                    wakeup[0].request(state.getValidUntil());
+                }
+            }
+        };
+        wakeup[0] = new FreezeWindowWakeup(clock, clock, maintenance);
+
+        long[] submissions = {
+            FreezeWindowSetTest.date(2015, 3, 19, 9, 15).getTime(),
+            FreezeWindowSetTest.date(2015, 3, 19, 14, 1).getTime(),
+        };
+        for (long submission : submissions) {
+            clock.now = submission;
+            maintenance.run();
+            while (clock.runNext()) {
+                // run until the item is released
+            }
+        }
+
+        // 9:00-12:00 and 12:00-12:30 are contiguous, the item submitted at 9:15 waits for both
+        assertEquals(2, releases.size());
+        assertEquals(Long.valueOf(FreezeWindowSetTest.date(2015, 3, 19, 12, 30).getTime()), releases.get(0));
+        assertEquals(Long.valueOf(FreezeWindowSetTest.date(2015, 3, 19, 16, 0).getTime()), releases.get(1));
+    }
+}
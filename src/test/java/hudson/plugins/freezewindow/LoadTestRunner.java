@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2011, Sun Microsystems, Inc., Frederik Fromm
+ *
+ * Changes to this code are Copyright 2015 Yahoo! Inc. Licensed under the
+ * project's Open Source license.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package hudson.plugins.freezewindow;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Queue;
+import hudson.model.queue.QueueTaskDispatcher;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static hudson.plugins.freezewindow.FreezeWindowSetTest.date;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Load test of the queue task dispatcher at queue scale: tens of thousands of queue items of jobs
+ * with varied freeze windows go through simulated queue maintenance passes, with and without the dispatcher.
+ * Only active with the loadtest profile: mvn test -Ploadtest
+ *
+ * A maintenance pass checks every item while holding the queue lock, like {@link Queue#maintain()}.
+ * The simulated clock walks through a day with freezes starting and ending, the first pass after each
+ * step pays for the freeze window transitions. For each step the pass latency, the lock hold time,
+ * the longest wait of a thread contending for the lock and the allocation per pass are measured.
+ *
+ * The results are written to target/loadtest-result.json, to be compared between releases.
+ * Use -Dloadtest.items=N (default 10000) and -Dloadtest.passes=N (default 5) to change the load.
+ */
+public class LoadTestRunner {
+
+    /**
+     * the names of the steps of the simulated clock
+     */
+    private static final String[] STEP_NAMES = {
+            "open", "freeze-start", "frozen", "partial-release", "freeze-end", "open-again"};
+
+    /**
+     * the times of the steps of the simulated clock, on Monday 2015-06-01 and the following midnight
+     */
+    private static final Date[] STEP_TIMES = {
+            date(2015, 6, 1, 21, 50), date(2015, 6, 1, 22, 0), date(2015, 6, 1, 22, 5),
+            date(2015, 6, 1, 22, 30), date(2015, 6, 1, 23, 0), date(2015, 6, 2, 0, 0)};
+
+    @Test
+    public void runLoadTest() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("loadtest"));
+
+        int itemCount = Integer.getInteger("loadtest.items", 10000);
+        int passes = Math.max(2, Integer.getInteger("loadtest.passes", 5));
+        int jobCount = Math.max(1, itemCount / 5);
+
+        List<Queue.Item> items = createItems(itemCount, jobCount);
+        JSONObject result = new JSONObject();
+        result.put("items", itemCount);
+        result.put("jobs", jobCount);
+        result.put("passes", passes);
+        result.put("java", System.getProperty("java.version"));
+
+        final long[] now = new long[1];
+        FreezeWindowClock clock = new FreezeWindowClock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        JSONArray runs = new JSONArray();
+        JSONObject off = run(new QueueTaskDispatcher() {
+        }, items, passes, now);
+        JSONObject on = run(FreezeWindowQueueTaskDispatcher.create(clock), items, passes, now);
+        runs.add(off);
+        runs.add(on);
+        result.put("runs", runs);
+
+        new File("target").mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream("target/loadtest-result.json"), "UTF-8");
+        try {
+            writer.write(result.toString(2));
+        } finally {
+            writer.close();
+        }
+        System.out.println(result.toString(2));
+
+        JSONArray steps = on.getJSONArray("steps");
+        assertEquals(0, steps.getJSONObject(0).getInt("blocked"));
+        assertTrue(steps.getJSONObject(2).getInt("blocked") > 0);
+        assertTrue(steps.getJSONObject(4).getInt("blocked") < steps.getJSONObject(2).getInt("blocked"));
+        assertEquals(0, steps.getJSONObject(5).getInt("blocked"));
+        for (Object step : off.getJSONArray("steps")) {
+            assertEquals(0, ((JSONObject) step).getInt("blocked"));
+        }
+    }
+
+    /**
+     * Returns the freeze windows of a job: no property, a disabled property, per job variations of an
+     * evening freeze, weekday nights, holidays, an explicit range, overlapping windows and an invalid line.
+     */
+    private static String[] getConfig(int job) {
+        switch (job % 8) {
+            case 0:
+                return null;
+            case 1:
+                return new String[] {"false", "* * * * ?"};
+            case 2:
+                return new String[] {"true", "0-" + (10 + job % 50) + " 22 * * ?"};
+            case 3:
+                return new String[] {"true", "* 22-23 ? * 1-5"};
+            case 4:
+                return new String[] {"true", "* * 24-26 12 ?\n* * 31 12 ?"};
+            case 5:
+                return new String[] {"true", "@range 2015-06-01T22:00 2015-06-01T22:29"};
+            case 6:
+                return new String[] {"true", "* 22 * * ?\n* 22-23 * * ?"};
+            default:
+                return new String[] {"true", "load test invalid line\n* 22 * * ?"};
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Queue.Item> createItems(int itemCount, int jobCount) {
+        AbstractProject[] projects = new AbstractProject[jobCount];
+        for (int i = 0; i < jobCount; i++) {
+            AbstractProject project = mock(AbstractProject.class, withSettings().stubOnly());
+            when(project.getFullName()).thenReturn("load-" + i);
+            String[] config = getConfig(i);
+            if (config != null) {
+                FreezeWindowProperty property = new FreezeWindowProperty(Boolean.parseBoolean(config[0]), config[1]);
+                when(project.getProperty(FreezeWindowProperty.class)).thenReturn(property);
+                property.setOwner(project);
+            }
+            projects[i] = project;
+        }
+        List<Queue.Item> items = new ArrayList<Queue.Item>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new Queue.WaitingItem(Calendar.getInstance(), projects[i % jobCount], new ArrayList<Action>()));
+        }
+        return items;
+    }
+
+    /**
+     * Walks the simulated clock through the steps, running the maintenance passes at each step.
+     * @param now the time of the simulated clock the dispatcher was created with
+     */
+    private static JSONObject run(QueueTaskDispatcher dispatcher, List<Queue.Item> items, int passes, long[] now)
+            throws InterruptedException {
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong maxWait = new AtomicLong();
+        // a thread reading the queue, like the web UI, waits for the lock while a pass holds it
+        Thread reader = new Thread("load test reader") {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    lock.lock();
+                    try {
+                        long wait = System.nanoTime() - start;
+                        if (wait > maxWait.get()) {
+                            maxWait.set(wait);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        reader.setDaemon(true);
+
+        JSONArray steps = new JSONArray();
+        // warm up outside of the measured steps
+        now[0] = STEP_TIMES[0].getTime();
+        for (int i = 0; i < passes; i++) {
+            pass(dispatcher, items, lock);
+        }
+        System.gc();
+        reader.start();
+        try {
+            for (int step = 0; step < STEP_TIMES.length; step++) {
+                now[0] = STEP_TIMES[step].getTime();
+                maxWait.set(0);
+                long first = 0;
+                long total = 0;
+                long max = 0;
+                long held = 0;
+                long allocated = 0;
+                int blocked = 0;
+                for (int i = 0; i < passes; i++) {
+                    long allocatedBefore = getAllocatedBytes();
+                    long start = System.nanoTime();
+                    Pass pass = pass(dispatcher, items, lock);
+                    long duration = System.nanoTime() - start;
+                    allocated = allocatedBefore < 0 ? -1 : allocated + getAllocatedBytes() - allocatedBefore;
+                    if (i == 0) {
+                        first = duration;
+                    } else {
+                        total += duration;
+                        max = Math.max(max, duration);
+                    }
+                    held += pass.held;
+                    blocked = pass.blocked;
+                }
+                JSONObject json = new JSONObject();
+                json.put("name", STEP_NAMES[step]);
+                json.put("time", now[0]);
+                json.put("blocked", blocked);
+                json.put("firstPassMillis", millis(first));
+                json.put("meanPassMillis", millis(total / (passes - 1)));
+                json.put("maxPassMillis", millis(max));
+                json.put("meanLockHoldMillis", millis(held / passes));
+                json.put("maxReaderWaitMillis", millis(maxWait.get()));
+                json.put("allocatedBytesPerPass", allocated < 0 ? -1 : allocated / passes);
+                steps.add(json);
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+        JSONObject json = new JSONObject();
+        json.put("dispatcher", dispatcher instanceof FreezeWindowQueueTaskDispatcher);
+        json.put("steps", steps);
+        return json;
+    }
+
+    /**
+     * Checks all items while holding the lock.
+     */
+    private static Pass pass(QueueTaskDispatcher dispatcher, List<Queue.Item> items, ReentrantLock lock) {
+        Pass pass = new Pass();
+        lock.lock();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                if (dispatcher.canRun(items.get(i)) != null) {
+                    pass.blocked++;
+                }
+            }
+        } finally {
+            pass.held = System.nanoTime() - start;
+            lock.unlock();
+        }
+        return pass;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or -1 if the JVM cannot tell.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /**
+     * The outcome of a maintenance pass.
+     */
+    private static final class Pass {
+
+        int blocked;
+
+        long held;
+    }
+}